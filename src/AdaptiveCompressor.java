@@ -0,0 +1,217 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/*
+ * Layout of an adaptive stream, written and read in a single pass without knowing its length:
+ *   magic        4 bytes  "HUFF"
+ *   version      1 byte   6
+ *   chunks, one after the other:
+ *     symbolCount  varint   number of characters in the chunk, 0 for the end of the stream
+ *     size         varint   size in bytes of the rest of the chunk
+ *     type         1 byte   CHUNK_NEW_TABLE or CHUNK_SAME_TABLE
+ *     CHUNK_NEW_TABLE:
+ *       code lengths        as written by HuffmanHeader.writeCodeLengths, replacing the table of the chunks before
+ *     encoded bits          padded to a whole byte
+ * A chunk is written once chunkSize characters have been read, or as soon as the input has no more characters
+ * ready, so the output follows the input with at most one chunk of delay and only one chunk is held in memory.
+ * Writing a chunk does not rebuild the table: the table is built from the counts of every character read so far
+ * and rebuilt only when a chunk holds a character without a code, or once the characters read since the last
+ * build are as many as it was built from, at least MIN_REBUILD_INTERVAL and at most chunkSize. The counts are
+ * halved every chunkSize characters so that the table follows the input, and a rebuilt table is only written
+ * when the one in use no longer fits, so a chunk of a few characters costs a few bytes rather than a table.
+ */
+class AdaptiveCompressor {
+    static final int VERSION = 6;
+    static final int DEFAULT_CHUNK_SIZE = 1 << 18;
+    // largest chunk accepted when decoding, so that a corrupt count cannot exhaust the memory
+    static final int MAX_CHUNK_SIZE = 1 << 24;
+    // fewest characters read between two rebuilds of the table, unless a character has no code
+    static final int MIN_REBUILD_INTERVAL = 1 << 12;
+    private static final int IO_BUFFER_SIZE = 1 << 16;
+
+    // types of chunk
+    static final int CHUNK_NEW_TABLE = 0;
+    static final int CHUNK_SAME_TABLE = 1;
+
+    private final int chunkSize;
+
+    /**
+     * constructor for initialising an adaptive compressor.
+     *
+     * @param chunkSize the largest number of characters in a chunk, and the most read between two rebuilds of the table
+     */
+    AdaptiveCompressor(int chunkSize) {
+        if (chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE) {
+            throw new IllegalArgumentException("Chunk size must be between 1 and " + MAX_CHUNK_SIZE + " characters");
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * compressing characters as they arrive, flushing the output after every chunk.
+     *
+     * @param reader the characters to compress, read until its end
+     * @param destination the stream the adaptive stream is written to, flushed but left open
+     * @return the number of characters compressed
+     */
+    long compress(Reader reader, OutputStream destination) throws IOException {
+        DataOutputStream output = new DataOutputStream(destination);
+        output.writeInt(HuffmanHeader.MAGIC);
+        output.writeByte(VERSION);
+        output.flush();
+
+        // the buffers, counts and tables are allocated once and reused by every chunk
+        char[] chunk = new char[chunkSize];
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        BitWriter bitWriter = new BitWriter(bytes, IO_BUFFER_SIZE);
+        long[] counts = new long[CodeTable.ALPHABET_SIZE];
+        CodeTable codeTable = null;
+        CodeTable rebuilt = new CodeTable();
+        long total = 0;
+        long builtFrom = 0;
+        long sinceRebuild = 0;
+        int length;
+        while ((length = fill(reader, chunk)) > 0) {
+            // adding the characters to the counts, checking that the table has a code for every one of them
+            boolean missing = codeTable == null;
+            for (int i = 0; i < length; i++) {
+                char character = chunk[i];
+                counts[character]++;
+                if (!missing && codeTable.length(character) == 0) {
+                    missing = true;
+                }
+            }
+            total += length;
+            sinceRebuild += length;
+
+            bytes.reset();
+            if (missing || sinceRebuild >= Math.min(chunkSize, Math.max(MIN_REBUILD_INTERVAL, builtFrom))) {
+                // rebuilding the table, and keeping the one in use when it is still about as good
+                CodeLengths.buildCodeTable(counts, HuffmanDecoder.MAX_CODE_LENGTH, rebuilt);
+                if (codeTable != null && SharedTables.fits(counts, codeTable, rebuilt)) {
+                    data.writeByte(CHUNK_SAME_TABLE);
+                }
+                else {
+                    data.writeByte(CHUNK_NEW_TABLE);
+                    HuffmanHeader.writeCodeLengths(data, rebuilt);
+                    CodeTable replaced = codeTable;
+                    codeTable = rebuilt;
+                    rebuilt = replaced != null ? replaced : new CodeTable();
+                }
+                // halving the counts once a whole chunk has been read, a character read once keeps a count of 1
+                if (sinceRebuild >= chunkSize) {
+                    for (int character = 0; character < counts.length; character++) {
+                        counts[character] -= counts[character] >> 1;
+                    }
+                }
+                builtFrom = total;
+                sinceRebuild = 0;
+            }
+            else {
+                data.writeByte(CHUNK_SAME_TABLE);
+            }
+            data.flush();
+            BlockCompressor.encodeStream(chunk, 0, length, codeTable, bitWriter);
+
+            HuffmanHeader.writeVarInt(output, length);
+            HuffmanHeader.writeVarInt(output, bytes.size());
+            bytes.writeTo(output);
+            output.flush();
+        }
+
+        // marking the end of the stream
+        HuffmanHeader.writeVarInt(output, 0);
+        output.flush();
+        return total;
+    }
+
+    /**
+     * reading characters until the chunk is full, the input ends or it has no more characters ready.
+     *
+     * @return the number of characters read, 0 at the end of the input
+     */
+    private static int fill(Reader reader, char[] chunk) throws IOException {
+        int length = 0;
+        while (length < chunk.length) {
+            // waiting for the first character only, then taking what is ready
+            if (length > 0 && !reader.ready()) {
+                break;
+            }
+            int read = reader.read(chunk, length, chunk.length - length);
+            if (read == -1) {
+                break;
+            }
+            length += read;
+        }
+        return length;
+    }
+
+    /**
+     * decompressing an adaptive stream chunk by chunk, flushing the characters of every chunk.
+     *
+     * @param source the adaptive stream, positioned at its magic
+     * @param writer the writer the characters are written to, flushed but left open
+     * @return the number of characters decompressed
+     */
+    static long decompress(InputStream source, Writer writer) throws IOException {
+        DataInputStream input = new DataInputStream(source);
+        try {
+            if (input.readInt() != HuffmanHeader.MAGIC) {
+                throw new IOException("Not a Huffman compressed file");
+            }
+            int version = input.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported adaptive stream version " + version);
+            }
+
+            byte[] bytes = new byte[0];
+            char[] chunk = new char[0];
+            HuffmanDecoder decoder = null;
+            long total = 0;
+            int length;
+            while ((length = HuffmanHeader.readVarInt(input)) != 0) {
+                int size = HuffmanHeader.readVarInt(input);
+                if (length < 0 || length > MAX_CHUNK_SIZE || size <= 0 || size > HuffmanHeader.MAX_SIZE + (long) length * HuffmanDecoder.MAX_CODE_LENGTH / 8 + 1) {
+                    throw new IOException("Corrupt adaptive stream chunk");
+                }
+                // the buffers only grow, to the size of the largest chunk
+                if (bytes.length < size) {
+                    bytes = new byte[size];
+                }
+                if (chunk.length < length) {
+                    chunk = new char[length];
+                }
+                input.readFully(bytes, 0, size);
+
+                ByteBuffer data = ByteBuffer.wrap(bytes, 0, size);
+                int type = data.get() & 0xFF;
+                if (type == CHUNK_NEW_TABLE) {
+                    decoder = new HuffmanDecoder(HuffmanHeader.readCodeLengths(data));
+                }
+                else if (type != CHUNK_SAME_TABLE || decoder == null) {
+                    throw new IOException("Corrupt adaptive stream chunk type " + type);
+                }
+                if (decoder.decode(data, (long) data.position() * Byte.SIZE, (long) size * Byte.SIZE, chunk, 0, length) < 0) {
+                    throw new IOException("Corrupt adaptive stream data");
+                }
+                writer.write(chunk, 0, length);
+                writer.flush();
+                total += length;
+            }
+            return total;
+        }
+        catch (EOFException | BufferUnderflowException exception) {
+            throw new IOException("Truncated adaptive stream");
+        }
+    }
+}
@@ -0,0 +1,171 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+//Compressor of every file of a directory in one JVM, with a bounded number of files in flight at any time.
+//Every file is compressed on its own thread with the two passes of huffmanCompressStream, so its memory use
+//does not depend on its size, and a line is printed for every file as soon as it is done.
+class BatchCompressor {
+    static final String EXTENSION = ".bin";
+
+    private final int concurrency;
+
+    //Outcome of compressing one file
+    static final class Result {
+        final Path origin;
+        final long inputBytes;
+        final long outputBytes;
+        final long time;
+        final Exception error;
+
+        Result(Path origin, long inputBytes, long outputBytes, long time, Exception error) {
+            this.origin = origin;
+            this.inputBytes = inputBytes;
+            this.outputBytes = outputBytes;
+            this.time = time;
+            this.error = error;
+        }
+    }
+
+    /**
+     * constructor for initialising a batch compressor.
+     *
+     * @param concurrency the largest number of files compressed at the same time
+     */
+    BatchCompressor(int concurrency) {
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("Concurrency must be positive");
+        }
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * compressing every regular file of a directory into <name>.bin in another directory, printing a
+     * line for every file in the order they finish and a summary of the whole batch at the end.
+     *
+     * @param inputDirectory the directory holding the files to compress, not searched recursively
+     * @param outputDirectory the directory the compressed files are written to, created if missing
+     * @param log the stream the lines are printed to
+     * @return the result of every file, in the order they finished
+     */
+    List<Result> compress(Path inputDirectory, Path outputDirectory, PrintStream log) throws IOException, InterruptedException {
+        Files.createDirectories(outputDirectory);
+        if (Files.isSameFile(inputDirectory, outputDirectory)) {
+            throw new IllegalArgumentException("The output directory must differ from the input directory");
+        }
+        final long startTime = System.nanoTime();
+
+        ExecutorService executor = newExecutor(concurrency);
+        List<Result> results = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(inputDirectory, Files::isRegularFile)) {
+            CompletionService<Result> completion = new ExecutorCompletionService<>(executor);
+            Semaphore inFlight = new Semaphore(concurrency);
+            int submitted = 0;
+            for (Path origin : files) {
+                // waiting for a free slot, then printing whatever finished meanwhile
+                inFlight.acquire();
+                Path destination = outputDirectory.resolve(origin.getFileName() + EXTENSION);
+                completion.submit(() -> {
+                    try {
+                        return compressFile(origin, destination);
+                    }
+                    finally {
+                        inFlight.release();
+                    }
+                });
+                submitted++;
+                Future<Result> done;
+                while ((done = completion.poll()) != null) {
+                    results.add(report(done.get(), log));
+                }
+            }
+            while (results.size() < submitted) {
+                results.add(report(completion.take().get(), log));
+            }
+        }
+        catch (ExecutionException exception) {
+            // compressFile reports failures in its result, anything else is a bug
+            throw new IllegalStateException(exception.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        // returning the statistics of the whole batch
+        final long batchTime = System.nanoTime() - startTime;
+        long inputBytes = 0;
+        long outputBytes = 0;
+        int failed = 0;
+        for (Result result : results) {
+            inputBytes += result.inputBytes;
+            outputBytes += result.outputBytes;
+            failed += result.error != null ? 1 : 0;
+        }
+        log.println("Statistics of compressing the batch (" + concurrency + " files at a time):");
+        log.println("Files compressed: " + (results.size() - failed) + ", failed: " + failed);
+        log.println("Batch time: " + batchTime / 1000000 + "ms");
+        log.println("Throughput: " + inputBytes / (1024.0 * 1024) / (batchTime / 1e9) + " MB/s");
+        log.println("Total size: " + inputBytes + " bytes compressed to " + outputBytes + " bytes");
+        log.println("Compression rate:: " + (inputBytes == 0 ? 0 : (double) (inputBytes - outputBytes) / inputBytes * 100) + "%");
+        log.println("");
+        return results;
+    }
+
+    /**
+     * compressing one file, catching any failure so that the rest of the batch goes on.
+     *
+     * @return the result of the file
+     */
+    private static Result compressFile(Path origin, Path destination) {
+        final long startTime = System.nanoTime();
+        try {
+            long[] counts = HuffmanCoding.countStream(origin, false);
+            CodeTable codeTable = HuffmanCoding.buildCodeTable(counts);
+            HuffmanCoding.compressStream(origin, destination, false, codeTable, Arrays.stream(counts).sum());
+            return new Result(origin, Files.size(origin), Files.size(destination), System.nanoTime() - startTime, null);
+        }
+        catch (IOException | RuntimeException exception) {
+            return new Result(origin, 0, 0, System.nanoTime() - startTime, exception);
+        }
+    }
+
+    private static Result report(Result result, PrintStream log) {
+        if (result.error != null) {
+            log.println("Failed " + result.origin.getFileName() + ": " + result.error);
+        }
+        else {
+            log.println("Compressed " + result.origin.getFileName() + ": " + result.inputBytes + " -> " + result.outputBytes
+                    + " bytes in " + result.time / 1000000 + "ms");
+        }
+        return result;
+    }
+
+    /**
+     * returning an executor starting a virtual thread per file where the JVM has them (Java 21 on),
+     * and a pool of one platform thread per file in flight otherwise. The number of files in flight is
+     * bounded by compress either way.
+     *
+     * @param concurrency the largest number of files compressed at the same time
+     * @return the executor
+     */
+    static ExecutorService newExecutor(int concurrency) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException exception) {
+            return Executors.newFixedThreadPool(concurrency);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+import java.io.IOException;
+import java.io.OutputStream;
+
+//Writer packing variable length codes into bytes, highest bit first
+class BitWriter {
+    private final OutputStream output;
+    private final byte[] buffer;
+    private int position = 0;
+
+    // pending bits are the lowest bitCount bits of bitBuffer, the bits above them are ignored
+    private long bitBuffer = 0;
+    private int bitCount = 0;
+    private long totalBits = 0;
+
+    /**
+     * constructor for initialising a bit writer.
+     *
+     * @param output the stream receiving the packed bytes
+     * @param bufferSize the size of the reusable byte buffer, rounded down to a multiple of 8
+     */
+    BitWriter(OutputStream output, int bufferSize) {
+        this.output = output;
+        this.buffer = new byte[Math.max(Long.BYTES, bufferSize & ~(Long.BYTES - 1))];
+    }
+
+    /**
+     * appending the lowest length bits of code.
+     *
+     * @param code the bits to write, aligned to the right
+     * @param length the number of bits to write, at most 64
+     */
+    void writeBits(long code, int length) throws IOException {
+        int free = Long.SIZE - bitCount;
+        if (length < free) {
+            bitBuffer = (bitBuffer << length) | code;
+            bitCount += length;
+        }
+        else {
+            // filling the 64-bit word, writing it out and keeping the bits that did not fit
+            int rest = length - free;
+            long word = (free == Long.SIZE ? 0 : bitBuffer << free) | (code >>> rest);
+            writeWord(word);
+            bitBuffer = code;
+            bitCount = rest;
+        }
+        totalBits += length;
+    }
+
+    /**
+     * returning the number of bits written so far.
+     *
+     * @return the number of bits written
+     */
+    long bitsWritten() {
+        return totalBits;
+    }
+
+    /**
+     * writing the pending bits, padding the last byte with zeros, and flushing the buffer to the stream.
+     * the stream itself is left open.
+     *
+     * @return the number of bits written, excluding the padding
+     */
+    long finish() throws IOException {
+        if (bitCount > 0) {
+            long word = bitBuffer << (Long.SIZE - bitCount);
+            int bytes = (bitCount + 7) >> 3;
+            if (position + bytes > buffer.length) {
+                flushBuffer();
+            }
+            for (int i = 0; i < bytes; i++) {
+                buffer[position++] = (byte) (word >>> (56 - 8 * i));
+            }
+            bitCount = 0;
+        }
+        flushBuffer();
+        return totalBits;
+    }
+
+    private void writeWord(long word) throws IOException {
+        if (position + Long.BYTES > buffer.length) {
+            flushBuffer();
+        }
+        buffer[position] = (byte) (word >>> 56);
+        buffer[position + 1] = (byte) (word >>> 48);
+        buffer[position + 2] = (byte) (word >>> 40);
+        buffer[position + 3] = (byte) (word >>> 32);
+        buffer[position + 4] = (byte) (word >>> 24);
+        buffer[position + 5] = (byte) (word >>> 16);
+        buffer[position + 6] = (byte) (word >>> 8);
+        buffer[position + 7] = (byte) word;
+        position += Long.BYTES;
+    }
+
+    private void flushBuffer() throws IOException {
+        output.write(buffer, 0, position);
+        position = 0;
+    }
+}
@@ -0,0 +1,1025 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/*
+ * Layout of a file compressed in blocks:
+ *   magic        4 bytes  "HUFF"
+ *   version      1 byte   4, or 2 for files whose blocks have no type
+ *   blocks, one after the other:
+ *     type         1 byte   BLOCK_HUFFMAN, BLOCK_HUFFMAN_4, BLOCK_TRANSFORMED, BLOCK_STORED, BLOCK_RUN or BLOCK_REUSED, not in version 2
+ *     BLOCK_REUSED:
+ *       tableOffset 8 bytes position of an earlier BLOCK_HUFFMAN or BLOCK_HUFFMAN_4 block whose code lengths are used
+ *       encoded bits        padded to a whole byte
+ *     BLOCK_STORED:
+ *       characters in UTF-8, 1 to 3 bytes each, the two halves of a surrogate pair encoded one by one
+ *     BLOCK_RUN:
+ *       character  2 bytes  the only character of the block, repeated symbolCount times
+ *     BLOCK_TRANSFORMED:
+ *       stages     1 byte   bit set of the TransformPipeline stages run on the block, by ordinal
+ *       length     varint   number of transformed characters
+ *       size       varint   size in bytes of the inner block
+ *       inner block         the transformed characters as a BLOCK_HUFFMAN or BLOCK_HUFFMAN_4 block, type included
+ *       parameters          of the stages run, the last one first
+ *     code lengths          as written by HuffmanHeader.writeCodeLengths
+ *     BLOCK_HUFFMAN:
+ *       encoded bits        padded to a whole byte
+ *     BLOCK_HUFFMAN_4, the characters split into 4 consecutive segments of (symbolCount + 3) / 4, the last one shorter:
+ *       jump table 12 bytes  size in bytes of the encoded segments 1 to 3
+ *       encoded bits        of every segment, each padded to a whole byte
+ *   block index, one entry per block:
+ *     offset       8 bytes  position of the block in the file
+ *     length       4 bytes  size of the block in bytes
+ *     symbolCount  4 bytes  number of characters in the block
+ *   blockCount   4 bytes
+ *   indexOffset  8 bytes  position of the block index in the file
+ * Every block has its own code table, so blocks are encoded and decoded independently of each other.
+ * A block whose code table and codes would not save at least minSaving of its stored size is stored
+ * instead, which bounds both the size of a block and the time to decode it.
+ * Blocks are appended to an existing file by writing them after its trailer, followed by the index of all
+ * blocks and a new trailer, so the index before them is left in the file unused. Appended blocks refer to
+ * the code table of the last coded block of the file when it still fits their characters, so only the new
+ * characters are read and encoded.
+ */
+class BlockCompressor {
+    static final int VERSION = 4;
+    static final int VERSION_WITHOUT_TYPES = 2;
+    static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+    // types of block
+    static final int BLOCK_HUFFMAN = 0;
+    static final int BLOCK_HUFFMAN_4 = 1;
+    static final int BLOCK_TRANSFORMED = 2;
+    static final int BLOCK_STORED = 3;
+    static final int BLOCK_RUN = 4;
+    static final int BLOCK_REUSED = 5;
+    // share of the stored size a coded block must save, else it is stored
+    static final double DEFAULT_MIN_SAVING = 0.01;
+    // number of independently decodable segments of a BLOCK_HUFFMAN_4 block
+    static final int STREAMS = 4;
+
+    // size of an entry in the block index and of the trailer after it
+    private static final int INDEX_ENTRY_SIZE = 16;
+    private static final int TRAILER_SIZE = 12;
+    // largest share of a file that the indexes left behind by appends may take before huffmanAppend compacts it
+    static final double MAX_UNUSED_SHARE = 0.01;
+    private static final int IO_BUFFER_SIZE = 1 << 16;
+
+    private final int blockSize;
+    private final int workers;
+    private final boolean interleaved;
+    private final TransformPipeline transforms;
+    private final double minSaving;
+
+    /**
+     * constructor for initialising a block compressor writing single stream blocks.
+     *
+     * @param blockSize the number of characters in every block but the last
+     * @param workers the number of threads encoding or decoding blocks
+     */
+    BlockCompressor(int blockSize, int workers) {
+        this(blockSize, workers, false);
+    }
+
+    /**
+     * constructor for initialising a block compressor.
+     *
+     * @param blockSize the number of characters in every block but the last
+     * @param workers the number of threads encoding or decoding blocks
+     * @param interleaved true to split every block into 4 streams that are decoded side by side
+     */
+    BlockCompressor(int blockSize, int workers, boolean interleaved) {
+        this(blockSize, workers, interleaved, new TransformPipeline(EnumSet.noneOf(TransformPipeline.Stage.class)));
+    }
+
+    /**
+     * constructor for initialising a block compressor running transforms on every block before coding it.
+     *
+     * @param blockSize the number of characters in every block but the last
+     * @param workers the number of threads encoding or decoding blocks
+     * @param interleaved true to split every block into 4 streams that are decoded side by side
+     * @param transforms the transforms run on every block, none for plain Huffman blocks
+     */
+    BlockCompressor(int blockSize, int workers, boolean interleaved, TransformPipeline transforms) {
+        this(blockSize, workers, interleaved, transforms, DEFAULT_MIN_SAVING);
+    }
+
+    /**
+     * constructor for initialising a block compressor storing the blocks that coding would not shrink enough.
+     *
+     * @param blockSize the number of characters in every block but the last
+     * @param workers the number of threads encoding or decoding blocks
+     * @param interleaved true to split every block into 4 streams that are decoded side by side
+     * @param transforms the transforms run on every block, none for plain Huffman blocks
+     * @param minSaving the share of its stored size a block must save to be coded, between 0 and 1
+     */
+    BlockCompressor(int blockSize, int workers, boolean interleaved, TransformPipeline transforms, double minSaving) {
+        if (blockSize <= 0 || workers <= 0) {
+            throw new IllegalArgumentException("Block size and worker count must be positive");
+        }
+        if (!(minSaving >= 0 && minSaving <= 1)) {
+            throw new IllegalArgumentException("Minimum saving must be between 0 and 1");
+        }
+        this.blockSize = blockSize;
+        this.workers = workers;
+        this.interleaved = interleaved;
+        this.transforms = transforms;
+        this.minSaving = minSaving;
+    }
+
+    /**
+     * compressing a file block by block. Blocks are read in order, encoded on a ForkJoinPool and
+     * written in order, with at most two blocks per worker in memory at any time.
+     *
+     * @param origin the file to be compressed
+     * @param destination the compressed file
+     */
+    void compress(Path origin, Path destination) throws IOException {
+        try (Reader reader = new InputStreamReader(Files.newInputStream(origin), StandardCharsets.UTF_8);
+             OutputStream output = Files.newOutputStream(destination)) {
+            compress(reader, output);
+        }
+    }
+
+    /**
+     * compressing the characters of a reader block by block. Neither the reader nor the
+     * destination is closed.
+     *
+     * @param reader the characters to be compressed
+     * @param destination the stream the compressed file is written to
+     * @return the number of characters compressed
+     */
+    long compress(Reader reader, OutputStream destination) throws IOException {
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(destination, IO_BUFFER_SIZE));
+        output.writeInt(HuffmanHeader.MAGIC);
+        output.writeByte(VERSION);
+
+        // the block index is collected in memory and written after the last block
+        ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+        long position = writeBlocks(reader, output, 5, new DataOutputStream(indexBytes), null, 0);
+        indexBytes.writeTo(output);
+        output.writeInt(indexBytes.size() / INDEX_ENTRY_SIZE);
+        output.writeLong(position);
+        output.flush();
+        return symbolCount(indexBytes, 0);
+    }
+
+    /**
+     * appending the characters of a reader to a file written by compress, as new blocks written after the
+     * trailer, followed by the index of the old and the new blocks and a new trailer. The bytes already in
+     * the file are neither read nor written, so the old index stays valid until the new one is forced to the
+     * storage, and the file is truncated back to its old size if the append fails. The old index and
+     * trailer are left in place between the old and the new blocks.
+     *
+     * @param reader the characters to be appended, not closed
+     * @param channel the compressed file, open for reading and writing
+     * @return the number of characters appended
+     */
+    long append(Reader reader, FileChannel channel) throws IOException {
+        ByteBuffer oldIndex = readIndex(channel);
+        if (HuffmanCoding.readRegion(channel, 4, 1, false).get(0) != VERSION) {
+            throw new IOException("The blocks of a version " + VERSION_WITHOUT_TYPES + " file have no type, it cannot be appended to");
+        }
+        long oldSize = channel.size();
+
+        // finding the code table the new blocks may share with the file
+        long tableOffset = transforms.isEmpty() ? lastTableOffset(channel, oldIndex) : -1;
+        CodeTable reused = tableOffset < 0 ? null : readTable(channel, oldIndex, tableOffset, false);
+
+        ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+        while (oldIndex.hasRemaining()) {
+            indexBytes.write(oldIndex.get());
+        }
+        int oldBlockCount = indexBytes.size() / INDEX_ENTRY_SIZE;
+        try {
+            channel.position(oldSize);
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), IO_BUFFER_SIZE));
+            long position = writeBlocks(reader, output, oldSize, new DataOutputStream(indexBytes), reused, tableOffset);
+            indexBytes.writeTo(output);
+            output.writeInt(indexBytes.size() / INDEX_ENTRY_SIZE);
+            output.writeLong(position);
+            output.flush();
+            // the new trailer becomes the one the file is read with only once it and the blocks are stored
+            channel.force(true);
+        }
+        catch (IOException | RuntimeException exception) {
+            // dropping the new blocks, which leaves the old trailer at the end of the file again
+            channel.truncate(oldSize);
+            throw exception;
+        }
+
+        // counting the characters of the new blocks
+        return symbolCount(indexBytes, oldBlockCount);
+    }
+
+    // adding up the characters of the blocks of an index from the block numbered from
+    private static long symbolCount(ByteArrayOutputStream indexBytes, int from) {
+        ByteBuffer index = ByteBuffer.wrap(indexBytes.toByteArray());
+        long symbolCount = 0;
+        for (int entry = from * INDEX_ENTRY_SIZE; entry < index.limit(); entry += INDEX_ENTRY_SIZE) {
+            symbolCount += index.getInt(entry + 12);
+        }
+        return symbolCount;
+    }
+
+    /**
+     * returning the number of bytes of a file that neither a block, the block index nor the trailer takes,
+     * which are the indexes and trailers that appends left behind.
+     *
+     * @param channel the compressed file
+     * @return the number of unused bytes
+     */
+    static long unusedBytes(FileChannel channel) throws IOException {
+        ByteBuffer index = readIndex(channel);
+        long used = 5 + index.limit() + TRAILER_SIZE;
+        for (int entry = 0; entry < index.limit(); entry += INDEX_ENTRY_SIZE) {
+            used += index.getInt(entry + 8);
+        }
+        return channel.size() - used;
+    }
+
+    /**
+     * copying the blocks of a file one after the other in the order of its index, followed by their index,
+     * so that the bytes appends left unused are dropped. BLOCK_REUSED blocks are pointed at the new position
+     * of the block whose table they use.
+     *
+     * @param source the compressed file
+     * @param destination the stream the compacted file is written to, flushed but left open
+     */
+    static void compact(FileChannel source, OutputStream destination) throws IOException {
+        ByteBuffer index = readIndex(source);
+        int version = HuffmanCoding.readRegion(source, 4, 1, false).get(0);
+        long indexOffset = source.size() - TRAILER_SIZE - index.limit();
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(destination, IO_BUFFER_SIZE));
+        output.writeInt(HuffmanHeader.MAGIC);
+        output.writeByte(version);
+
+        Map<Long, Long> moved = new HashMap<>();
+        ByteArrayOutputStream indexBytes = new ByteArrayOutputStream(index.limit());
+        DataOutputStream newIndex = new DataOutputStream(indexBytes);
+        long position = 5;
+        while (index.hasRemaining()) {
+            long offset = index.getLong();
+            int length = index.getInt();
+            int symbolCount = index.getInt();
+            checkEntry(offset, length, symbolCount, indexOffset);
+            ByteBuffer block = HuffmanCoding.readRegion(source, offset, length, false);
+            if (version == VERSION && length >= 1 + Long.BYTES && block.get(0) == BLOCK_REUSED) {
+                Long tableOffset = moved.get(block.getLong(1));
+                if (tableOffset == null) {
+                    throw new IOException("Reused block refers to no earlier block");
+                }
+                block.putLong(1, tableOffset);
+            }
+            output.write(block.array(), 0, length);
+            moved.put(offset, position);
+            newIndex.writeLong(position);
+            newIndex.writeInt(length);
+            newIndex.writeInt(symbolCount);
+            position += length;
+        }
+        indexBytes.writeTo(output);
+        output.writeInt(indexBytes.size() / INDEX_ENTRY_SIZE);
+        output.writeLong(position);
+        output.flush();
+    }
+
+    /**
+     * reading, encoding and writing the blocks of a reader, with at most two blocks per worker in memory
+     * at any time, and adding their entries to the block index.
+     *
+     * @param reader the characters to be compressed
+     * @param output the stream the blocks are written to
+     * @param position the position in the file of the first block
+     * @param index the stream the entries of the block index are written to
+     * @param reused the code table of an earlier block that the blocks may refer to, or null
+     * @param tableOffset the position of the block holding the reused table
+     * @return the position in the file after the last block
+     */
+    private long writeBlocks(Reader reader, DataOutputStream output, long position, DataOutputStream index, CodeTable reused, long tableOffset) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(workers);
+        try {
+            ArrayDeque<PendingBlock> pending = new ArrayDeque<>();
+            boolean endOfInput = false;
+            while (!endOfInput || !pending.isEmpty()) {
+                // submitting blocks until enough of them are in flight
+                while (!endOfInput && pending.size() < 2 * workers) {
+                    char[] block = new char[blockSize];
+                    int length = readFully(reader, block);
+                    if (length == 0) {
+                        endOfInput = true;
+                        break;
+                    }
+                    pending.add(new PendingBlock(pool.submit(() -> reused == null
+                            ? encodeBlock(block, length, interleaved, transforms, minSaving)
+                            : encodeBlock(block, length, interleaved, reused, tableOffset, minSaving)), length));
+                    endOfInput = length < blockSize;
+                }
+
+                // writing the oldest block once it is encoded
+                if (!pending.isEmpty()) {
+                    PendingBlock next = pending.poll();
+                    byte[] encoded = await(next.result);
+                    output.write(encoded);
+                    index.writeLong(position);
+                    index.writeInt(encoded.length);
+                    index.writeInt(next.symbolCount);
+                    position += encoded.length;
+                }
+            }
+            return position;
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * finding the last block of a file that holds a code table, going back from the end of the file.
+     * Reused blocks lead to the block whose table they use.
+     *
+     * @return the position of the block, or -1 if no block holds a code table
+     */
+    private static long lastTableOffset(FileChannel channel, ByteBuffer index) throws IOException {
+        for (int entry = index.limit() - INDEX_ENTRY_SIZE; entry >= 0; entry -= INDEX_ENTRY_SIZE) {
+            long offset = index.getLong(entry);
+            if (index.getInt(entry + 8) < 1 + Long.BYTES) {
+                continue;
+            }
+            ByteBuffer start = HuffmanCoding.readRegion(channel, offset, 1 + Long.BYTES, false);
+            int type = start.get(0);
+            if (type == BLOCK_HUFFMAN || type == BLOCK_HUFFMAN_4) {
+                return offset;
+            }
+            if (type == BLOCK_REUSED) {
+                return start.getLong(1);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * reading the code table of a BLOCK_HUFFMAN or BLOCK_HUFFMAN_4 block, found in the block index by its position.
+     *
+     * @param channel the compressed file
+     * @param index the block index
+     * @param offset the position of the block
+     * @param mapped true to map the block into memory instead of reading it onto the heap
+     * @return the code table of the block
+     */
+    private static CodeTable readTable(FileChannel channel, ByteBuffer index, long offset, boolean mapped) throws IOException {
+        // the blocks are in the index in the order of their positions
+        int low = 0;
+        int high = index.limit() / INDEX_ENTRY_SIZE - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleOffset = index.getLong(middle * INDEX_ENTRY_SIZE);
+            if (middleOffset < offset) {
+                low = middle + 1;
+            }
+            else if (middleOffset > offset) {
+                high = middle - 1;
+            }
+            else {
+                ByteBuffer block = HuffmanCoding.readRegion(channel, offset, index.getInt(middle * INDEX_ENTRY_SIZE + 8), mapped);
+                try {
+                    int type = block.get();
+                    if (type != BLOCK_HUFFMAN && type != BLOCK_HUFFMAN_4) {
+                        throw new IOException("Reused block refers to a block without a code table");
+                    }
+                    return HuffmanHeader.readCodeLengths(block);
+                }
+                catch (BufferUnderflowException exception) {
+                    throw new IOException("Truncated block");
+                }
+            }
+        }
+        throw new IOException("Reused block refers to no block of the file");
+    }
+
+    /**
+     * decompressing a file written by compress, decoding its blocks in parallel and writing them in order.
+     *
+     * @param origin the compressed file
+     * @param destination the decompressed file
+     */
+    void decompress(Path origin, Path destination) throws IOException {
+        try (FileChannel channel = FileChannel.open(origin, StandardOpenOption.READ);
+             OutputStream output = Files.newOutputStream(destination)) {
+            decompress(channel, output, false);
+        }
+    }
+
+    /**
+     * decompressing a file written by compress. Only the trailer and the block index are read up
+     * front, every block is read or mapped on its own by the task decoding it, so the compressed file
+     * may be larger than a single buffer. The destination is flushed but not closed.
+     *
+     * @param channel the compressed file
+     * @param destination the stream the decompressed file is written to
+     * @param mapped true to map the blocks into memory instead of reading them onto the heap
+     * @return the number of characters decompressed
+     */
+    long decompress(FileChannel channel, OutputStream destination, boolean mapped) throws IOException {
+        ByteBuffer index = readIndex(channel);
+        int version = HuffmanCoding.readRegion(channel, 4, 1, false).get(0);
+        int blockCount = index.limit() / INDEX_ENTRY_SIZE;
+        long indexOffset = channel.size() - TRAILER_SIZE - index.limit();
+
+        Map<Long, CodeTable> tables = new ConcurrentHashMap<>();
+        ForkJoinPool pool = new ForkJoinPool(workers);
+        try {
+            Writer writer = new OutputStreamWriter(new BufferedOutputStream(destination, IO_BUFFER_SIZE), StandardCharsets.UTF_8);
+            ArrayDeque<Future<char[]>> pending = new ArrayDeque<>();
+            long total = 0;
+            int nextBlock = 0;
+            while (nextBlock < blockCount || !pending.isEmpty()) {
+                // submitting blocks until enough of them are in flight
+                while (nextBlock < blockCount && pending.size() < 2 * workers) {
+                    int entry = nextBlock * INDEX_ENTRY_SIZE;
+                    long offset = index.getLong(entry);
+                    int length = index.getInt(entry + 8);
+                    int symbolCount = index.getInt(entry + 12);
+                    checkEntry(offset, length, symbolCount, indexOffset);
+                    pending.add(pool.submit(() -> {
+                        ByteBuffer block = HuffmanCoding.readRegion(channel, offset, length, mapped);
+                        return decodeBlock(block, symbolCount, version, reusedTable(channel, index, block, version, tables, mapped));
+                    }));
+                    total += symbolCount;
+                    nextBlock++;
+                }
+
+                // writing the oldest block once it is decoded
+                writer.write(await(pending.poll()));
+            }
+            writer.flush();
+            return total;
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * decompressing the characters [offset, offset + length) of a file written by compress, decoding
+     * only the blocks that overlap the range.
+     *
+     * @param channel the compressed file
+     * @param offset the position of the first character in the uncompressed file
+     * @param length the number of characters
+     * @return the characters of the range
+     */
+    char[] decompressRange(FileChannel channel, long offset, int length) throws IOException {
+        ByteBuffer index = readIndex(channel);
+        int version = HuffmanCoding.readRegion(channel, 4, 1, false).get(0);
+        long indexOffset = channel.size() - TRAILER_SIZE - index.limit();
+
+        Map<Long, CodeTable> tables = new HashMap<>();
+        char[] range = new char[length];
+        int copied = 0;
+        long blockStart = 0;
+        // going through the whole index, so that the range is checked against every character of the file
+        // even when it is empty or ends before the last block
+        for (int entry = 0; entry < index.limit(); entry += INDEX_ENTRY_SIZE) {
+            long blockOffset = index.getLong(entry);
+            int blockLength = index.getInt(entry + 8);
+            int symbolCount = index.getInt(entry + 12);
+            checkEntry(blockOffset, blockLength, symbolCount, indexOffset);
+
+            // copying the part of the block that falls into the range
+            if (copied < length && blockStart + symbolCount > offset + copied) {
+                ByteBuffer blockBytes = HuffmanCoding.readRegion(channel, blockOffset, blockLength, true);
+                char[] block = decodeBlock(blockBytes, symbolCount, version, reusedTable(channel, index, blockBytes, version, tables, true));
+                int from = (int) (offset + copied - blockStart);
+                int chunk = Math.min(length - copied, symbolCount - from);
+                System.arraycopy(block, from, range, copied, chunk);
+                copied += chunk;
+            }
+            blockStart += symbolCount;
+        }
+        if (offset + length > blockStart) {
+            throw new IllegalArgumentException("Range [" + offset + ", " + (offset + length) + ") outside of the " + blockStart + " characters of the file");
+        }
+        return range;
+    }
+
+    /**
+     * checking the magic number and the trailer of a file written by compress and reading its block index.
+     *
+     * @param channel the compressed file
+     * @return the block index, INDEX_ENTRY_SIZE bytes per block
+     */
+    private static ByteBuffer readIndex(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size < 5 + TRAILER_SIZE) {
+            throw new IOException("Not a block compressed Huffman file");
+        }
+        ByteBuffer start = HuffmanCoding.readRegion(channel, 0, 5, false);
+        if (start.getInt(0) != HuffmanHeader.MAGIC || !isBlockVersion(start.get(4))) {
+            throw new IOException("Not a block compressed Huffman file");
+        }
+        ByteBuffer trailer = HuffmanCoding.readRegion(channel, size - TRAILER_SIZE, TRAILER_SIZE, false);
+        int blockCount = trailer.getInt(0);
+        long indexOffset = trailer.getLong(4);
+        if (blockCount < 0 || indexOffset < 5 || indexOffset + (long) blockCount * INDEX_ENTRY_SIZE != size - TRAILER_SIZE) {
+            throw new IOException("Corrupt block index");
+        }
+        return HuffmanCoding.readRegion(channel, indexOffset, (long) blockCount * INDEX_ENTRY_SIZE, false);
+    }
+
+    /**
+     * returning the code table a BLOCK_REUSED block refers to, read once per file and kept in tables.
+     *
+     * @return the code table, or null if the block is of another type
+     */
+    private static CodeTable reusedTable(FileChannel channel, ByteBuffer index, ByteBuffer block, int version,
+                                         Map<Long, CodeTable> tables, boolean mapped) throws IOException {
+        if (version != VERSION || block.limit() < 1 + Long.BYTES || block.get(0) != BLOCK_REUSED) {
+            return null;
+        }
+        long tableOffset = block.getLong(1);
+        CodeTable table = tables.get(tableOffset);
+        if (table == null) {
+            table = readTable(channel, index, tableOffset, mapped);
+            tables.put(tableOffset, table);
+        }
+        return table;
+    }
+
+    /**
+     * checking that an entry of the block index points into the blocks.
+     */
+    private static void checkEntry(long offset, int length, int symbolCount, long indexOffset) throws IOException {
+        if (offset < 5 || length < 0 || offset + length > indexOffset || symbolCount < 0) {
+            throw new IOException("Corrupt block index");
+        }
+    }
+
+    /**
+     * checking whether a version number belongs to a file compressed in blocks.
+     *
+     * @param version the version byte of a compressed file
+     * @return true for the versions written by compress
+     */
+    static boolean isBlockVersion(int version) {
+        return version == VERSION || version == VERSION_WITHOUT_TYPES;
+    }
+
+    /**
+     * checking whether coding data saves enough against storing it.
+     *
+     * @param codedBytes the size of the coded data, its code table included
+     * @param storedBytes the size of the data stored as it is
+     * @param minSaving the share of storedBytes that coding must save, between 0 and 1
+     * @return true if the data should be coded
+     */
+    static boolean worthCoding(long codedBytes, long storedBytes, double minSaving) {
+        return codedBytes <= storedBytes - (long) Math.ceil(storedBytes * minSaving);
+    }
+
+    /**
+     * encoding one block, after running the transforms on it when there are any.
+     *
+     * @param block the characters of the block
+     * @param length the number of characters in the block
+     * @param interleaved true to split the coded characters into 4 streams
+     * @param transforms the transforms to run
+     * @return the encoded block, type included
+     */
+    static byte[] encodeBlock(char[] block, int length, boolean interleaved, TransformPipeline transforms) throws IOException {
+        return encodeBlock(block, length, interleaved, transforms, DEFAULT_MIN_SAVING);
+    }
+
+    /**
+     * encoding one block, after running the transforms on it when there are any, and storing it when the
+     * result would not save minSaving of its stored size.
+     *
+     * @param block the characters of the block
+     * @param length the number of characters in the block
+     * @param interleaved true to split the coded characters into 4 streams
+     * @param transforms the transforms to run
+     * @param minSaving the share of its stored size the block must save to be coded
+     * @return the encoded block, type included
+     */
+    static byte[] encodeBlock(char[] block, int length, boolean interleaved, TransformPipeline transforms, double minSaving) throws IOException {
+        if (transforms.isEmpty()) {
+            return encodeBlock(block, length, interleaved, minSaving);
+        }
+        ByteArrayOutputStream parameters = new ByteArrayOutputStream();
+        TransformPipeline.Result result = transforms.forward(block, length, new DataOutputStream(parameters));
+        // the transformed characters are always coded, the whole block is compared with its stored size below
+        byte[] inner = encodeBlock(result.data, result.length, interleaved, 0);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(inner.length + parameters.size() + 16);
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeByte(BLOCK_TRANSFORMED);
+        data.writeByte(result.applied);
+        HuffmanHeader.writeVarInt(data, result.length);
+        HuffmanHeader.writeVarInt(data, inner.length);
+        data.write(inner);
+        parameters.writeTo(data);
+        data.flush();
+        if (!worthCoding(bytes.size(), storedSize(block, length), minSaving)) {
+            return storeBlock(block, length);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * encoding one block with its own canonical code table, or storing it when coding would not save
+     * DEFAULT_MIN_SAVING of its stored size.
+     *
+     * @param block the characters of the block
+     * @param length the number of characters in the block
+     * @param interleaved true to split the block into 4 streams
+     * @return the block type, the code lengths and the encoded bits
+     */
+    static byte[] encodeBlock(char[] block, int length, boolean interleaved) throws IOException {
+        return encodeBlock(block, length, interleaved, DEFAULT_MIN_SAVING);
+    }
+
+    /**
+     * encoding one block with its own canonical code table. The coded size is worked out from the counts
+     * and the code lengths before encoding, and a block that would not save minSaving of its stored size
+     * is stored as it is; a block of a single character is written as a run.
+     *
+     * @param block the characters of the block
+     * @param length the number of characters in the block
+     * @param interleaved true to split the block into 4 streams
+     * @param minSaving the share of its stored size the block must save to be coded
+     * @return the block type, and the code lengths and encoded bits, the stored characters or the run
+     */
+    static byte[] encodeBlock(char[] block, int length, boolean interleaved, double minSaving) throws IOException {
+        long[] counts = Histogram.count(block, 0, length);
+        if (length > 0 && counts[block[0]] == length) {
+            return new byte[] {BLOCK_RUN, (byte) (block[0] >>> 8), (byte) block[0]};
+        }
+        CodeTable codeTable = HuffmanCoding.buildCodeTable(counts);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(length / 2 + 1024);
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeByte(interleaved ? BLOCK_HUFFMAN_4 : BLOCK_HUFFMAN);
+        HuffmanHeader.writeCodeLengths(data, codeTable);
+        data.flush();
+
+        // every segment may end with a partial byte, and the jump table holds the sizes of the first 3
+        long codedSize = bytes.size() + (PackageMerge.encodedBits(counts, codeTable) + 7) / 8
+                + (interleaved ? (STREAMS - 1) * (Integer.BYTES + 1) : 0);
+        if (!worthCoding(codedSize, storedSize(block, length), minSaving)) {
+            return storeBlock(block, length);
+        }
+
+        if (!interleaved) {
+            encodeStream(block, 0, length, codeTable, bytes);
+            return bytes.toByteArray();
+        }
+
+        // encoding every segment on its own, the jump table needs their sizes before their bits
+        int[] segments = segmentLengths(length);
+        ByteArrayOutputStream[] streams = new ByteArrayOutputStream[STREAMS];
+        int offset = 0;
+        for (int stream = 0; stream < STREAMS; stream++) {
+            streams[stream] = new ByteArrayOutputStream(segments[stream] / 2 + 16);
+            encodeStream(block, offset, segments[stream], codeTable, streams[stream]);
+            offset += segments[stream];
+        }
+        for (int stream = 0; stream < STREAMS - 1; stream++) {
+            data.writeInt(streams[stream].size());
+        }
+        data.flush();
+        for (ByteArrayOutputStream stream : streams) {
+            stream.writeTo(bytes);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * encoding one block with the code table of an earlier block of the file when the table fits its
+     * characters, as SharedTables.fits decides, and with a table of its own otherwise.
+     *
+     * @param block the characters of the block
+     * @param length the number of characters in the block
+     * @param interleaved true to split the block into 4 streams when it gets a table of its own
+     * @param reused the code table of the earlier block
+     * @param tableOffset the position of the earlier block in the file
+     * @param minSaving the share of its stored size the block must save to be coded
+     * @return the encoded block, type included
+     */
+    static byte[] encodeBlock(char[] block, int length, boolean interleaved, CodeTable reused, long tableOffset, double minSaving) throws IOException {
+        long[] counts = Histogram.count(block, 0, length);
+        // blocks of a single character are written as runs by encodeBlock
+        if (length > 0 && counts[block[0]] != length && SharedTables.fits(counts, reused, HuffmanCoding.buildCodeTable(counts))) {
+            long codedSize = 1 + Long.BYTES + (PackageMerge.encodedBits(counts, reused) + 7) / 8;
+            if (worthCoding(codedSize, storedSize(block, length), minSaving)) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) codedSize);
+                DataOutputStream data = new DataOutputStream(bytes);
+                data.writeByte(BLOCK_REUSED);
+                data.writeLong(tableOffset);
+                data.flush();
+                encodeStream(block, 0, length, reused, bytes);
+                return bytes.toByteArray();
+            }
+        }
+        return encodeBlock(block, length, interleaved, minSaving);
+    }
+
+    /**
+     * returning the size of characters stored as a BLOCK_STORED block, which is their size in UTF-8 except
+     * for characters outside the Basic Multilingual Plane, whose surrogates take 3 bytes each.
+     *
+     * @param block the characters
+     * @param length the number of characters
+     * @return the size in bytes of the block, type included
+     */
+    static long storedSize(char[] block, int length) {
+        long size = 1;
+        for (int i = 0; i < length; i++) {
+            char character = block[i];
+            size += character < 0x80 ? 1 : character < 0x800 ? 2 : 3;
+        }
+        return size;
+    }
+
+    /**
+     * storing the characters of a block as they are, in UTF-8. Surrogates are encoded one by one rather
+     * than as pairs, so that a pair split by the end of a block still comes back as it was.
+     *
+     * @return the block type and the characters
+     */
+    static byte[] storeBlock(char[] block, int length) {
+        byte[] bytes = new byte[Math.toIntExact(storedSize(block, length))];
+        bytes[0] = BLOCK_STORED;
+        int position = 1;
+        for (int i = 0; i < length; i++) {
+            char character = block[i];
+            if (character < 0x80) {
+                bytes[position++] = (byte) character;
+            }
+            else if (character < 0x800) {
+                bytes[position++] = (byte) (0xC0 | character >>> 6);
+                bytes[position++] = (byte) (0x80 | character & 0x3F);
+            }
+            else {
+                bytes[position++] = (byte) (0xE0 | character >>> 12);
+                bytes[position++] = (byte) (0x80 | character >>> 6 & 0x3F);
+                bytes[position++] = (byte) (0x80 | character & 0x3F);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * reading the characters of a block written by storeBlock.
+     *
+     * @param block the bytes of the block, positioned after its type
+     * @param symbolCount the number of characters in the block
+     * @return the characters of the block
+     */
+    private static char[] readStoredBlock(ByteBuffer block, int symbolCount) throws IOException {
+        char[] characters = new char[symbolCount];
+        for (int i = 0; i < symbolCount; i++) {
+            if (!block.hasRemaining()) {
+                throw new IOException("Corrupt stored block");
+            }
+            int first = block.get() & 0xFF;
+            if (first < 0x80) {
+                characters[i] = (char) first;
+                continue;
+            }
+            // checking the lead byte and that every following byte is a continuation byte
+            int following = (first & 0xE0) == 0xC0 ? 1 : (first & 0xF0) == 0xE0 ? 2 : -1;
+            if (following < 0 || block.remaining() < following) {
+                throw new IOException("Corrupt stored block");
+            }
+            int character = first & (following == 1 ? 0x1F : 0x0F);
+            for (int j = 0; j < following; j++) {
+                int next = block.get() & 0xFF;
+                if ((next & 0xC0) != 0x80) {
+                    throw new IOException("Corrupt stored block");
+                }
+                character = character << 6 | next & 0x3F;
+            }
+            characters[i] = (char) character;
+        }
+        if (block.hasRemaining()) {
+            throw new IOException("Corrupt stored block");
+        }
+        return characters;
+    }
+
+    /**
+     * encoding characters into a stream of bits padded to a whole byte.
+     */
+    static void encodeStream(char[] block, int offset, int length, CodeTable codeTable, OutputStream output) throws IOException {
+        encodeStream(block, offset, length, codeTable, new BitWriter(output, IO_BUFFER_SIZE));
+    }
+
+    /**
+     * encoding characters as a single bit stream with a bit writer that is reused from one call to the next.
+     *
+     * @param block the characters to encode
+     * @param offset the index of the first character
+     * @param length the number of characters
+     * @param codeTable the codes of the characters
+     * @param bitWriter the writer the codes are written to, finished and so padded to a whole byte
+     */
+    static void encodeStream(char[] block, int offset, int length, CodeTable codeTable, BitWriter bitWriter) throws IOException {
+        final long[] codes = codeTable.codes;
+        final int[] lengths = codeTable.lengths;
+        for (int i = offset; i < offset + length; i++) {
+            char character = block[i];
+            bitWriter.writeBits(codes[character], lengths[character]);
+        }
+        bitWriter.finish();
+    }
+
+    /**
+     * returning the number of characters in each of the 4 segments of a block, the last one may be shorter.
+     *
+     * @param symbolCount the number of characters in the block
+     * @return the length of every segment
+     */
+    static int[] segmentLengths(int symbolCount) {
+        int segment = (int) (((long) symbolCount + STREAMS - 1) / STREAMS);
+        int[] segments = new int[STREAMS];
+        for (int stream = 0; stream < STREAMS; stream++) {
+            segments[stream] = (int) Math.min(segment, Math.max(0, symbolCount - (long) stream * segment));
+        }
+        return segments;
+    }
+
+    /**
+     * decoding one block written by encodeBlock.
+     *
+     * @param block the bytes of the block, from its type to its last encoded byte
+     * @param symbolCount the number of characters in the block
+     * @param version the version of the file, blocks of version 2 files have no type
+     * @return the characters of the block
+     */
+    static char[] decodeBlock(ByteBuffer block, int symbolCount, int version) throws IOException {
+        return decodeBlock(block, symbolCount, version, null);
+    }
+
+    /**
+     * decoding one block written by encodeBlock, BLOCK_REUSED blocks included.
+     *
+     * @param block the bytes of the block, from its type to its last encoded byte
+     * @param symbolCount the number of characters in the block
+     * @param version the version of the file, blocks of version 2 files have no type
+     * @param reused the code table of the block a BLOCK_REUSED block refers to, or null for other blocks
+     * @return the characters of the block
+     */
+    static char[] decodeBlock(ByteBuffer block, int symbolCount, int version, CodeTable reused) throws IOException {
+        try {
+            int type = version == VERSION_WITHOUT_TYPES ? BLOCK_HUFFMAN : block.get() & 0xFF;
+            if (type == BLOCK_TRANSFORMED) {
+                return decodeTransformedBlock(block, symbolCount);
+            }
+            if (type == BLOCK_STORED) {
+                return readStoredBlock(block, symbolCount);
+            }
+            if (type == BLOCK_RUN) {
+                char[] characters = new char[symbolCount];
+                Arrays.fill(characters, block.getChar());
+                return characters;
+            }
+            if (type == BLOCK_REUSED) {
+                if (reused == null) {
+                    throw new IOException("Reused block decoded without the table it refers to");
+                }
+                block.getLong();
+            }
+            else if (type != BLOCK_HUFFMAN && type != BLOCK_HUFFMAN_4) {
+                throw new IOException("Unknown block type " + type);
+            }
+            CodeTable codeTable = type == BLOCK_REUSED ? reused : HuffmanHeader.readCodeLengths(block);
+            HuffmanDecoder decoder = new HuffmanDecoder(codeTable);
+            char[] characters = new char[symbolCount];
+
+            if (type == BLOCK_HUFFMAN || type == BLOCK_REUSED) {
+                if (decoder.decode(block, (long) block.position() * Byte.SIZE, (long) block.limit() * Byte.SIZE, characters, 0, symbolCount) < 0) {
+                    throw new IOException("Corrupt block");
+                }
+                return characters;
+            }
+
+            // locating the 4 streams from the jump table, the last one ends with the block
+            long[] bitOffsets = new long[STREAMS];
+            long[] bitLimits = new long[STREAMS];
+            long streamStart = block.position() + (STREAMS - 1) * Integer.BYTES;
+            for (int stream = 0; stream < STREAMS; stream++) {
+                long streamEnd = stream < STREAMS - 1 ? streamStart + (block.getInt() & 0xFFFFFFFFL) : block.limit();
+                if (streamEnd > block.limit()) {
+                    throw new IOException("Corrupt block jump table");
+                }
+                bitOffsets[stream] = streamStart * Byte.SIZE;
+                bitLimits[stream] = streamEnd * Byte.SIZE;
+                streamStart = streamEnd;
+            }
+            if (!decoder.decodeStreams(block, bitOffsets, bitLimits, characters, segmentLengths(symbolCount))) {
+                throw new IOException("Corrupt block");
+            }
+            return characters;
+        }
+        catch (BufferUnderflowException exception) {
+            throw new IOException("Truncated block");
+        }
+    }
+
+    /**
+     * decoding the inner block of a BLOCK_TRANSFORMED block and undoing the transforms recorded for it.
+     *
+     * @param block the bytes of the block, positioned after its type
+     * @param symbolCount the number of characters in the block
+     * @return the characters of the block
+     */
+    private static char[] decodeTransformedBlock(ByteBuffer block, int symbolCount) throws IOException {
+        int applied = block.get() & 0xFF;
+        int length = HuffmanHeader.readVarInt(block);
+        int size = HuffmanHeader.readVarInt(block);
+        if (length < 0 || size <= 0 || size > block.remaining()) {
+            throw new IOException("Corrupt transformed block");
+        }
+        ByteBuffer inner = block.slice();
+        inner.limit(size);
+        if (inner.get(0) == BLOCK_TRANSFORMED) {
+            throw new IOException("Corrupt transformed block");
+        }
+        char[] transformed = decodeBlock(inner, length, VERSION);
+        block.position(block.position() + size);
+
+        char[] characters = TransformPipeline.inverse(applied, transformed, block);
+        if (characters.length != symbolCount) {
+            throw new IOException("Corrupt transformed block");
+        }
+        return characters;
+    }
+
+    /**
+     * reading characters until the buffer is full or the input ends.
+     *
+     * @return the number of characters read
+     */
+    private static int readFully(Reader reader, char[] buffer) throws IOException {
+        int length = 0;
+        int read;
+        while (length < buffer.length && (read = reader.read(buffer, length, buffer.length - length)) != -1) {
+            length += read;
+        }
+        return length;
+    }
+
+    /**
+     * waiting for a task, rethrowing its I/O exception if it failed.
+     */
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        catch (ExecutionException exception) {
+            if (exception.getCause() instanceof IOException) {
+                throw (IOException) exception.getCause();
+            }
+            throw new IOException(exception.getCause());
+        }
+    }
+
+    //Block submitted for encoding, together with the number of characters in it
+    private static final class PendingBlock {
+        final Future<byte[]> result;
+        final int symbolCount;
+
+        PendingBlock(Future<byte[]> result, int symbolCount) {
+            this.result = result;
+            this.symbolCount = symbolCount;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+//Reversible transform of the characters of a block, run before the block is Huffman coded so that the
+//characters it outputs are more skewed than the ones it was given
+interface BlockTransform {
+    /**
+     * transforming the characters of a block.
+     *
+     * @param block the characters to transform
+     * @param length the number of characters
+     * @param parameters the stream receiving whatever inverse needs besides the transformed characters
+     * @return the transformed characters, exactly as many as the array holds, or null if the transform
+     *         cannot be applied to these characters
+     */
+    char[] forward(char[] block, int length, DataOutputStream parameters) throws IOException;
+
+    /**
+     * undoing forward.
+     *
+     * @param transformed the characters returned by forward
+     * @param parameters the bytes written by forward, positioned at their start and left after their end
+     * @return the characters given to forward
+     */
+    char[] inverse(char[] transformed, ByteBuffer parameters) throws IOException;
+}
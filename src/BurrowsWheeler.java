@@ -0,0 +1,78 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+//Burrows-Wheeler transform of a block: the character before every suffix, in the order of the suffixes,
+//which groups the characters found in the same context. The suffixes are sorted with SuffixArray after a
+//unique end marker, so the only parameter is the row of the marker, which is left out of the output.
+class BurrowsWheeler implements BlockTransform {
+    @Override
+    public char[] forward(char[] block, int length, DataOutputStream parameters) throws IOException {
+        // numbering the characters that occur from 1 in character order, 0 is the end marker, which keeps
+        // the buckets of the suffix sort as small as the alphabet of the block
+        long[] counts = Histogram.count(block, 0, length);
+        int[] symbolOf = new int[counts.length];
+        int alphabetSize = 1;
+        for (int character = 0; character < counts.length; character++) {
+            if (counts[character] > 0) {
+                symbolOf[character] = alphabetSize++;
+            }
+        }
+        int[] text = new int[length + 1];
+        for (int i = 0; i < length; i++) {
+            text[i] = symbolOf[block[i]];
+        }
+        int[] suffixes = SuffixArray.build(text, length + 1, alphabetSize);
+
+        // the suffix starting at 0 has the end marker before it, its row is written instead
+        char[] transformed = new char[length];
+        int primary = 0;
+        for (int row = 0, j = 0; row <= length; row++) {
+            if (suffixes[row] == 0) {
+                primary = row;
+            }
+            else {
+                transformed[j++] = block[suffixes[row] - 1];
+            }
+        }
+        HuffmanHeader.writeVarInt(parameters, primary);
+        return transformed;
+    }
+
+    @Override
+    public char[] inverse(char[] transformed, ByteBuffer parameters) throws IOException {
+        int length = transformed.length;
+        int primary = HuffmanHeader.readVarInt(parameters);
+        if (length > 0 ? primary < 1 || primary > length : primary != 0) {
+            throw new IOException("Corrupt Burrows-Wheeler row");
+        }
+
+        // the row of every character in the sorted first column, after the end marker in row 0
+        int[] next = new int[CodeTable.ALPHABET_SIZE];
+        for (char character : transformed) {
+            next[character]++;
+        }
+        int sum = 1;
+        for (int character = 0; character < next.length; character++) {
+            int count = next[character];
+            next[character] = sum;
+            sum += count;
+        }
+        // mapping every row to the row of the suffix starting one character earlier
+        int[] previousRow = new int[length + 1];
+        for (int row = 0; row <= length; row++) {
+            if (row != primary) {
+                previousRow[row] = next[transformed[row < primary ? row : row - 1]]++;
+            }
+        }
+
+        // walking back from the row of the empty suffix, the last character comes first
+        char[] block = new char[length];
+        int row = 0;
+        for (int i = length - 1; i >= 0; i--) {
+            block[i] = transformed[row < primary ? row : row - 1];
+            row = previousRow[row];
+        }
+        return block;
+    }
+}
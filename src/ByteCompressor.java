@@ -0,0 +1,367 @@
+import java.io.ByteArrayOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/*
+ * Layout of a file compressed as raw bytes:
+ *   magic        4 bytes  "HUFF"
+ *   version      1 byte   9
+ *   byteCount    8 bytes  number of bytes encoded
+ *   code lengths          as written by HuffmanHeader.writeCodeLengths, over the 256 byte values
+ *   encoded bits          padded to a whole byte
+ * The bytes of the file are coded as they are, without decoding any charset, so any file round trips
+ * exactly. With 256 symbols and no code longer than MAX_CODE_LENGTH bits, the counts, the codes and the
+ * single decoding table all fit in the L1 cache.
+ *
+ * Layout of a file stored as raw bytes, when coding would not save enough:
+ *   magic        4 bytes  "HUFF"
+ *   version      1 byte   10
+ *   byteCount    8 bytes  number of bytes stored
+ *   bytes                 the bytes of the file as they are
+ */
+class ByteCompressor {
+    static final int VERSION = 9;
+    static final int VERSION_STORED = 10;
+    // magic, version and byte count
+    static final int STORED_HEADER_SIZE = 13;
+    static final int ALPHABET_SIZE = 256;
+    // longest code, so that every code is resolved by the primary decoding table alone
+    static final int MAX_CODE_LENGTH = HuffmanDecoder.PRIMARY_BITS;
+    private static final int IO_BUFFER_SIZE = 1 << 16;
+
+    //Counts, code table, decoder and buffers one thread reuses from one call to the next, so that coding
+    //many small payloads does not build a table and allocate buffers for every one of them
+    static final class State {
+        final long[] counts = new long[ALPHABET_SIZE];
+        final CodeTable codeTable = new CodeTable(ALPHABET_SIZE);
+        final byte[] buffer = new byte[IO_BUFFER_SIZE];
+        // the table the decoder was built from, a payload with the same code lengths is decoded by it again
+        private CodeTable decoderTable = null;
+        private HuffmanDecoder decoder = null;
+        private BitWriter bitWriter = null;
+        private OutputStream destination = null;
+
+        // taking the bit writer of the destination, a new one when the destination changed, the writer is
+        // only kept by keep once it is finished so that a failed call leaves no bits behind
+        BitWriter takeBitWriter(OutputStream destination) {
+            BitWriter taken = destination == this.destination ? bitWriter : new BitWriter(destination, IO_BUFFER_SIZE);
+            bitWriter = null;
+            this.destination = null;
+            return taken;
+        }
+
+        void keep(BitWriter bitWriter, OutputStream destination) {
+            this.bitWriter = bitWriter;
+            this.destination = destination;
+        }
+
+        // returning the decoder of the code table, building it only when the code lengths changed
+        HuffmanDecoder decoder(CodeTable codeTable) {
+            if (decoderTable == null || !Arrays.equals(decoderTable.lengths, codeTable.lengths)) {
+                decoder = new HuffmanDecoder(codeTable);
+                decoderTable = codeTable;
+            }
+            return decoder;
+        }
+    }
+
+    /**
+     * counting the bytes of a file, a buffer at a time.
+     *
+     * @param origin the file to count
+     * @return the count of every byte value
+     */
+    static long[] count(Path origin) throws IOException {
+        long[] counts = new long[ALPHABET_SIZE];
+        byte[] buffer = new byte[IO_BUFFER_SIZE];
+        try (InputStream input = Files.newInputStream(origin)) {
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                Histogram.countBytes(buffer, 0, read, counts);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * building the code table of byte counts, with no code longer than MAX_CODE_LENGTH bits.
+     *
+     * @param counts the count of every byte value
+     * @return the code table over the 256 byte values
+     */
+    static CodeTable buildCodeTable(long[] counts) {
+        return HuffmanCoding.buildCodeTable(counts, MAX_CODE_LENGTH);
+    }
+
+    /**
+     * working out the size of the compressed file from the counts and the code lengths, without encoding.
+     *
+     * @param counts the count of every byte value
+     * @param codeTable the codes of the byte values
+     * @return the size of the compressed file in bytes, header included
+     */
+    static long codedSize(long[] counts, CodeTable codeTable) throws IOException {
+        ByteArrayOutputStream codeLengths = new ByteArrayOutputStream();
+        HuffmanHeader.writeCodeLengths(new DataOutputStream(codeLengths), codeTable);
+        return STORED_HEADER_SIZE + codeLengths.size() + (PackageMerge.encodedBits(counts, codeTable) + 7) / 8;
+    }
+
+    /**
+     * storing a file as it is behind a short header, for data that coding would not shrink.
+     *
+     * @param origin the file to store
+     * @param destination the stream the stored file is written to, flushed but left open
+     * @param byteCount the number of bytes in the file
+     */
+    static void store(Path origin, OutputStream destination, long byteCount) throws IOException {
+        writeStoredHeader(destination, byteCount);
+        if (Files.copy(origin, destination) != byteCount) {
+            throw new IOException("Input changed while being compressed");
+        }
+        destination.flush();
+    }
+
+    private static void writeStoredHeader(OutputStream destination, long byteCount) throws IOException {
+        DataOutputStream output = new DataOutputStream(destination);
+        output.writeInt(HuffmanHeader.MAGIC);
+        output.writeByte(VERSION_STORED);
+        output.writeLong(byteCount);
+        output.flush();
+    }
+
+    /**
+     * compressing bytes held in memory, storing them as they are when coding would not save minSaving of
+     * their size.
+     *
+     * @param data the bytes to compress
+     * @param offset the index of the first byte
+     * @param length the number of bytes
+     * @param destination the stream the compressed bytes are written to, flushed but left open
+     * @param minSaving the share of the stored size coding must save, between 0 and 1
+     * @param state the counts, table and buffers of the calling thread, filled again by this call
+     * @return true if the bytes were coded, false if they were stored
+     */
+    static boolean compress(byte[] data, int offset, int length, OutputStream destination, double minSaving, State state) throws IOException {
+        long[] counts = state.counts;
+        Arrays.fill(counts, 0);
+        Histogram.countBytes(data, offset, length, counts);
+        CodeTable codeTable = CodeLengths.buildCodeTable(counts, MAX_CODE_LENGTH, state.codeTable);
+        if (BlockCompressor.worthCoding(codedSize(counts, codeTable), STORED_HEADER_SIZE + (long) length, minSaving)) {
+            writeHeader(destination, codeTable, length);
+            BitWriter bitWriter = state.takeBitWriter(destination);
+            encode(data, offset, length, codeTable, bitWriter);
+            bitWriter.finish();
+            state.keep(bitWriter, destination);
+            destination.flush();
+            return true;
+        }
+        writeStoredHeader(destination, length);
+        destination.write(data, offset, length);
+        destination.flush();
+        return false;
+    }
+
+    /**
+     * encoding a file a buffer at a time.
+     *
+     * @param origin the file to compress, counted beforehand
+     * @param destination the stream the compressed file is written to, flushed but left open
+     * @param codeTable the codes of the byte values
+     * @param byteCount the number of bytes in the file
+     * @return the number of encoded bits, without the header and the padding
+     */
+    static long compress(Path origin, OutputStream destination, CodeTable codeTable, long byteCount) throws IOException {
+        try (InputStream input = Files.newInputStream(origin)) {
+            return compress(input, destination, codeTable, byteCount);
+        }
+    }
+
+    /**
+     * encoding bytes a buffer at a time, writing the header first.
+     *
+     * @param input the bytes to compress, counted beforehand, read until its end and left open
+     * @param destination the stream the compressed file is written to, flushed but left open
+     * @param codeTable the codes of the byte values
+     * @param byteCount the number of bytes in the file
+     * @return the number of encoded bits, without the header and the padding
+     */
+    static long compress(InputStream input, OutputStream destination, CodeTable codeTable, long byteCount) throws IOException {
+        writeHeader(destination, codeTable, byteCount);
+        BitWriter bitWriter = new BitWriter(destination, IO_BUFFER_SIZE);
+        byte[] buffer = new byte[IO_BUFFER_SIZE];
+        long encoded = 0;
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            encode(buffer, 0, read, codeTable, bitWriter);
+            encoded += read;
+        }
+        if (encoded != byteCount) {
+            throw new IOException("Input changed while being compressed");
+        }
+        return bitWriter.finish();
+    }
+
+    private static void writeHeader(OutputStream destination, CodeTable codeTable, long byteCount) throws IOException {
+        DataOutputStream output = new DataOutputStream(destination);
+        output.writeInt(HuffmanHeader.MAGIC);
+        output.writeByte(VERSION);
+        output.writeLong(byteCount);
+        HuffmanHeader.writeCodeLengths(output, codeTable);
+        output.flush();
+    }
+
+    private static void encode(byte[] data, int offset, int length, CodeTable codeTable, BitWriter bitWriter) throws IOException {
+        final long[] codes = codeTable.codes;
+        final int[] lengths = codeTable.lengths;
+        for (int i = offset; i < offset + length; i++) {
+            int value = data[i] & 0xFF;
+            bitWriter.writeBits(codes[value], lengths[value]);
+        }
+    }
+
+    /**
+     * decompressing a file written by compress, writing the bytes a buffer at a time, or copying the bytes
+     * of a file written by store straight through.
+     *
+     * @param channel the compressed file
+     * @param output the stream the bytes are written to, flushed but left open
+     * @param mapped true to map the file into memory instead of reading it onto the heap
+     * @param metrics the metrics the phases and sizes are recorded in
+     */
+    static void decompress(FileChannel channel, OutputStream output, boolean mapped, HuffmanMetrics metrics) throws IOException {
+        // reading the header
+        metrics.begin(HuffmanMetrics.Phase.READ);
+        if (channel.size() > 4 && HuffmanCoding.readRegion(channel, 4, 1, false).get(0) == VERSION_STORED) {
+            decompressStored(channel, output, metrics);
+            return;
+        }
+        decompress(HuffmanCoding.readRegion(channel, 0, channel.size(), mapped), output, metrics);
+    }
+
+    /**
+     * decompressing bytes written by compress or stored, held in a buffer from its first byte to its limit.
+     *
+     * @param data the compressed bytes
+     * @param output the stream the bytes are written to, flushed but left open
+     * @param metrics the metrics the phases and sizes are recorded in
+     */
+    static void decompress(ByteBuffer data, OutputStream output, HuffmanMetrics metrics) throws IOException {
+        decompress(data, output, metrics, new State());
+    }
+
+    /**
+     * decompressing bytes written by compress or stored with the decoder and buffer of the calling thread,
+     * recording no metrics.
+     *
+     * @param data the compressed bytes
+     * @param output the stream the bytes are written to, flushed but left open
+     * @param state the decoder and buffer of the calling thread, the decoder is rebuilt when the codes differ
+     */
+    static void decompress(ByteBuffer data, OutputStream output, State state) throws IOException {
+        decompress(data, output, null, state);
+    }
+
+    // decompressing with metrics null when nothing is recorded
+    private static void decompress(ByteBuffer data, OutputStream output, HuffmanMetrics metrics, State state) throws IOException {
+        long byteCount;
+        CodeTable codeTable;
+        try {
+            int magic = data.getInt();
+            int version = data.get() & 0xFF;
+            if (magic == HuffmanHeader.MAGIC && version == VERSION_STORED) {
+                // copying the stored bytes straight through
+                byteCount = data.getLong();
+                if (byteCount != data.remaining()) {
+                    throw new IOException("Corrupt stored byte file");
+                }
+                if (metrics != null) {
+                    metrics.headerBytes = STORED_HEADER_SIZE;
+                    metrics.symbolCount = byteCount;
+                    metrics.begin(HuffmanMetrics.Phase.WRITE);
+                }
+                Channels.newChannel(output).write(data);
+                output.flush();
+                return;
+            }
+            if (magic != HuffmanHeader.MAGIC || version != VERSION) {
+                throw new IOException("Not a byte compressed Huffman file");
+            }
+            byteCount = data.getLong();
+            if (byteCount < 0) {
+                throw new IOException("Corrupt byte file header");
+            }
+            codeTable = HuffmanHeader.readCodeLengths(data, ALPHABET_SIZE);
+        }
+        catch (BufferUnderflowException exception) {
+            throw new IOException("Truncated byte file header");
+        }
+        if (metrics != null) {
+            metrics.headerBytes = data.position();
+            metrics.symbolCount = byteCount;
+            metrics.codeCount = codeTable.symbols().length;
+            metrics.begin(HuffmanMetrics.Phase.BUILD);
+        }
+
+        // building the decoding table, or taking the one of the previous call with the same codes
+        HuffmanDecoder decoder = state.decoder(codeTable);
+
+        // decoding a buffer of bytes at a time, continuing from the bit where the previous buffer ended
+        if (metrics != null) {
+            metrics.begin(HuffmanMetrics.Phase.DECODE);
+        }
+        long bitOffset = (long) data.position() * Byte.SIZE;
+        long startBit = bitOffset;
+        long bitLimit = (long) data.limit() * Byte.SIZE;
+        byte[] buffer = state.buffer;
+        long remaining = byteCount;
+        while (remaining > 0) {
+            int count = (int) Math.min(remaining, buffer.length);
+            bitOffset = decoder.decodeBytes(data, bitOffset, bitLimit, buffer, 0, count);
+            if (bitOffset < 0) {
+                throw new IOException("Compressed file is truncated");
+            }
+            output.write(buffer, 0, count);
+            remaining -= count;
+        }
+        output.flush();
+        if (metrics != null) {
+            metrics.encodedBits = bitOffset - startBit;
+        }
+    }
+
+    /**
+     * copying the bytes of a stored file to the output without decoding them.
+     */
+    private static void decompressStored(FileChannel channel, OutputStream output, HuffmanMetrics metrics) throws IOException {
+        ByteBuffer header = HuffmanCoding.readRegion(channel, 0, Math.min(channel.size(), STORED_HEADER_SIZE), false);
+        if (header.remaining() < STORED_HEADER_SIZE || header.getInt() != HuffmanHeader.MAGIC) {
+            throw new IOException("Truncated byte file header");
+        }
+        header.get();
+        long byteCount = header.getLong();
+        if (byteCount < 0 || byteCount != channel.size() - STORED_HEADER_SIZE) {
+            throw new IOException("Corrupt stored byte file");
+        }
+        metrics.headerBytes = STORED_HEADER_SIZE;
+        metrics.symbolCount = byteCount;
+
+        metrics.begin(HuffmanMetrics.Phase.WRITE);
+        output.flush();
+        WritableByteChannel target = Channels.newChannel(output);
+        for (long position = STORED_HEADER_SIZE; position < channel.size(); ) {
+            position += channel.transferTo(position, channel.size() - position, target);
+        }
+        output.flush();
+    }
+}
@@ -0,0 +1,161 @@
+import java.util.Arrays;
+
+//Huffman code lengths computed in place over an array of sorted counts, without building a tree of objects
+class CodeLengths {
+    // counts are packed above the character in a single long for sorting
+    static final int SYMBOL_BITS = 16;
+
+    /**
+     * building the canonical code table from the number of times every character occurs, with no
+     * code longer than maxLength bits. The lengths come from the Huffman code when it fits under the
+     * limit and from the package-merge algorithm otherwise. The table reaches as far as the largest
+     * character that occurs.
+     *
+     * @param counts the count of every character, indexed by character
+     * @param maxLength the longest code allowed, in bits
+     * @return the code table
+     */
+    static CodeTable buildCodeTable(long[] counts, int maxLength) {
+        long[] sorted = sortByCount(counts);
+        int size = 0;
+        for (long packed : sorted) {
+            size = Math.max(size, (int) (packed & 0xFFFF) + 1);
+        }
+        return build(sorted, maxLength, new CodeTable(size));
+    }
+
+    /**
+     * building the canonical code table into a table that already exists, replacing its codes, so that a
+     * caller rebuilding tables over and over does not allocate a new one every time.
+     *
+     * @param counts the count of every character, indexed by character
+     * @param maxLength the longest code allowed, in bits
+     * @param table the table to fill, reaching at least as far as the largest character that occurs
+     * @return the table
+     */
+    static CodeTable buildCodeTable(long[] counts, int maxLength, CodeTable table) {
+        table.clear();
+        return build(sortByCount(counts), maxLength, table);
+    }
+
+    // filling the lengths and codes of an empty table from the characters that occur, sorted by count
+    private static CodeTable build(long[] sorted, int maxLength, CodeTable table) {
+        int[] symbols = new int[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            symbols[i] = (int) (sorted[i] & 0xFFFF);
+        }
+        // a single character still needs one bit per character
+        if (sorted.length == 1) {
+            table.lengths[symbols[0]] = 1;
+        }
+        else if (sorted.length > 1) {
+            long[] weights = new long[sorted.length];
+            for (int i = 0; i < sorted.length; i++) {
+                weights[i] = sorted[i] >>> SYMBOL_BITS;
+            }
+            int[] lengths = huffman(weights);
+            // the lightest character has the longest code
+            if (lengths[0] > maxLength) {
+                lengths = PackageMerge.codeLengths(weights, maxLength);
+            }
+            for (int i = 0; i < sorted.length; i++) {
+                table.lengths[symbols[i]] = lengths[i];
+            }
+        }
+        // the canonical codes are handed out in character order
+        Arrays.sort(symbols);
+        table.assignCanonicalCodes(symbols);
+        return table;
+    }
+
+    /**
+     * finding the Huffman code lengths of sorted weights in place (Moffat and Katajainen). The first
+     * pass merges the leaves with the internal nodes, which are created in increasing order of weight and
+     * so form a second sorted queue, replacing every merged node with the index of its parent. The second
+     * pass turns parent indices into depths, and the third hands out the depths of the leaves level by level.
+     *
+     * @param weights the weights of at least two symbols, in increasing order
+     * @return the code length of every symbol, in the order of the weights
+     */
+    static int[] huffman(long[] weights) {
+        int n = weights.length;
+        long[] work = weights.clone();
+
+        // first pass: work[t] becomes the weight of internal node t, then the index of its parent once merged
+        int leaf = 0;
+        int root = 0;
+        for (int node = 0; node < n - 1; node++) {
+            if (leaf >= n || (root < node && work[root] < work[leaf])) {
+                work[node] = work[root];
+                work[root++] = node;
+            }
+            else {
+                work[node] = work[leaf++];
+            }
+            if (leaf >= n || (root < node && work[root] < work[leaf])) {
+                work[node] += work[root];
+                work[root++] = node;
+            }
+            else {
+                work[node] += work[leaf++];
+            }
+        }
+
+        // second pass: the depth of every internal node, from the root down
+        work[n - 2] = 0;
+        for (int node = n - 3; node >= 0; node--) {
+            work[node] = work[(int) work[node]] + 1;
+        }
+
+        // third pass: every level has room for twice the internal nodes of the level above, the rest are leaves
+        int[] lengths = new int[n];
+        int available = 1;
+        int depth = 0;
+        int node = n - 2;
+        int next = n - 1;
+        while (available > 0) {
+            int internal = 0;
+            while (node >= 0 && work[node] == depth) {
+                internal++;
+                node--;
+            }
+            while (available > internal) {
+                lengths[next--] = depth;
+                available--;
+            }
+            available = 2 * internal;
+            depth++;
+        }
+        return lengths;
+    }
+
+    /**
+     * returning the characters that occur as (count << 16) | character, in increasing order of count.
+     *
+     * @param counts the count of every character, indexed by character
+     * @return the packed characters that occur
+     */
+    static long[] sortByCount(long[] counts) {
+        // counting the characters that occur and finding the last of them, where the second pass stops
+        int n = 0;
+        int end = 0;
+        for (int character = 0; character < counts.length; character++) {
+            if (counts[character] > 0) {
+                n++;
+                end = character + 1;
+            }
+        }
+        long[] sorted = new long[n];
+        n = 0;
+        for (int character = 0; character < end; character++) {
+            if (counts[character] > 0) {
+                if (counts[character] >>> (Long.SIZE - 1 - SYMBOL_BITS) != 0) {
+                    throw new IllegalArgumentException("Character count too large");
+                }
+                sorted[n++] = (counts[character] << SYMBOL_BITS) | character;
+            }
+        }
+        Arrays.sort(sorted);
+        return sorted;
+    }
+}
@@ -0,0 +1,129 @@
+//Canonical Huffman codes stored as (code, length) pairs indexed by character. A table only reaches
+//as far as its largest character with a code, and keeps the list of the characters that have one,
+//so that building and reading a table of a few characters costs work in proportion to them.
+class CodeTable {
+    // number of characters a table can hold a code for
+    static final int ALPHABET_SIZE = Character.MAX_VALUE + 1;
+
+    // the code of every character aligned to the right, and its length in bits (0 if the character has no code)
+    final long[] codes;
+    final int[] lengths;
+    // the characters that have a code in increasing order, null until they are assigned or looked for
+    private int[] symbols;
+
+    /**
+     * constructor for initialising an empty table for every character.
+     */
+    CodeTable() {
+        this(ALPHABET_SIZE);
+    }
+
+    /**
+     * constructor for initialising an empty table for the symbols 0 to alphabetSize - 1.
+     *
+     * @param alphabetSize the number of symbols
+     */
+    CodeTable(int alphabetSize) {
+        codes = new long[alphabetSize];
+        lengths = new int[alphabetSize];
+    }
+
+    /**
+     * returning the code length of a character, which may lie beyond the end of the table.
+     *
+     * @param character the character
+     * @return the length of its code in bits, 0 if it has no code
+     */
+    int length(int character) {
+        return character < lengths.length ? lengths[character] : 0;
+    }
+
+    /**
+     * assigning canonical codes from the code lengths, looking for the characters that have a code
+     * over the whole table first.
+     */
+    void assignCanonicalCodes() {
+        int count = 0;
+        for (int character = 0; character < lengths.length; character++) {
+            if (lengths[character] > 0) {
+                count++;
+            }
+        }
+        int[] symbols = new int[count];
+        count = 0;
+        for (int character = 0; character < lengths.length; character++) {
+            if (lengths[character] > 0) {
+                symbols[count++] = character;
+            }
+        }
+        assignCanonicalCodes(symbols);
+    }
+
+    /**
+     * assigning canonical codes from the code lengths: codes of the same length are consecutive
+     * numbers in character order, and shorter codes come before longer ones. Both the compressor
+     * and the decompressor derive the same codes from the lengths alone.
+     *
+     * @param symbols the characters that have a code, in increasing order, kept by the table
+     */
+    void assignCanonicalCodes(int[] symbols) {
+        this.symbols = symbols;
+
+        // counting the characters of every code length
+        int[] lengthCount = new int[HuffmanDecoder.MAX_CODE_LENGTH + 1];
+        for (int symbol : symbols) {
+            lengthCount[lengths[symbol]]++;
+        }
+        lengthCount[0] = 0;
+
+        // finding the first code of every length
+        long[] nextCode = new long[HuffmanDecoder.MAX_CODE_LENGTH + 1];
+        long code = 0;
+        for (int length = 1; length <= HuffmanDecoder.MAX_CODE_LENGTH; length++) {
+            code = (code + lengthCount[length - 1]) << 1;
+            nextCode[length] = code;
+        }
+
+        // handing out the codes in character order
+        for (int symbol : symbols) {
+            codes[symbol] = nextCode[lengths[symbol]]++;
+        }
+    }
+
+    /**
+     * removing every code, so that the table can be filled again.
+     */
+    void clear() {
+        for (int symbol : symbols()) {
+            lengths[symbol] = 0;
+            codes[symbol] = 0;
+        }
+        symbols = new int[0];
+    }
+
+    /**
+     * returning the length of the longest code.
+     *
+     * @return the length of the longest code in bits, 0 if no character has a code
+     */
+    int maxLength() {
+        int maxLength = 0;
+        for (int symbol : symbols()) {
+            maxLength = Math.max(maxLength, lengths[symbol]);
+        }
+        return maxLength;
+    }
+
+    /**
+     * returning the characters that have a code, in increasing order. The array belongs to the table
+     * and must not be changed.
+     *
+     * @return the characters that have a code
+     */
+    int[] symbols() {
+        if (symbols == null) {
+            assignCanonicalCodes();
+        }
+        return symbols;
+    }
+}
@@ -0,0 +1,440 @@
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Protocol of the compression server, over a TCP connection on the loopback address:
+ *   request:
+ *     id           4 bytes  chosen by the client and sent back with the response
+ *     op           1 byte   OP_COMPRESS or OP_DECOMPRESS
+ *     length       4 bytes  size of the payload, at most MAX_PAYLOAD
+ *     payload               the bytes to compress, or bytes returned by OP_COMPRESS to decompress
+ *   response:
+ *     id           4 bytes  the id of the request
+ *     status       1 byte   STATUS_OK or STATUS_ERROR
+ *     length       4 bytes  size of the payload
+ *     payload               the result, or the error message in UTF-8
+ * Payloads are compressed as raw bytes by ByteCompressor, so they are files of version 9, or 10 when
+ * coding would not shrink them. A client may send requests without waiting for the responses; they are
+ * worked on in parallel and every response is sent as soon as it is ready, so responses can come back in
+ * another order than the requests. A request with a malformed header closes the connection.
+ */
+class CompressionServer implements Closeable {
+    static final int OP_COMPRESS = 1;
+    static final int OP_DECOMPRESS = 2;
+    static final int STATUS_OK = 0;
+    static final int STATUS_ERROR = 1;
+    static final int FRAME_HEADER_SIZE = 9;
+    static final int MAX_PAYLOAD = 1 << 26;
+    static final int DEFAULT_PORT = 7474;
+    // requests of a connection being worked on or waiting to be sent before reading from it stops
+    static final int DEFAULT_MAX_IN_FLIGHT = 32;
+
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final ExecutorService workers;
+    private final int maxInFlight;
+    private final BufferPool buffers = new BufferPool();
+    // connections with responses ready to be sent, handed from the workers to the selector thread
+    private final ConcurrentLinkedQueue<Connection> ready = new ConcurrentLinkedQueue<>();
+    private final Thread selectorThread;
+    private final AtomicLong requests = new AtomicLong();
+    private volatile boolean running = true;
+
+    // output stream of every worker, reset for every request so that its array is reused unless it grew too large
+    private static final ThreadLocal<FrameOutputStream> OUTPUT = ThreadLocal.withInitial(FrameOutputStream::new);
+    // code table, decoder and buffers of every worker, reused from one request to the next
+    private static final ThreadLocal<ByteCompressor.State> STATE = ThreadLocal.withInitial(ByteCompressor.State::new);
+    private static final int MAX_KEPT_OUTPUT = 1 << 22;
+    private static final byte[] EMPTY_HEADER = new byte[FRAME_HEADER_SIZE];
+
+    //State of one client connection, only touched by the selector thread but for the queue of responses
+    private static final class Connection {
+        final SocketChannel channel;
+        final SelectionKey key;
+        final ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_SIZE);
+        // payload of the request being read, null while its header is read
+        byte[] payload;
+        ByteBuffer payloadBuffer;
+        int requestId;
+        int op;
+        // responses finished by the workers and the ones being written, with the pooled arrays behind them
+        final ConcurrentLinkedQueue<ByteBuffer> finished = new ConcurrentLinkedQueue<>();
+        final ArrayDeque<ByteBuffer> writing = new ArrayDeque<>();
+        ByteBuffer current;
+        // requests read and not yet completely written back
+        int inFlight;
+        boolean endOfInput;
+
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+    }
+
+    //Output stream whose array is handed out instead of copied
+    private static final class FrameOutputStream extends ByteArrayOutputStream {
+        byte[] array() {
+            return buf;
+        }
+    }
+
+    /**
+     * constructor for initialising a server bound to a port of the loopback address. It accepts
+     * connections once started.
+     *
+     * @param port the port to listen on, 0 for any free port
+     * @param workerCount the number of threads compressing and decompressing payloads
+     * @param maxInFlight the number of requests of a connection in progress before reading from it stops
+     */
+    CompressionServer(int port, int workerCount, int maxInFlight) throws IOException {
+        if (workerCount <= 0 || maxInFlight <= 0) {
+            throw new IllegalArgumentException("Worker count and requests in flight must be positive");
+        }
+        this.maxInFlight = maxInFlight;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        this.workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "compression-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // the selector thread keeps the JVM running until the server is closed
+        this.selectorThread = new Thread(this::run, "compression-selector");
+    }
+
+    /**
+     * starting to accept connections on a thread of the server's own.
+     */
+    void start() {
+        selectorThread.start();
+    }
+
+    /**
+     * returning the port the server listens on.
+     *
+     * @return the port
+     */
+    int port() throws IOException {
+        return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+    }
+
+    /**
+     * returning the number of requests answered since the server started.
+     *
+     * @return the number of requests
+     */
+    long requestCount() {
+        return requests.get();
+    }
+
+    /**
+     * stopping the server, closing every connection and dropping the requests in progress.
+     */
+    @Override
+    public void close() throws IOException {
+        // the selector thread closes the connections and the selector on its way out
+        running = false;
+        selector.wakeup();
+        try {
+            if (selectorThread.isAlive()) {
+                selectorThread.join(TimeUnit.SECONDS.toMillis(5));
+            }
+        }
+        catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            workers.shutdownNow();
+            serverChannel.close();
+            selector.close();
+        }
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select();
+
+                // queueing the responses the workers finished since the last round
+                Connection finished;
+                while ((finished = ready.poll()) != null) {
+                    ByteBuffer response;
+                    while ((response = finished.finished.poll()) != null) {
+                        finished.writing.add(response);
+                    }
+                    updateInterest(finished);
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept();
+                            continue;
+                        }
+                        Connection connection = (Connection) key.attachment();
+                        if (key.isWritable()) {
+                            write(connection);
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            read(connection);
+                        }
+                        if (key.isValid()) {
+                            updateInterest(connection);
+                        }
+                    }
+                    catch (IOException exception) {
+                        // dropping a connection that failed, the others carry on
+                        closeConnection((Connection) key.attachment());
+                    }
+                }
+            }
+        }
+        catch (IOException | ClosedSelectorException exception) {
+            // printing the stack trace if the selector failed, the server stops
+            exception.printStackTrace();
+        }
+        finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    closeConnection((Connection) key.attachment());
+                }
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        key.attach(new Connection(channel, key));
+    }
+
+    /**
+     * reading as many whole requests as the socket holds, handing every one to a worker.
+     */
+    private void read(Connection connection) throws IOException {
+        while (connection.inFlight < maxInFlight) {
+            if (connection.payload == null) {
+                if (connection.channel.read(connection.header) < 0) {
+                    connection.endOfInput = true;
+                    return;
+                }
+                if (connection.header.hasRemaining()) {
+                    return;
+                }
+                // starting the payload once the header is complete
+                connection.header.flip();
+                connection.requestId = connection.header.getInt();
+                connection.op = connection.header.get();
+                int length = connection.header.getInt();
+                connection.header.clear();
+                if ((connection.op != OP_COMPRESS && connection.op != OP_DECOMPRESS) || length < 0 || length > MAX_PAYLOAD) {
+                    throw new IOException("Malformed request header");
+                }
+                connection.payload = buffers.take(length);
+                connection.payloadBuffer = ByteBuffer.wrap(connection.payload, 0, length);
+            }
+            if (connection.payloadBuffer.hasRemaining() && connection.channel.read(connection.payloadBuffer) < 0) {
+                connection.endOfInput = true;
+                return;
+            }
+            if (connection.payloadBuffer.hasRemaining()) {
+                return;
+            }
+
+            // handing the request to a worker
+            byte[] payload = connection.payload;
+            int length = connection.payloadBuffer.limit();
+            int requestId = connection.requestId;
+            int op = connection.op;
+            connection.payload = null;
+            connection.payloadBuffer = null;
+            connection.inFlight++;
+            try {
+                workers.execute(() -> process(connection, requestId, op, payload, length));
+            }
+            catch (RejectedExecutionException exception) {
+                throw new IOException("Server is stopping");
+            }
+        }
+    }
+
+    /**
+     * compressing or decompressing the payload of a request on a worker, and queueing the response.
+     */
+    private void process(Connection connection, int requestId, int op, byte[] payload, int length) {
+        FrameOutputStream output = OUTPUT.get();
+        ByteCompressor.State state = STATE.get();
+        output.reset();
+        int status = STATUS_OK;
+        try {
+            // leaving room for the header of the response, filled in below
+            output.write(EMPTY_HEADER, 0, FRAME_HEADER_SIZE);
+            if (op == OP_COMPRESS) {
+                ByteCompressor.compress(payload, 0, length, output, BlockCompressor.DEFAULT_MIN_SAVING, state);
+            }
+            else {
+                ByteBuffer compressed = ByteBuffer.wrap(payload, 0, length);
+                // refusing payloads that claim more bytes than a response may hold
+                if (length >= ByteCompressor.STORED_HEADER_SIZE && compressed.getInt(0) == HuffmanHeader.MAGIC && compressed.getLong(5) > MAX_PAYLOAD) {
+                    throw new IOException("Decompressed payload larger than " + MAX_PAYLOAD + " bytes");
+                }
+                ByteCompressor.decompress(compressed, output, state);
+            }
+            if (output.size() - FRAME_HEADER_SIZE > MAX_PAYLOAD) {
+                throw new IOException("Response larger than " + MAX_PAYLOAD + " bytes");
+            }
+        }
+        catch (IOException | RuntimeException exception) {
+            // answering with the error instead of the result
+            output.reset();
+            output.write(EMPTY_HEADER, 0, FRAME_HEADER_SIZE);
+            byte[] message = String.valueOf(exception.getMessage()).getBytes(StandardCharsets.UTF_8);
+            output.write(message, 0, message.length);
+            status = STATUS_ERROR;
+        }
+        finally {
+            buffers.give(payload);
+        }
+
+        // copying the response into a pooled array, the output stream stays with the worker
+        int size = output.size();
+        byte[] response = buffers.take(size);
+        System.arraycopy(output.array(), 0, response, 0, size);
+        ByteBuffer.wrap(response)
+                .putInt(requestId)
+                .put((byte) status)
+                .putInt(size - FRAME_HEADER_SIZE);
+        if (output.array().length > MAX_KEPT_OUTPUT) {
+            OUTPUT.remove();
+        }
+        connection.finished.add(ByteBuffer.wrap(response, 0, size));
+        requests.incrementAndGet();
+        ready.add(connection);
+        selector.wakeup();
+    }
+
+    /**
+     * writing the queued responses until the socket is full.
+     */
+    private void write(Connection connection) throws IOException {
+        while (true) {
+            if (connection.current == null) {
+                connection.current = connection.writing.poll();
+                if (connection.current == null) {
+                    return;
+                }
+            }
+            connection.channel.write(connection.current);
+            if (connection.current.hasRemaining()) {
+                return;
+            }
+            buffers.give(connection.current.array());
+            connection.current = null;
+            connection.inFlight--;
+        }
+    }
+
+    /**
+     * reading while the connection has room for more requests and writing while it has responses to send,
+     * closing it once the client has stopped sending and everything has been answered.
+     */
+    private void updateInterest(Connection connection) {
+        if (!connection.key.isValid()) {
+            return;
+        }
+        boolean hasOutput = connection.current != null || !connection.writing.isEmpty();
+        if (connection.endOfInput && connection.inFlight == 0 && !hasOutput) {
+            closeConnection(connection);
+            return;
+        }
+        int interest = (hasOutput ? SelectionKey.OP_WRITE : 0)
+                | (!connection.endOfInput && connection.inFlight < maxInFlight ? SelectionKey.OP_READ : 0);
+        connection.key.interestOps(interest);
+    }
+
+    private void closeConnection(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        connection.key.cancel();
+        try {
+            connection.channel.close();
+        }
+        catch (IOException exception) {
+            // nothing more can be done with a connection that fails to close
+        }
+    }
+
+    //Pool of the arrays holding requests and responses, kept for the sizes that are reused the most
+    static final class BufferPool {
+        // arrays of POOLED_SIZE bytes are kept, larger ones are left to the garbage collector
+        static final int POOLED_SIZE = 1 << 16;
+        private static final int MAX_POOLED = 256;
+        private final ConcurrentLinkedQueue<byte[]> arrays = new ConcurrentLinkedQueue<>();
+        private final AtomicLong pooled = new AtomicLong();
+
+        /**
+         * returning an array of at least size bytes, from the pool when it is small enough.
+         *
+         * @param size the number of bytes needed
+         * @return an array of POOLED_SIZE bytes, or of size bytes when larger
+         */
+        byte[] take(int size) {
+            if (size > POOLED_SIZE) {
+                return new byte[size];
+            }
+            byte[] array = arrays.poll();
+            if (array == null) {
+                return new byte[POOLED_SIZE];
+            }
+            pooled.decrementAndGet();
+            return array;
+        }
+
+        /**
+         * returning an array to the pool once it is no longer used.
+         *
+         * @param array the array, dropped unless it came from the pool
+         */
+        void give(byte[] array) {
+            if (array.length == POOLED_SIZE && pooled.incrementAndGet() <= MAX_POOLED) {
+                arrays.add(array);
+            }
+            else if (array.length == POOLED_SIZE) {
+                pooled.decrementAndGet();
+            }
+        }
+    }
+}
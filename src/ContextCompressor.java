@@ -0,0 +1,244 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/*
+ * Layout of a file compressed with order-1 contexts:
+ *   magic        4 bytes  "HUFF"
+ *   version      1 byte   7
+ *   symbolCount  8 bytes  number of characters encoded
+ *   alphabetSize varint   number of different characters
+ *   alphabetSize times:
+ *     gap        varint   character minus the previous character, character plus one for the first
+ *   contextCount varint   number of code tables
+ *   contextCount - 1 times:
+ *     symbol     varint   index in the alphabet of the character owning the tables 1, 2 and so on
+ *   contextCount times:
+ *     code lengths        as written by HuffmanHeader.writeCodeLengths, over the indices of the alphabet
+ *   encoded bits          padded to a whole byte
+ * Every character is coded with the table owned by the character before it, or with table 0 when that
+ * character owns none. Table 0 also codes the first character. The characters owning a table are the
+ * most frequent ones, and their number is chosen to give the smallest file.
+ */
+class ContextCompressor {
+    static final int VERSION = 7;
+    // largest number of code tables, and of counts kept while choosing them
+    static final int MAX_CONTEXTS = 256;
+    private static final long MAX_COUNTS = 1L << 22;
+    private static final int IO_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * compressing characters with one code table per preceding character, for the preceding
+     * characters frequent enough to pay for their table.
+     *
+     * @param input the characters to compress
+     * @param length the number of characters
+     * @param destination the stream the compressed file is written to, flushed but left open
+     * @return the number of code tables used
+     */
+    static int compress(char[] input, int length, OutputStream destination) throws IOException {
+        // numbering the characters that occur in character order, the symbols of every table
+        long[] counts = Histogram.count(input, 0, length);
+        int[] symbolOf = new int[counts.length];
+        int alphabetSize = 0;
+        for (int character = 0; character < counts.length; character++) {
+            if (counts[character] > 0) {
+                symbolOf[character] = alphabetSize++;
+            }
+        }
+        char[] alphabet = new char[alphabetSize];
+        long[] symbolCounts = new long[alphabetSize];
+        for (int character = 0; character < counts.length; character++) {
+            if (counts[character] > 0) {
+                alphabet[symbolOf[character]] = (char) character;
+                symbolCounts[symbolOf[character]] = counts[character];
+            }
+        }
+
+        // counting every symbol after each of the most frequent symbols, the others are counted together in row 0
+        int maxContexts = (int) Math.max(1, Math.min(Math.min(MAX_CONTEXTS, alphabetSize + 1L), MAX_COUNTS / Math.max(1, alphabetSize)));
+        long[] ranked = CodeLengths.sortByCount(symbolCounts);
+        int[] owners = new int[maxContexts - 1];
+        int[] rowOf = new int[alphabetSize];
+        for (int row = 1; row < maxContexts; row++) {
+            owners[row - 1] = (int) (ranked[ranked.length - row] & 0xFFFF);
+            rowOf[owners[row - 1]] = row;
+        }
+        long[][] rows = new long[maxContexts][alphabetSize];
+        int row = 0;
+        for (int i = 0; i < length; i++) {
+            int symbol = symbolOf[input[i]];
+            rows[row][symbol]++;
+            row = rowOf[symbol];
+        }
+        int contextCount = chooseContextCount(rows);
+
+        // folding the rows of the symbols left without a table into row 0 and building the tables
+        for (int other = contextCount; other < maxContexts; other++) {
+            for (int symbol = 0; symbol < alphabetSize; symbol++) {
+                rows[0][symbol] += rows[other][symbol];
+            }
+        }
+        CodeTable[] tables = new CodeTable[contextCount];
+        for (int context = 0; context < contextCount; context++) {
+            tables[context] = HuffmanCoding.buildCodeTable(rows[context]);
+        }
+        int[] contexts = new int[alphabetSize];
+        for (int context = 1; context < contextCount; context++) {
+            contexts[owners[context - 1]] = context;
+        }
+
+        // writing the header
+        DataOutputStream output = new DataOutputStream(destination);
+        output.writeInt(HuffmanHeader.MAGIC);
+        output.writeByte(VERSION);
+        output.writeLong(length);
+        HuffmanHeader.writeVarInt(output, alphabetSize);
+        int previous = -1;
+        for (char character : alphabet) {
+            HuffmanHeader.writeVarInt(output, character - previous);
+            previous = character;
+        }
+        HuffmanHeader.writeVarInt(output, contextCount);
+        for (int context = 1; context < contextCount; context++) {
+            HuffmanHeader.writeVarInt(output, owners[context - 1]);
+        }
+        for (CodeTable table : tables) {
+            HuffmanHeader.writeCodeLengths(output, table);
+        }
+        output.flush();
+
+        // encoding every character with the table of the character before it
+        long[][] codes = new long[contextCount][];
+        int[][] lengths = new int[contextCount][];
+        for (int context = 0; context < contextCount; context++) {
+            codes[context] = tables[context].codes;
+            lengths[context] = tables[context].lengths;
+        }
+        BitWriter bitWriter = new BitWriter(destination, IO_BUFFER_SIZE);
+        int context = 0;
+        for (int i = 0; i < length; i++) {
+            int symbol = symbolOf[input[i]];
+            bitWriter.writeBits(codes[context][symbol], lengths[context][symbol]);
+            context = contexts[symbol];
+        }
+        bitWriter.finish();
+        return contextCount;
+    }
+
+    /**
+     * choosing how many of the rows get a table of their own, the rest sharing the table of row 0,
+     * by estimating the size of the codes and of the stored code lengths for 1, 2, 4 ... tables.
+     *
+     * @param rows the counts of every symbol after the owner of each row, the lightest owners last
+     * @return the number of tables
+     */
+    private static int chooseContextCount(long[][] rows) {
+        int best = 1;
+        long bestBits = Long.MAX_VALUE;
+        long[] shared = rows[0].clone();
+        for (int other = 1; other < rows.length; other++) {
+            for (int symbol = 0; symbol < shared.length; symbol++) {
+                shared[symbol] += rows[other][symbol];
+            }
+        }
+
+        // adding the rows one at a time, taking them back out of the shared row
+        long ownBits = 0;
+        for (int contextCount = 1; contextCount <= rows.length; contextCount++) {
+            if (contextCount > 1) {
+                long[] own = rows[contextCount - 1];
+                for (int symbol = 0; symbol < shared.length; symbol++) {
+                    shared[symbol] -= own[symbol];
+                }
+                ownBits += tableBits(own);
+            }
+            if (Integer.bitCount(contextCount) == 1 || contextCount == rows.length) {
+                long bits = ownBits + tableBits(shared);
+                if (bits < bestBits) {
+                    bestBits = bits;
+                    best = contextCount;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * estimating the bits a table takes for the counts: the encoded characters and about two bytes
+     * for every stored code length.
+     */
+    private static long tableBits(long[] counts) {
+        long codeCount = 0;
+        for (long count : counts) {
+            codeCount += count > 0 ? 1 : 0;
+        }
+        return PackageMerge.huffmanBits(counts) + (codeCount * 2 + 1) * Byte.SIZE;
+    }
+
+    /**
+     * decompressing a file written by compress.
+     *
+     * @param data the whole compressed file
+     * @return the characters
+     */
+    static char[] decompress(ByteBuffer data) throws IOException {
+        try {
+            if (data.getInt() != HuffmanHeader.MAGIC) {
+                throw new IOException("Not a Huffman compressed file");
+            }
+            int version = data.get() & 0xFF;
+            if (version != VERSION) {
+                throw new IOException("Unsupported context file version " + version);
+            }
+            long symbolCount = data.getLong();
+            if (symbolCount < 0 || symbolCount > Integer.MAX_VALUE - 8) {
+                throw new IOException("Corrupt context file header");
+            }
+
+            // reading the alphabet, the owners of the tables and the tables
+            int alphabetSize = HuffmanHeader.readVarInt(data);
+            if (alphabetSize < 0 || alphabetSize > CodeTable.ALPHABET_SIZE) {
+                throw new IOException("Corrupt context file alphabet");
+            }
+            char[] alphabet = new char[alphabetSize];
+            int character = -1;
+            for (int symbol = 0; symbol < alphabetSize; symbol++) {
+                character += HuffmanHeader.readVarInt(data);
+                if (character < 0 || character >= CodeTable.ALPHABET_SIZE) {
+                    throw new IOException("Corrupt context file alphabet");
+                }
+                alphabet[symbol] = (char) character;
+            }
+            int contextCount = HuffmanHeader.readVarInt(data);
+            if (contextCount < 1 || contextCount > MAX_CONTEXTS) {
+                throw new IOException("Corrupt context file table count");
+            }
+            int[] contexts = new int[alphabetSize];
+            for (int context = 1; context < contextCount; context++) {
+                int owner = HuffmanHeader.readVarInt(data);
+                if (owner < 0 || owner >= alphabetSize) {
+                    throw new IOException("Corrupt context file table owner");
+                }
+                contexts[owner] = context;
+            }
+            HuffmanDecoder[] decoders = new HuffmanDecoder[contextCount];
+            for (int context = 0; context < contextCount; context++) {
+                decoders[context] = new HuffmanDecoder(HuffmanHeader.readCodeLengths(data, alphabetSize));
+            }
+
+            // decoding every character with the table of the character before it
+            char[] output = new char[(int) symbolCount];
+            if (HuffmanDecoder.decodeContexts(data, (long) data.position() * Byte.SIZE, (long) data.limit() * Byte.SIZE,
+                    decoders, contexts, alphabet, output, output.length) < 0) {
+                throw new IOException("Compressed file is truncated");
+            }
+            return output;
+        }
+        catch (BufferUnderflowException exception) {
+            throw new IOException("Truncated context file header");
+        }
+    }
+}
@@ -0,0 +1,202 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+//Character frequency counter over primitive arrays. Short inputs are counted into tables that only reach
+//as far as their largest character, longer ones into full tables reused by every thread.
+class Histogram {
+    // number of interleaved tables, consecutive characters are counted in different tables
+    // so that runs of the same character do not wait on the store of the previous increment
+    private static final int TABLES = 4;
+    // smallest number of characters worth counting on a thread of its own
+    static final int MIN_STRIPE_LENGTH = 1 << 18;
+    // inputs shorter than this are counted into tables sized to their largest character
+    static final int SMALL_LENGTH = 1 << 16;
+
+    private static final int ALPHABET_SIZE = CodeTable.ALPHABET_SIZE;
+
+    // TABLES int tables side by side, folded into totals before any of them could overflow
+    private final int[] tables = new int[TABLES * ALPHABET_SIZE];
+    private final long[] totals = new long[ALPHABET_SIZE];
+    private long pending = 0;
+
+    // histogram of every thread for count, emptied after each use
+    private static final ThreadLocal<Histogram> REUSED = ThreadLocal.withInitial(Histogram::new);
+
+    /**
+     * counting the characters in data[offset, offset + length).
+     *
+     * @param data the characters to count
+     * @param offset the index of the first character
+     * @param length the number of characters
+     */
+    void add(char[] data, int offset, int length) {
+        if (pending + length > Integer.MAX_VALUE) {
+            fold();
+        }
+        pending += length;
+
+        final int[] tables = this.tables;
+        int i = offset;
+        final int end = offset + length;
+        final int unrolledEnd = end - (TABLES - 1);
+        for (; i < unrolledEnd; i += TABLES) {
+            tables[data[i]]++;
+            tables[ALPHABET_SIZE + data[i + 1]]++;
+            tables[2 * ALPHABET_SIZE + data[i + 2]]++;
+            tables[3 * ALPHABET_SIZE + data[i + 3]]++;
+        }
+        for (; i < end; i++) {
+            tables[data[i]]++;
+        }
+    }
+
+    /**
+     * returning the count of every character added so far.
+     *
+     * @return the count of every character, indexed by character
+     */
+    long[] counts() {
+        fold();
+        return totals.clone();
+    }
+
+    // returning the counts up to the largest character added, and emptying the histogram for the next input
+    private long[] take() {
+        fold();
+        int end = ALPHABET_SIZE;
+        while (end > 0 && totals[end - 1] == 0) {
+            end--;
+        }
+        long[] counts = Arrays.copyOf(totals, end);
+        Arrays.fill(totals, 0, end, 0);
+        return counts;
+    }
+
+    private void fold() {
+        for (int character = 0; character < ALPHABET_SIZE; character++) {
+            totals[character] += (long) tables[character] + tables[ALPHABET_SIZE + character]
+                    + tables[2 * ALPHABET_SIZE + character] + tables[3 * ALPHABET_SIZE + character];
+        }
+        Arrays.fill(tables, 0);
+        pending = 0;
+    }
+
+    /**
+     * counting the characters in data[offset, offset + length) on the calling thread.
+     *
+     * @return the count of every character, indexed by character up to the largest that occurs
+     */
+    static long[] count(char[] data, int offset, int length) {
+        // checking the range first, so that the reused histogram is never left half filled
+        Objects.checkFromIndexSize(offset, length, data.length);
+        final int end = offset + length;
+        if (length < SMALL_LENGTH) {
+            // finding the largest character, then counting into tables that reach just as far, interleaved
+            // only when they are no larger than the input, a wide alphabet is counted in a single table
+            int size = 0;
+            for (int i = offset; i < end; i++) {
+                size = Math.max(size, data[i] + 1);
+            }
+            long[] counts = new long[size];
+            if (TABLES * size > length) {
+                for (int i = offset; i < end; i++) {
+                    counts[data[i]]++;
+                }
+                return counts;
+            }
+            final int[] tables = new int[TABLES * size];
+            int i = offset;
+            final int unrolledEnd = end - (TABLES - 1);
+            for (; i < unrolledEnd; i += TABLES) {
+                tables[data[i]]++;
+                tables[size + data[i + 1]]++;
+                tables[2 * size + data[i + 2]]++;
+                tables[3 * size + data[i + 3]]++;
+            }
+            for (; i < end; i++) {
+                tables[data[i]]++;
+            }
+            for (int character = 0; character < size; character++) {
+                counts[character] = (long) tables[character] + tables[size + character] + tables[2 * size + character] + tables[3 * size + character];
+            }
+            return counts;
+        }
+        Histogram histogram = REUSED.get();
+        histogram.add(data, offset, length);
+        return histogram.take();
+    }
+
+    /**
+     * adding the counts of the bytes in data[offset, offset + length) to counts, through interleaved
+     * tables of 256 entries that stay in the L1 cache.
+     *
+     * @param data the bytes to count
+     * @param offset the index of the first byte
+     * @param length the number of bytes
+     * @param counts the count of every byte value, added to
+     */
+    static void countBytes(byte[] data, int offset, int length, long[] counts) {
+        final int[] tables = new int[TABLES * 256];
+        int i = offset;
+        final int end = offset + length;
+        final int unrolledEnd = end - (TABLES - 1);
+        for (; i < unrolledEnd; i += TABLES) {
+            tables[data[i] & 0xFF]++;
+            tables[256 + (data[i + 1] & 0xFF)]++;
+            tables[2 * 256 + (data[i + 2] & 0xFF)]++;
+            tables[3 * 256 + (data[i + 3] & 0xFF)]++;
+        }
+        for (; i < end; i++) {
+            tables[data[i] & 0xFF]++;
+        }
+        for (int value = 0; value < 256; value++) {
+            counts[value] += (long) tables[value] + tables[256 + value] + tables[2 * 256 + value] + tables[3 * 256 + value];
+        }
+    }
+
+    /**
+     * counting the characters in data[offset, offset + length) on the common ForkJoinPool.
+     *
+     * @return the count of every character, indexed by character up to the largest that occurs
+     */
+    static long[] countParallel(char[] data, int offset, int length) {
+        return countParallel(data, offset, length, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * counting the characters in data[offset, offset + length), splitting them into one stripe per
+     * thread of the pool. Every stripe is counted into its own histogram and the results are summed.
+     *
+     * @return the count of every character, indexed by character up to the largest that occurs
+     */
+    static long[] countParallel(char[] data, int offset, int length, ForkJoinPool pool) {
+        int stripes = Math.max(1, Math.min(pool.getParallelism(), length / MIN_STRIPE_LENGTH));
+        if (stripes == 1) {
+            return count(data, offset, length);
+        }
+
+        List<ForkJoinTask<long[]>> tasks = new ArrayList<>(stripes);
+        for (int stripe = 0; stripe < stripes; stripe++) {
+            int from = offset + (int) ((long) length * stripe / stripes);
+            int to = offset + (int) ((long) length * (stripe + 1) / stripes);
+            tasks.add(pool.submit(() -> count(data, from, to - from)));
+        }
+
+        // merging the histograms of the stripes, which reach as far as their own largest character
+        long[] counts = tasks.get(0).join();
+        for (int stripe = 1; stripe < stripes; stripe++) {
+            long[] stripeCounts = tasks.get(stripe).join();
+            if (stripeCounts.length > counts.length) {
+                counts = Arrays.copyOf(counts, stripeCounts.length);
+            }
+            for (int character = 0; character < stripeCounts.length; character++) {
+                counts[character] += stripeCounts[character];
+            }
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,390 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.CharArrayReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+//Benchmark of every stage of the Huffman pipeline on the test corpus and on synthetic inputs.
+//Every stage is warmed up before it is measured, its results are consumed so that the JIT cannot drop
+//the work, and the bytes allocated by the measuring thread are read from the JVM, reporting for each
+//stage and input the throughput in millions of input characters per second and the allocation rate.
+//Run from src with: java -cp <classes> HuffmanBenchmark [warmupIterations] [iterations] [stage ...]
+class HuffmanBenchmark {
+    static final String[] STAGES = {"histogram", "tree", "codes", "setup", "count-setup", "baseline-setup", "encode", "decode", "block-decode", "block-decode-4", "end-to-end", "adaptive-encode", "adaptive-decode", "context-encode", "context-decode",
+            "bwt", "mtf", "zero-run", "transform-encode", "transform-decode", "byte-encode", "byte-decode"};
+    // sizes of the synthetic inputs in characters
+    private static final int[] SYNTHETIC_SIZES = {1 << 10, 1 << 14, 1 << 16, 1 << 20, 1 << 23};
+    // smallest amount of input processed by the measured iterations of a stage
+    private static final long MIN_MEASURED_CHARACTERS = 1L << 25;
+    // number of rounds the measured iterations are split into, the spread of the rounds is reported
+    static final int ROUNDS = 10;
+
+    private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // results of every iteration are added here, so that no stage can be optimised away
+    static volatile long sink;
+
+    //Body of a benchmarked stage, returning a value derived from its result
+    interface Stage {
+        long run() throws IOException;
+    }
+
+    /**
+     * returning the inputs to benchmark: the files of the test corpus followed by low and high
+     * entropy synthetic inputs of several sizes.
+     *
+     * @return the characters of every input, by name
+     */
+    static Map<String, char[]> inputs() throws IOException {
+        Map<String, char[]> inputs = new LinkedHashMap<>();
+        File[] corpus = new File("../resources/fileToTest").listFiles();
+        if (corpus != null) {
+            Arrays.sort(corpus);
+            for (File file : corpus) {
+                inputs.put(file.getName(), new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).toCharArray());
+            }
+        }
+
+        Random random = new Random(42);
+        for (int size : SYNTHETIC_SIZES) {
+            // low entropy: one character nine times out of ten, the rest spread over eight others
+            char[] low = new char[size];
+            for (int i = 0; i < size; i++) {
+                low[i] = random.nextInt(10) == 0 ? (char) ('b' + random.nextInt(8)) : 'a';
+            }
+            inputs.put("low-entropy(" + size / 1024 + "K)", low);
+
+            // high entropy: uniform over 4096 CJK characters
+            char[] high = new char[size];
+            for (int i = 0; i < size; i++) {
+                high[i] = (char) (0x4E00 + random.nextInt(4096));
+            }
+            inputs.put("high-entropy(" + size / 1024 + "K)", high);
+        }
+        return inputs;
+    }
+
+    /**
+     * running every stage on one input.
+     *
+     * @param name the name of the input
+     * @param input the characters of the input
+     * @param warmup the number of iterations run before measuring
+     * @param iterations the least number of measured iterations
+     * @param stages the stages to run
+     */
+    static void benchmark(String name, char[] input, int warmup, int iterations, List<String> stages) throws IOException {
+        // everything a stage needs from the stages before it is prepared up front
+        long[] counts = Histogram.count(input, 0, input.length);
+        long[] sorted = CodeLengths.sortByCount(counts);
+        long[] weights = new long[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            weights[i] = sorted[i] >>> CodeLengths.SYMBOL_BITS;
+        }
+        int[] lengths = weights.length > 1 ? CodeLengths.huffman(weights) : new int[] {1};
+        CodeTable codeTable = HuffmanCoding.buildCodeTable(counts);
+        byte[] compressed = compress(input, codeTable);
+        ByteBuffer compressedBuffer = ByteBuffer.wrap(compressed);
+        HuffmanHeader header = HuffmanHeader.read(compressedBuffer);
+        long payloadStart = (long) compressedBuffer.position() * Byte.SIZE;
+        HuffmanDecoder decoder = new HuffmanDecoder(codeTable);
+        char[] output = new char[input.length];
+        byte[] block = BlockCompressor.encodeBlock(input, input.length, false);
+        byte[] interleavedBlock = BlockCompressor.encodeBlock(input, input.length, true);
+        ByteArrayOutputStream adaptiveOutput = new ByteArrayOutputStream(input.length);
+        new AdaptiveCompressor(AdaptiveCompressor.DEFAULT_CHUNK_SIZE).compress(new CharArrayReader(input), adaptiveOutput);
+        byte[] adaptive = adaptiveOutput.toByteArray();
+        ByteArrayOutputStream contextOutput = new ByteArrayOutputStream(input.length);
+        ContextCompressor.compress(input, input.length, contextOutput);
+        byte[] context = contextOutput.toByteArray();
+        // the byte engine works on the UTF-8 encoding of the input
+        byte[] bytes = new String(input).getBytes(StandardCharsets.UTF_8);
+        long[] byteCounts = new long[ByteCompressor.ALPHABET_SIZE];
+        Histogram.countBytes(bytes, 0, bytes.length, byteCounts);
+        CodeTable byteTable = ByteCompressor.buildCodeTable(byteCounts);
+        ByteArrayOutputStream byteOutput = new ByteArrayOutputStream(bytes.length);
+        ByteCompressor.compress(new ByteArrayInputStream(bytes), byteOutput, byteTable, bytes.length);
+        ByteBuffer byteCompressed = ByteBuffer.wrap(byteOutput.toByteArray());
+        HuffmanDecoder byteDecoder = new HuffmanDecoder(byteTable);
+        long bytePayloadStart = (byteCompressed.limit() - (PackageMerge.encodedBits(byteCounts, byteTable) + 7) / 8) * Byte.SIZE;
+        byte[] byteResult = new byte[bytes.length];
+
+        // the transforms are slow on large alphabets, so their inputs are only prepared when measured
+        TransformPipeline transforms = TransformPipeline.parse("all");
+        boolean transformed = stages.stream().anyMatch(stage -> stage.equals("mtf") || stage.equals("zero-run") || stage.equals("transform-decode"));
+        byte[] transformedBlock = transformed ? BlockCompressor.encodeBlock(input, input.length, false, transforms) : null;
+        char[] bwtOutput = transformed ? new BurrowsWheeler().forward(input, input.length, new DataOutputStream(OutputStream.nullOutputStream())) : null;
+        char[] mtfOutput = transformed ? new MoveToFront().forward(bwtOutput, bwtOutput.length, new DataOutputStream(OutputStream.nullOutputStream())) : null;
+
+        // running enough iterations for every stage to take a measurable time
+        int measured = (int) Math.max(iterations, MIN_MEASURED_CHARACTERS / Math.max(1, input.length));
+
+        for (String stage : stages) {
+            switch (stage) {
+                case "histogram":
+                    measure(stage, name, input.length, warmup, measured, () -> Histogram.count(input, 0, input.length)[input[0]]);
+                    break;
+                case "tree":
+                    measure(stage, name, input.length, warmup, measured, () -> weights.length > 1 ? CodeLengths.huffman(weights)[0] : 1);
+                    break;
+                case "codes":
+                    measure(stage, name, input.length, warmup, measured, () -> canonicalCodes(sorted, lengths).codes[input[0]]);
+                    break;
+                case "setup":
+                    measure(stage, name, input.length, warmup, measured, () -> HuffmanCoding.buildCodeTable(counts).lengths[input[0]]);
+                    break;
+                case "count-setup":
+                    measure(stage, name, input.length, warmup, measured, () -> HuffmanCoding.buildCodeTable(Histogram.count(input, 0, input.length)).lengths[input[0]]);
+                    break;
+                case "baseline-setup":
+                    measure(stage, name, input.length, warmup, measured, () -> baselineSetup(input).get(input[0]).length());
+                    break;
+                case "encode":
+                    measure(stage, name, input.length, warmup, measured, () -> encode(input, codeTable, OutputStream.nullOutputStream()));
+                    break;
+                case "decode":
+                    measure(stage, name, input.length, warmup, measured, () -> decoder.decode(compressedBuffer, payloadStart,
+                            (long) compressed.length * Byte.SIZE, output, 0, (int) header.symbolCount));
+                    break;
+                case "block-decode":
+                    measure(stage, name, input.length, warmup, measured, () -> BlockCompressor.decodeBlock(ByteBuffer.wrap(block), input.length, BlockCompressor.VERSION).length);
+                    break;
+                case "block-decode-4":
+                    measure(stage, name, input.length, warmup, measured, () -> BlockCompressor.decodeBlock(ByteBuffer.wrap(interleavedBlock), input.length, BlockCompressor.VERSION).length);
+                    break;
+                case "end-to-end":
+                    measure(stage, name, input.length, warmup, measured, () -> endToEnd(input));
+                    break;
+                case "adaptive-encode":
+                    measure(stage, name, input.length, warmup, measured, () -> new AdaptiveCompressor(AdaptiveCompressor.DEFAULT_CHUNK_SIZE)
+                            .compress(new CharArrayReader(input), OutputStream.nullOutputStream()));
+                    break;
+                case "adaptive-decode":
+                    measure(stage, name, input.length, warmup, measured, () -> AdaptiveCompressor.decompress(new ByteArrayInputStream(adaptive), Writer.nullWriter()));
+                    break;
+                case "context-encode":
+                    measure(stage, name, input.length, warmup, measured, () -> ContextCompressor.compress(input, input.length, OutputStream.nullOutputStream()));
+                    break;
+                case "byte-encode":
+                    measure(stage, name, input.length, warmup, measured, () -> ByteCompressor.compress(new ByteArrayInputStream(bytes),
+                            OutputStream.nullOutputStream(), byteTable, bytes.length));
+                    break;
+                case "byte-decode":
+                    measure(stage, name, input.length, warmup, measured, () -> byteDecoder.decodeBytes(byteCompressed, bytePayloadStart,
+                            (long) byteCompressed.limit() * Byte.SIZE, byteResult, 0, byteResult.length));
+                    break;
+                case "bwt":
+                    measure(stage, name, input.length, warmup, measured, () -> new BurrowsWheeler().forward(input, input.length,
+                            new DataOutputStream(OutputStream.nullOutputStream())).length);
+                    break;
+                case "mtf":
+                    measure(stage, name, input.length, warmup, measured, () -> new MoveToFront().forward(bwtOutput, bwtOutput.length,
+                            new DataOutputStream(OutputStream.nullOutputStream())).length);
+                    break;
+                case "zero-run":
+                    measure(stage, name, input.length, warmup, measured, () -> {
+                        char[] runs = new ZeroRunLength().forward(mtfOutput, mtfOutput.length, new DataOutputStream(OutputStream.nullOutputStream()));
+                        return runs == null ? 0 : runs.length;
+                    });
+                    break;
+                case "transform-encode":
+                    measure(stage, name, input.length, warmup, measured, () -> BlockCompressor.encodeBlock(input, input.length, false, transforms).length);
+                    break;
+                case "transform-decode":
+                    measure(stage, name, input.length, warmup, measured, () -> BlockCompressor.decodeBlock(ByteBuffer.wrap(transformedBlock),
+                            input.length, BlockCompressor.VERSION).length);
+                    break;
+                case "context-decode":
+                    measure(stage, name, input.length, warmup, measured, () -> ContextCompressor.decompress(ByteBuffer.wrap(context)).length);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown stage " + stage + ", expected one of " + Arrays.toString(STAGES));
+            }
+        }
+    }
+
+    /**
+     * warming up and measuring one stage in ROUNDS rounds, then printing the median throughput of the
+     * rounds with the slowest and fastest of them, and the allocation rate over all of them. Stages
+     * whose medians differ by less than the spread of their rounds cannot be told apart by one run.
+     */
+    private static void measure(String stage, String name, int length, int warmup, int iterations, Stage body) throws IOException {
+        long result = 0;
+        for (int i = 0; i < warmup; i++) {
+            result += body.run();
+        }
+
+        int perRound = Math.max(1, iterations / ROUNDS);
+        double[] throughputs = new double[ROUNDS];
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = THREADS.getThreadAllocatedBytes(threadId);
+        long elapsed = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long startTime = System.nanoTime();
+            for (int i = 0; i < perRound; i++) {
+                result += body.run();
+            }
+            long roundTime = System.nanoTime() - startTime;
+            throughputs[round] = (double) length * perRound / (1024 * 1024) / (roundTime / 1e9);
+            elapsed += roundTime;
+        }
+        long allocated = THREADS.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        sink += result;
+
+        Arrays.sort(throughputs);
+        long operations = (long) perRound * ROUNDS;
+        double median = (throughputs[(ROUNDS - 1) / 2] + throughputs[ROUNDS / 2]) / 2;
+        double seconds = elapsed / 1e9;
+        System.out.println(String.format("%-14s %-52s %10.1f Mchar/s (%.1f-%.1f) %10.1f us/op %10.1f MB/s alloc %14d B/op",
+                stage, name, median, throughputs[0], throughputs[ROUNDS - 1], elapsed / 1e3 / operations,
+                allocated / (1024.0 * 1024) / seconds, allocated / operations));
+    }
+
+    /**
+     * filling a code table with lengths and assigning the canonical codes, the codes stage on its own.
+     *
+     * @return the code table
+     */
+    private static CodeTable canonicalCodes(long[] sorted, int[] lengths) {
+        int[] symbols = new int[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            symbols[i] = (int) (sorted[i] & 0xFFFF);
+        }
+        Arrays.sort(symbols);
+        CodeTable codeTable = new CodeTable(symbols.length > 0 ? symbols[symbols.length - 1] + 1 : 0);
+        for (int i = 0; i < sorted.length; i++) {
+            codeTable.lengths[(int) (sorted[i] & 0xFFFF)] = lengths[i];
+        }
+        codeTable.assignCanonicalCodes(symbols);
+        return codeTable;
+    }
+
+    //Node of the tree built by the original implementation, kept for the baseline-setup stage
+    private static class BaselineNode {
+        final Character character;
+        final Integer frequency;
+        final BaselineNode leftChild;
+        final BaselineNode rightChild;
+
+        BaselineNode(Character character, Integer frequency, BaselineNode leftChild, BaselineNode rightChild) {
+            this.character = character;
+            this.frequency = frequency;
+            this.leftChild = leftChild;
+            this.rightChild = rightChild;
+        }
+    }
+
+    /**
+     * counting the characters in a hash map, building the tree with a priority queue and collecting
+     * the codes as strings, the way the original implementation set up its codes. The setup stages
+     * are measured against it on small inputs, where the fixed cost of a table matters most.
+     *
+     * @return the code of every character
+     */
+    private static Map<Character, String> baselineSetup(char[] input) {
+        Map<Character, Integer> frequency = new HashMap<>();
+        for (char character : input) {
+            frequency.put(character, frequency.getOrDefault(character, 0) + 1);
+        }
+        PriorityQueue<BaselineNode> priorityQueue = new PriorityQueue<>(Comparator.comparingInt(node -> node.frequency));
+        for (Map.Entry<Character, Integer> entry : frequency.entrySet()) {
+            priorityQueue.add(new BaselineNode(entry.getKey(), entry.getValue(), null, null));
+        }
+        while (priorityQueue.size() != 1) {
+            BaselineNode leftChild = priorityQueue.poll();
+            BaselineNode rightChild = priorityQueue.poll();
+            priorityQueue.add(new BaselineNode(null, leftChild.frequency + rightChild.frequency, leftChild, rightChild));
+        }
+        Map<Character, String> huffmanCode = new HashMap<>();
+        baselineCodes(priorityQueue.peek(), "", huffmanCode);
+        return huffmanCode;
+    }
+
+    // walking the tree of the original implementation, appending a bit per level
+    private static void baselineCodes(BaselineNode node, String code, Map<Character, String> huffmanCode) {
+        if (node.leftChild == null && node.rightChild == null) {
+            huffmanCode.put(node.character, code.length() > 0 ? code : "1");
+            return;
+        }
+        baselineCodes(node.leftChild, code + '0', huffmanCode);
+        baselineCodes(node.rightChild, code + '1', huffmanCode);
+    }
+
+    /**
+     * encoding the characters with a code table, the encode stage on its own.
+     *
+     * @return the number of bits written
+     */
+    private static long encode(char[] input, CodeTable codeTable, OutputStream output) throws IOException {
+        BitWriter bitWriter = new BitWriter(output, HuffmanCoding.STREAM_BUFFER_SIZE);
+        HuffmanCoding.encode(input, 0, input.length, 0, codeTable, bitWriter, new SeekIndex(SeekIndex.DEFAULT_INTERVAL));
+        return bitWriter.finish();
+    }
+
+    /**
+     * writing a complete single stream file into memory, as huffmanCompress does.
+     *
+     * @return the compressed file
+     */
+    private static byte[] compress(char[] input, CodeTable codeTable) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(input.length);
+        new HuffmanHeader(input.length, SeekIndex.DEFAULT_INTERVAL, codeTable).write(output);
+        BitWriter bitWriter = new BitWriter(output, HuffmanCoding.STREAM_BUFFER_SIZE);
+        SeekIndex seekIndex = new SeekIndex(SeekIndex.DEFAULT_INTERVAL);
+        HuffmanCoding.encode(input, 0, input.length, 0, codeTable, bitWriter, seekIndex);
+        bitWriter.finish();
+        seekIndex.write(output);
+        return output.toByteArray();
+    }
+
+    /**
+     * compressing and decompressing the characters in memory, every stage from the histogram to the
+     * decoded characters.
+     *
+     * @return the last decoded character
+     */
+    private static long endToEnd(char[] input) throws IOException {
+        byte[] compressed = compress(input, HuffmanCoding.buildCodeTable(Histogram.count(input, 0, input.length)));
+        ByteBuffer data = ByteBuffer.wrap(compressed);
+        HuffmanHeader header = HuffmanHeader.read(data);
+        char[] output = new char[(int) header.symbolCount];
+        long end = new HuffmanDecoder(header.codeTable).decode(data, (long) data.position() * Byte.SIZE,
+                (long) compressed.length * Byte.SIZE, output, 0, output.length);
+        if (end < 0) {
+            throw new IOException("Benchmark round trip failed");
+        }
+        return output[output.length - 1];
+    }
+
+    public static void main(String[] args) throws IOException {
+        int warmup = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        List<String> stages = new ArrayList<>(Arrays.asList(args).subList(Math.min(2, args.length), args.length));
+        if (stages.isEmpty()) {
+            stages.addAll(Arrays.asList(STAGES));
+        }
+
+        for (Map.Entry<String, char[]> input : inputs().entrySet()) {
+            if (input.getValue().length == 0) {
+                continue;
+            }
+            benchmark(input.getKey(), input.getValue(), warmup, iterations, stages);
+        }
+    }
+}
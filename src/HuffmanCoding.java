@@ -1,55 +1,38 @@
-import java.util.HashMap;
-import java.util.PriorityQueue;
-import java.util.Comparator;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.stream.Stream;
 import java.util.Scanner;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.CharArrayReader;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.FileOutputStream;
 import java.io.FileInputStream;
-import java.io.ObjectOutputStream;
-import java.io.ObjectInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
 import java.io.File;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-
-//Huffman Tree Node
-class Node {
-    Node leftChild = null;
-    Node rightChild = null;
-    Character character;
-    Integer frequency;
-
-    /**
-     * constructor for initialising a node.
-     * 
-     * @param character the character associated with the node
-     * @param frequency the frequency of a node
-     * @param leftChild the left child of a node
-     * @param rightChild the right child of a node
-     */
-    public Node (Character character, Integer frequency, Node leftChild, Node rightChild) {
-        this.character = character;
-        this.frequency = frequency;
-        this.leftChild = leftChild;
-        this.rightChild = rightChild;
-    }
-
-    /**
-     * constructor for initialising a node.
-     * 
-     * @param character the character associated with the node
-     * @param frequency the frequency of a node
-     */
-    Node(Character character, Integer frequency) {
-        this.character = character;
-        this.frequency = frequency;
-    }
-}
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 
 class HuffmanCoding{
+    // size of the fixed char and byte buffers used while compressing
+    static final int STREAM_BUFFER_SIZE = 1 << 16;
+
     /**
      * read all lines of a file and convert it to a string.
      * 
@@ -72,170 +55,723 @@ class HuffmanCoding{
     }
 
     /**
-     * converting a given string to type binary.
+     * reading all lines of a stream and converting them to a string, as readLineToString does for a file.
+     *
+     * @param input the UTF-8 encoded lines, not closed
+     * @return strings read from the stream
+     */
+    static String readLineToString(InputStream input) throws IOException {
+        // initialising StringBuilder toReturnString
+        StringBuilder toReturnString = new StringBuilder();
+
+        // append each line to toReturnString, failing on bytes that are not UTF-8 as Files.lines does
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8.newDecoder()));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            toReturnString.append(line).append("\n");
+        }
+        return toReturnString.toString();
+    }
+
+    /**
+     * building the canonical code table from the number of times every character occurs.
+     *
+     * @param counts the count of every character, indexed by character
+     * @return the code table
+     */
+    public static CodeTable buildCodeTable(long[] counts) {
+        return buildCodeTable(counts, HuffmanDecoder.MAX_CODE_LENGTH);
+    }
+
+    /**
+     * building the canonical code table from the number of times every character occurs, with no
+     * code longer than maxCodeLength bits. The Huffman code lengths are computed in place over the sorted
+     * counts, and when they exceed the limit the package-merge algorithm finds the smallest output under it.
+     *
+     * @param counts the count of every character, indexed by character
+     * @param maxCodeLength the longest code allowed, in bits
+     * @return the code table
+     */
+    public static CodeTable buildCodeTable(long[] counts, int maxCodeLength) {
+        return CodeLengths.buildCodeTable(counts, maxCodeLength);
+    }
+
+    /**
+     * encoding characters with their codes, recording a checkpoint in the seek index at every
+     * character whose position in the whole input is a multiple of the checkpoint interval.
+     * 
+     * @param data the characters to encode
+     * @param offset the index of the first character
+     * @param length the number of characters
+     * @param encoded the number of characters of the input encoded before these ones
+     * @param codeTable the codes of the characters
+     * @param bitWriter the writer the codes are written to
+     * @param seekIndex the index the checkpoints are added to
+     */
+    static void encode(char[] data, int offset, int length, long encoded, CodeTable codeTable, BitWriter bitWriter, SeekIndex seekIndex) throws IOException {
+        final long[] codes = codeTable.codes;
+        final int[] lengths = codeTable.lengths;
+        final int interval = seekIndex.interval;
+        int i = offset;
+        final int end = offset + length;
+        while (i < end) {
+            // encoding up to the next checkpoint without checking for one at every character
+            int sinceCheckpoint = (int) ((encoded + i - offset) % interval);
+            if (sinceCheckpoint == 0) {
+                seekIndex.add(bitWriter.bitsWritten());
+            }
+            int chunkEnd = i + Math.min(end - i, interval - sinceCheckpoint);
+            for (; i < chunkEnd; i++) {
+                char character = data[i];
+                bitWriter.writeBits(codes[character], lengths[character]);
+            }
+        }
+    }
+
+    /**
+     * building the Huffman Tree, compressing the string and saving the compressed string to a binary file.
+     * 
+     * @param origin the name of the file to be compressed
+     * @param destination the name of the output file
+     * @return the metrics of the compression, or null if the file could not be compressed
+     */
+    public static HuffmanMetrics huffmanCompress(String origin, String destination) {
+        return huffmanCompress(origin, destination, HuffmanDecoder.MAX_CODE_LENGTH);
+    }
+
+    /**
+     * building the Huffman Tree, compressing the string and saving the compressed string to a binary file,
+     * with no code longer than maxCodeLength bits.
+     * 
+     * @param origin the name of the file to be compressed
+     * @param destination the name of the output file
+     * @param maxCodeLength the longest code allowed, in bits
+     * @return the metrics of the compression, or null if the file could not be compressed
+     */
+    public static HuffmanMetrics huffmanCompress(String origin, String destination, int maxCodeLength) {
+        return huffmanCompress(origin, destination, maxCodeLength, BlockCompressor.DEFAULT_MIN_SAVING);
+    }
+
+    /**
+     * building the code table, compressing the string and saving it to a binary file, or storing the
+     * characters as they are when coding would not save minSaving of their size in UTF-8.
+     * 
+     * @param origin the name of the file to be compressed
+     * @param destination the name of the output file
+     * @param maxCodeLength the longest code allowed, in bits
+     * @param minSaving the share of the stored size coding must save, between 0 and 1
+     * @return the metrics of the compression, or null if the file could not be compressed
+     */
+    public static HuffmanMetrics huffmanCompress(String origin, String destination, int maxCodeLength, double minSaving) {
+        return huffmanCompress(origin, destination, maxCodeLength, 0, minSaving);
+    }
+
+    /**
+     * compressing a file with a shared code table, which is referred to by its id instead of being stored
+     * in the compressed file. A table of the file's own is used instead when the shared table has no code
+     * for some of the characters, or when it would give a larger output than a table of the file's own.
+     * 
+     * @param origin the name of the file to be compressed
+     * @param destination the name of the output file
+     * @param tableId the id of a table trained with trainSharedTable
+     * @return the metrics of the compression, or null if the file could not be compressed
+     */
+    public static HuffmanMetrics huffmanCompressShared(String origin, String destination, int tableId) {
+        return huffmanCompress(origin, destination, HuffmanDecoder.MAX_CODE_LENGTH, tableId, BlockCompressor.DEFAULT_MIN_SAVING);
+    }
+
+    /**
+     * building the code table, compressing the string and saving it to a binary file.
      * 
-     * @param s the string to be converted to binary
-     * @return converted binary from given string
+     * @param origin the name of the file to be compressed
+     * @param destination the name of the output file
+     * @param maxCodeLength the longest code allowed, in bits
+     * @param tableId the id of a shared table to try, or 0 to always use a table of the file's own
+     * @param minSaving the share of the stored size coding must save, between 0 and 1
+     * @return the metrics of the compression, or null if the file could not be compressed
      */
-    public static byte[] getBinary(String s) {
-        StringBuilder sBuilder = new StringBuilder(s);
-        while (sBuilder.length() % 8 != 0) {
-            sBuilder.append('0');
+    private static HuffmanMetrics huffmanCompress(String origin, String destination, int maxCodeLength, int tableId, double minSaving) {
+        // specifying the path of the file to be compressed
+        String filePath = "../resources/fileToTest/" + origin;
+        // starting the clock of the whole compression and of its phases
+        HuffmanMetrics metrics = new HuffmanMetrics("compress", origin);
+
+        // calling function readLineToString to read lines from given file to string, counting the bytes read
+        metrics.begin(HuffmanMetrics.Phase.READ);
+        String inputString;
+        try (HuffmanMetrics.CountingInputStream input = new HuffmanMetrics.CountingInputStream(new FileInputStream(filePath))) {
+            inputString = readLineToString(input);
+            metrics.bytesIn = input.count();
+        }
+        catch (IOException exception) {
+            // printing the stack trace if an I/O exception has occured
+            exception.printStackTrace();
+            return null;
+        }
+
+        // return if the input string (from target file) is empty
+        if (inputString.length() == 0) {
+            return null;
+        }
+        char[] input = inputString.toCharArray();
+        metrics.symbolCount = input.length;
+
+        // counting the frequency of every character, on several threads for large inputs
+        metrics.begin(HuffmanMetrics.Phase.COUNT);
+        long[] counts = Histogram.countParallel(input, 0, input.length);
+        metrics.entropy = HuffmanMetrics.entropy(counts);
+
+        // computing the code lengths and the code table holding the huffman code of every character
+        metrics.begin(HuffmanMetrics.Phase.BUILD);
+        CodeTable codeTable = buildCodeTable(counts, maxCodeLength);
+
+        // switching to the shared table when it fits the characters
+        String tableUsed = "own";
+        if (tableId != 0) {
+            try {
+                CodeTable shared = SharedTables.get(tableId).codeTable;
+                if (SharedTables.fits(counts, shared, codeTable)) {
+                    codeTable = shared;
+                    tableUsed = "shared " + SharedTables.name(tableId);
+                }
+                else {
+                    tableUsed = "own, shared " + SharedTables.name(tableId) + " is a poor fit";
+                    tableId = 0;
+                }
+            }
+            catch (IOException exception) {
+                // printing the stack trace if the shared table could not be loaded
+                exception.printStackTrace();
+                return null;
+            }
+        }
+        metrics.codeCount = codeTable.symbols().length;
+
+        // working out the coded size before encoding, data that coding would not shrink enough is written
+        // as a block file instead, whose blocks are stored as they are or as runs of a single character
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        try {
+            new HuffmanHeader(input.length, SeekIndex.DEFAULT_INTERVAL, codeTable, tableId).write(header);
+        }
+        catch (IOException exception) {
+            // printing the stack trace if an I/O exception has occured
+            exception.printStackTrace();
+            return null;
         }
-        s = sBuilder.toString();
+        boolean stored = !BlockCompressor.worthCoding(header.size() + (PackageMerge.encodedBits(counts, codeTable) + 7) / 8,
+                BlockCompressor.storedSize(input, input.length), minSaving);
 
-        byte[] data = new byte[s.length() / 8];
+        // writing the header and encoding the string straight into the output file
+        metrics.begin(HuffmanMetrics.Phase.ENCODE);
+        try (HuffmanMetrics.CountingOutputStream output = new HuffmanMetrics.CountingOutputStream(new FileOutputStream("../out/" + destination))) {
+            if (stored) {
+                tableUsed = "none, stored";
+                metrics.codeCount = 0;
+                new BlockCompressor(BlockCompressor.DEFAULT_BLOCK_SIZE, 1, false, TransformPipeline.parse("none"), minSaving)
+                        .compress(new CharArrayReader(input), output);
+                metrics.bytesOut = output.count();
+            }
+            else {
+                header.writeTo(output);
+                metrics.headerBytes = output.count();
+                BitWriter bitWriter = new BitWriter(output, STREAM_BUFFER_SIZE);
+                SeekIndex seekIndex = new SeekIndex(SeekIndex.DEFAULT_INTERVAL);
+                encode(input, 0, input.length, 0, codeTable, bitWriter, seekIndex);
+                metrics.encodedBits = bitWriter.finish();
 
-        for (int i = 0; i < s.length(); i++) {
-            char c = s.charAt(i);
-            if (c == '1') {
-                data[i >> 3] |= 0x80 >> (i & 0x7);
+                // writing the seek index and closing the file
+                metrics.begin(HuffmanMetrics.Phase.WRITE);
+                seekIndex.write(output);
+                metrics.bytesOut = output.count();
             }
+        } 
+        catch (IOException exception) {
+            // printing the stack trace if an I/O exception has occured
+            exception.printStackTrace();
+            return null;
         }
-        return data;
+        metrics.finish();
+
+        // returning the statistics of compressing the file
+        System.out.println("Statistics of compressing the file:");
+        System.out.println("Compress time: " + metrics.totalTime() / 1000000 + "ms");
+        System.out.println("Setup time (frequencies and code table): "
+                + (metrics.phaseTime(HuffmanMetrics.Phase.COUNT) + metrics.phaseTime(HuffmanMetrics.Phase.BUILD)) / 1000 + "us");
+        System.out.println("Code table: " + tableUsed);
+        System.out.println("Location of compressed file: ../out/" + destination);
+        System.out.println("Size of compressed file: " + (double) metrics.bytesOut + " bytes");
+        System.out.println("Compression rate:: " + metrics.compressionRate() + "%");
+        metrics.print(System.out);
+        printCodeLengthCost(counts, codeTable);
+        System.out.println("");
+        return metrics;
     }
 
     /**
-     * converting a given bytes to type string.
+     * compressing a file as raw bytes with a 256 symbol alphabet, as ByteCompressor does. No charset is
+     * decoded, so binary files and any line endings round trip exactly, and the file is streamed twice
+     * instead of being held in memory.
      * 
-     * @param bytes bytes to be converted to string
-     * @return converted stringbuilder from given bytes
+     * @param origin the name of the file to be compressed
+     * @param destination the name of the output file
+     * @return the metrics of the compression, or null if the file could not be compressed
      */
-    public static StringBuilder getString(byte[] bytes) {
-        StringBuilder sb = new StringBuilder(bytes.length * Byte.SIZE);
-        for (int i = 0; i < Byte.SIZE * bytes.length; i++)
-            sb.append((bytes[i / Byte.SIZE] << i % Byte.SIZE & 0x80) == 0 ? '0' : '1');
-        return sb;
+    public static HuffmanMetrics huffmanCompressBytes(String origin, String destination) {
+        return huffmanCompressBytes(origin, destination, BlockCompressor.DEFAULT_MIN_SAVING);
     }
 
     /**
-     * checking if the node is a leaf node.
+     * compressing a file as raw bytes, storing it as it is when coding would not save minSaving of its size.
+     * The coded size is worked out from the counts and the code lengths before anything is encoded.
      * 
-     * @param root the node to be checked
-     * @return true if the tree is a leaf node
+     * @param origin the name of the file to be compressed
+     * @param destination the name of the output file
+     * @param minSaving the share of the file's size coding must save, between 0 and 1
+     * @return the metrics of the compression, or null if the file could not be compressed
      */
-    public static boolean isLeaf(Node root) {
-        return root.leftChild == null && root.rightChild == null;
+    public static HuffmanMetrics huffmanCompressBytes(String origin, String destination, double minSaving) {
+        // specifying the path of the file to be compressed
+        Path filePath = Paths.get("../resources/fileToTest/" + origin);
+        // starting the clock of the whole compression and of its phases
+        HuffmanMetrics metrics = new HuffmanMetrics("compress", origin);
+
+        try (HuffmanMetrics.CountingOutputStream output = new HuffmanMetrics.CountingOutputStream(new FileOutputStream("../out/" + destination))) {
+            // reading the file once to count the bytes, reading and counting overlap so they are one phase
+            metrics.begin(HuffmanMetrics.Phase.COUNT);
+            long[] counts = ByteCompressor.count(filePath);
+            metrics.bytesIn = Arrays.stream(counts).sum();
+            metrics.symbolCount = metrics.bytesIn;
+            metrics.entropy = HuffmanMetrics.entropy(counts);
+
+            metrics.begin(HuffmanMetrics.Phase.BUILD);
+            CodeTable codeTable = ByteCompressor.buildCodeTable(counts);
+            metrics.codeCount = codeTable.symbols().length;
+            boolean stored = !BlockCompressor.worthCoding(ByteCompressor.codedSize(counts, codeTable),
+                    ByteCompressor.STORED_HEADER_SIZE + metrics.bytesIn, minSaving);
+
+            // reading the file again and encoding it straight into the output file, or copying it
+            metrics.begin(HuffmanMetrics.Phase.ENCODE);
+            if (stored) {
+                metrics.codeCount = 0;
+                ByteCompressor.store(filePath, output, metrics.bytesIn);
+                metrics.bytesOut = output.count();
+                metrics.headerBytes = ByteCompressor.STORED_HEADER_SIZE;
+            }
+            else {
+                metrics.encodedBits = ByteCompressor.compress(filePath, output, codeTable, metrics.bytesIn);
+                metrics.bytesOut = output.count();
+                metrics.headerBytes = metrics.bytesOut - (metrics.encodedBits + 7) / 8;
+            }
+        }
+        catch (IOException exception) {
+            // printing the stack trace if an I/O exception has occured
+            exception.printStackTrace();
+            return null;
+        }
+        metrics.finish();
+
+        // returning the statistics of compressing the file
+        System.out.println("Statistics of compressing the file (raw bytes):");
+        System.out.println("Compress time: " + metrics.totalTime() / 1000000 + "ms");
+        System.out.println("Location of compressed file: ../out/" + destination);
+        System.out.println("Size of compressed file: " + (double) metrics.bytesOut + " bytes");
+        System.out.println("Compression rate:: " + metrics.compressionRate() + "%");
+        metrics.print(System.out);
+        System.out.println("");
+        return metrics;
     }
 
     /**
-     * traversing the huffman tree and storing huffman codes in a map.
+     * training a shared code table from sample files and printing its id.
      * 
-     * @param root the current node
-     * @param string the binary codes of the Huffman Tree
-     * @param huffmanCode hash map that contains the huffman codes
+     * @param samples the names of the sample files
+     * @return the id of the table, or 0 if it could not be trained
      */
-    public static void huffmanEncode(Node root, String string, Map<Character, String> huffmanCode) {
-        if (root == null) {
-            return;
+    public static int trainSharedTable(String... samples) {
+        List<Path> paths = new ArrayList<>();
+        for (String sample : samples) {
+            paths.add(Paths.get("../resources/fileToTest/" + sample));
+        }
+        try {
+            int tableId = SharedTables.train(paths, HuffmanDecoder.MAX_CODE_LENGTH);
+            System.out.println("Shared code table trained: " + SharedTables.name(tableId));
+            System.out.println("");
+            return tableId;
         }
-        // insert a mapping into a map if the node is a leaf node
-        if (isLeaf(root)) {
-            huffmanCode.put(root.character, string.length() > 0 ? string : "1");
+        catch (IOException | IllegalArgumentException exception) {
+            // printing the stack trace if the table could not be trained
+            exception.printStackTrace();
+            return 0;
         }
+    }
 
-        // traversing the huffman tree by passing the left and right childs
-        huffmanEncode(root.leftChild, string + '0', huffmanCode);
-        huffmanEncode(root.rightChild, string + '1', huffmanCode);
+    /**
+     * printing the longest code and how much larger the encoded bits are than with unconstrained Huffman codes.
+     * 
+     * @param counts the count of every character, indexed by character
+     * @param codeTable the codes the characters were encoded with
+     */
+    static void printCodeLengthCost(long[] counts, CodeTable codeTable) {
+        long bits = PackageMerge.encodedBits(counts, codeTable);
+        long huffmanBits = PackageMerge.huffmanBits(counts);
+        System.out.println("Longest code: " + codeTable.maxLength() + " bits");
+        System.out.println("Size cost of the code length limit: " + (huffmanBits == 0 ? 0 : (double) (bits - huffmanBits) / huffmanBits * 100) + "%");
     }
 
     /**
-     * building the Huffman Tree, compressing the string and saving the compressed string to a binary file.
+     * compressing a file in two streaming passes over fixed-size buffers, so that neither the file nor
+     * its encoded bits are ever held in memory as a whole. The first pass counts the characters and the
+     * second pass encodes them straight into the output file. The output has the same layout as the one
+     * written by huffmanCompress and can be decompressed in the same way.
+     * 
+     * @param origin the name of the file to be compressed
+     * @param destination the name of the output file
+     */
+    public static void huffmanCompressStream(String origin, String destination) {
+        huffmanCompressStream(origin, destination, false);
+    }
+
+    /**
+     * compressing a file in two streaming passes, optionally reading the file and writing the output
+     * through memory-mapped windows instead of streams.
+     * 
+     * @param origin the name of the file to be compressed
+     * @param destination the name of the output file
+     * @param mapped true to map the files into memory instead of streaming them
+     */
+    public static void huffmanCompressStream(String origin, String destination, boolean mapped) {
+        huffmanCompressStream(origin, destination, mapped, HuffmanDecoder.MAX_CODE_LENGTH);
+    }
+
+    /**
+     * compressing a file in two streaming passes with no code longer than maxCodeLength bits.
      * 
      * @param origin the name of the file to be compressed
      * @param destination the name of the output file
+     * @param mapped true to map the files into memory instead of streaming them
+     * @param maxCodeLength the longest code allowed, in bits
      */
-    public static void huffmanCompress(String origin, String destination) {
+    public static void huffmanCompressStream(String origin, String destination, boolean mapped, int maxCodeLength) {
         // specifying the path of the file to be compressed
         String filePath = "../resources/fileToTest/" + origin;
-        // calling function readLineToString to read lines from given file to string
-        String inputString = readLineToString(filePath);
-
-        // assigning variable compressStartTime to be the current time in ms
-        final long compressStartTime = System.currentTimeMillis();
 
-        // creating a hash map to store the frequency of characters
-        Map<Character, Integer> frequency = new HashMap<>();
-        PriorityQueue<Node> priorityQueue;
+        // assigning variable compressStartTime to be the current time in ns
+        final long compressStartTime = System.nanoTime();
 
-        // return if the input string (from target file) is empty
-        if (inputString == null || inputString.length() == 0) {
+        // first pass: counting the frequency of every character
+        long[] counts;
+        try {
+            counts = countStream(Paths.get(filePath), mapped);
+        }
+        catch (IOException error) {
+            // printing the stack trace if an I/O exception has occured
+            error.printStackTrace();
             return;
         }
+        long inputLength = Arrays.stream(counts).sum();
 
-        // counting the frequency of a character and putting it in a map
-        for (char character : inputString.toCharArray()) {
-            frequency.put(character, frequency.getOrDefault(character, 0) + 1);
+        // return if the target file is empty
+        if (inputLength == 0) {
+            return;
         }
 
-        // initialising the priority queue 
-        priorityQueue = new PriorityQueue<>(Comparator.comparingInt(character -> character.frequency));
+        // computing the code lengths and the code table from the counts
+        final long setupStartTime = System.nanoTime();
+        CodeTable codeTable = buildCodeTable(counts, maxCodeLength);
+        final long setupTime = System.nanoTime() - setupStartTime;
 
-        // adding a node to the priority queue
-        for (var entry : frequency.entrySet()) {
-            priorityQueue.add(new Node(entry.getKey(), entry.getValue()));
+        // second pass: writing the header and encoding the characters
+        try {
+            compressStream(Paths.get(filePath), Paths.get("../out/" + destination), mapped, codeTable, inputLength);
+        }
+        catch (IOException exception) {
+            // printing the stack trace if an I/O exception has occured
+            exception.printStackTrace();
+            return;
         }
 
-        // stops if the size of priority queue is 1
-        while (priorityQueue.size() != 1) {
-            // retrieving the characters with the least frequency to be child nodes and removing them from the queue
-            Node leftChild = priorityQueue.poll();
-            Node rightChild = priorityQueue.poll();
+        // assigning variable compressEndTime to be the current time in ns
+        final long compressEndTime = System.nanoTime();
+
+        // returning the statistics of compressing the file
+        double originalFileSizeBytes = (double) new File(filePath).length();
+        double compressedFileSizeBytes = (double) new File("../out/" + destination).length();
+        double compressSeconds = (compressEndTime - compressStartTime) / 1e9;
+        System.out.println("Statistics of compressing the file (" + (mapped ? "memory-mapped" : "streaming") + "):");
+        System.out.println("Compress time: " + (compressEndTime - compressStartTime) / 1000000 + "ms");
+        System.out.println("Throughput: " + originalFileSizeBytes / (1024 * 1024) / compressSeconds + " MB/s");
+        System.out.println("Setup time (code table): " + setupTime / 1000 + "us");
+        System.out.println("Location of compressed file: ../out/" + destination);
+        System.out.println("Size of compressed file: " + compressedFileSizeBytes + " bytes");
+        System.out.println("Compression rate:: " + (originalFileSizeBytes - compressedFileSizeBytes)/originalFileSizeBytes*100 + "%");
+        printCodeLengthCost(counts, codeTable);
+        System.out.println("");
+    }
+
+    /**
+     * counting the frequency of every character of a file through a fixed-size buffer, the first pass
+     * of huffmanCompressStream.
+     * 
+     * @param origin the file to be compressed
+     * @param mapped true to map the file into memory instead of reading it through a stream
+     * @return the count of every character, indexed by character
+     */
+    static long[] countStream(Path origin, boolean mapped) throws IOException {
+        // the only buffer used, its size does not depend on the size of the file
+        char[] inputBuffer = new char[STREAM_BUFFER_SIZE];
+        Histogram histogram = new Histogram();
+        try (Reader reader = openReader(origin, mapped)) {
+            int read;
+            while ((read = reader.read(inputBuffer)) != -1) {
+                histogram.add(inputBuffer, 0, read);
+            }
+        }
+        return histogram.counts();
+    }
 
-            // setting the frequency of internal node to be the sum of frequency of left and right child
-            int frequencySum = leftChild.frequency + rightChild.frequency;
-            // adding a new internal node to the priority queue
-            priorityQueue.add(new Node (null, frequencySum, leftChild, rightChild));
+    /**
+     * writing the header and encoding the characters of a file through a fixed-size buffer, the second
+     * pass of huffmanCompressStream. The bit writer flushes its buffer every time it is full.
+     * 
+     * @param origin the file to be compressed
+     * @param destination the compressed file
+     * @param mapped true to map the files into memory instead of going through streams
+     * @param codeTable the codes of the characters
+     * @param inputLength the number of characters of the file
+     */
+    static void compressStream(Path origin, Path destination, boolean mapped, CodeTable codeTable, long inputLength) throws IOException {
+        char[] inputBuffer = new char[STREAM_BUFFER_SIZE];
+        try (Reader reader = openReader(origin, mapped);
+             OutputStream output = openOutput(destination, mapped)) {
+            new HuffmanHeader(inputLength, SeekIndex.DEFAULT_INTERVAL, codeTable).write(output);
+            BitWriter bitWriter = new BitWriter(output, STREAM_BUFFER_SIZE);
+            SeekIndex seekIndex = new SeekIndex(SeekIndex.DEFAULT_INTERVAL);
+            long encoded = 0;
+            int read;
+            while ((read = reader.read(inputBuffer)) != -1) {
+                encode(inputBuffer, 0, read, encoded, codeTable, bitWriter, seekIndex);
+                encoded += read;
+            }
+            bitWriter.finish();
+            seekIndex.write(output);
         }
+    }
 
-        // retrieving the head of the queue but not removing it
-        Node root = priorityQueue.peek();
+    /**
+     * compressing a file in independently coded blocks on several threads. The output is decompressed
+     * by huffmanDecompress like any other compressed file, again with one thread per block.
+     * 
+     * @param origin the name of the file to be compressed
+     * @param destination the name of the output file
+     * @param workers the number of threads compressing blocks
+     * @param blockSize the number of characters in a block
+     */
+    public static void huffmanCompressParallel(String origin, String destination, int workers, int blockSize) {
+        huffmanCompressParallel(origin, destination, workers, blockSize, false);
+    }
 
-        // initialising a hash map object to store the huffman codes
-        Map<Character, String> huffmanCode = new HashMap<>();
-        huffmanEncode(root, "", huffmanCode);
+    /**
+     * compressing a file in independently coded blocks on several threads, optionally reading the
+     * file and writing the output through memory-mapped windows instead of streams.
+     * 
+     * @param origin the name of the file to be compressed
+     * @param destination the name of the output file
+     * @param workers the number of threads compressing blocks
+     * @param blockSize the number of characters in a block
+     * @param mapped true to map the files into memory instead of streaming them
+     */
+    public static void huffmanCompressParallel(String origin, String destination, int workers, int blockSize, boolean mapped) {
+        huffmanCompressParallel(origin, destination, workers, blockSize, mapped, false);
+    }
 
-        // storing the hash map huffmanCode to a file for future reference
-        try (FileOutputStream fos = new FileOutputStream(new File("../out/" + destination + ".huffmancode"))) {
-            ObjectOutputStream oos = new ObjectOutputStream(fos);
-            oos.writeObject(huffmanCode);
-            oos.flush();
-            oos.close();
-        } 
-        catch (Exception e) {
-            // printing the stack trace if there is an exception
-            e.printStackTrace();
+    /**
+     * compressing a file in independently coded blocks on several threads, optionally splitting every
+     * block into 4 interleaved streams that a single thread decodes side by side.
+     * 
+     * @param origin the name of the file to be compressed
+     * @param destination the name of the output file
+     * @param workers the number of threads compressing blocks
+     * @param blockSize the number of characters in a block
+     * @param mapped true to map the files into memory instead of streaming them
+     * @param interleaved true to encode every block as 4 streams
+     */
+    public static void huffmanCompressParallel(String origin, String destination, int workers, int blockSize, boolean mapped, boolean interleaved) {
+        huffmanCompressParallel(origin, destination, workers, blockSize, mapped, interleaved, TransformPipeline.parse("none"));
+    }
+
+    /**
+     * compressing a file in independently coded blocks on several threads, running a pipeline of
+     * transforms (Burrows-Wheeler, move-to-front, zero runs) on every block before coding it.
+     * 
+     * @param origin the name of the file to be compressed
+     * @param destination the name of the output file
+     * @param workers the number of threads compressing blocks
+     * @param blockSize the number of characters in a block
+     * @param mapped true to map the files into memory instead of streaming them
+     * @param interleaved true to encode every block as 4 streams
+     * @param transforms the transforms run on every block
+     */
+    public static void huffmanCompressParallel(String origin, String destination, int workers, int blockSize, boolean mapped, boolean interleaved, TransformPipeline transforms) {
+        // specifying the path of the file to be compressed
+        String filePath = "../resources/fileToTest/" + origin;
+
+        // assigning variable compressStartTime to be the current time in ns
+        final long compressStartTime = System.nanoTime();
+
+        try (Reader reader = openReader(Paths.get(filePath), mapped);
+             OutputStream output = openOutput(Paths.get("../out/" + destination), mapped)) {
+            new BlockCompressor(blockSize, workers, interleaved, transforms).compress(reader, output);
         }
-        
-        // building a stringBuilder object to store the encoded string
-        StringBuilder stringBuilder = new StringBuilder();
-        for (char character : inputString.toCharArray()) {
-            stringBuilder.append(huffmanCode.get(character));
+        catch (IOException | IllegalArgumentException exception) {
+            // printing the stack trace if the file could not be compressed
+            exception.printStackTrace();
+            return;
         }
 
-        // converting the encoded stringBuilder object to binary
-        byte[] binaryConverted = getBinary(stringBuilder.toString());
+        // assigning variable compressEndTime to be the current time in ns
+        final long compressEndTime = System.nanoTime();
 
-        // specifying the output file for converted binary
-        try (OutputStream output = new FileOutputStream("../out/" + destination)) {
-            // writing the binary to the output file
-            output.write(binaryConverted);
-        } 
+        // returning the statistics of compressing the file
+        double originalFileSizeBytes = (double) new File(filePath).length();
+        double compressedFileSizeBytes = (double) new File("../out/" + destination).length();
+        double compressSeconds = (compressEndTime - compressStartTime) / 1e9;
+        System.out.println("Statistics of compressing the file (" + workers + " workers, blocks of " + blockSize + " characters" + (interleaved ? " in 4 streams" : "")
+                + (transforms.isEmpty() ? "" : ", transforms " + transforms.names()) + "):");
+        System.out.println("Compress time: " + (compressEndTime - compressStartTime) / 1000000 + "ms");
+        System.out.println("Throughput: " + originalFileSizeBytes / (1024 * 1024) / compressSeconds + " MB/s");
+        System.out.println("Location of compressed file: ../out/" + destination);
+        System.out.println("Size of compressed file: " + compressedFileSizeBytes + " bytes");
+        System.out.println("Compression rate:: " + (originalFileSizeBytes - compressedFileSizeBytes)/originalFileSizeBytes*100 + "%");
+        System.out.println("");
+    }
+
+    /**
+     * appending a file to a file compressed in blocks, without reading or rewriting the blocks already in
+     * it. The new blocks reuse the code table of the last coded block when it still fits their characters.
+     * The compressed file is created if it does not exist yet.
+     * 
+     * @param origin the name of the file to be appended
+     * @param destination the name of the compressed file
+     */
+    public static HuffmanMetrics huffmanAppend(String origin, String destination) {
+        // specifying the paths of the file to be appended and of the compressed file
+        Path filePath = Paths.get("../resources/fileToTest/" + origin);
+        Path compressedPath = Paths.get("../out/" + destination);
+        // starting the clock of the whole append and of its phases
+        HuffmanMetrics metrics = new HuffmanMetrics("append", origin);
+
+        // reading and encoding overlap, so they are one phase, and the bytes are counted as they are read
+        metrics.begin(HuffmanMetrics.Phase.ENCODE);
+        long sizeBefore = 0;
+        try (HuffmanMetrics.CountingInputStream input = new HuffmanMetrics.CountingInputStream(new FileInputStream(filePath.toFile()));
+             Reader reader = new InputStreamReader(input, StandardCharsets.UTF_8)) {
+            BlockCompressor blockCompressor = new BlockCompressor(BlockCompressor.DEFAULT_BLOCK_SIZE, Runtime.getRuntime().availableProcessors());
+            if (!Files.exists(compressedPath)) {
+                // creating the compressed file, counting the bytes written to it
+                try (HuffmanMetrics.CountingOutputStream output = new HuffmanMetrics.CountingOutputStream(new FileOutputStream(compressedPath.toFile()))) {
+                    metrics.symbolCount = blockCompressor.compress(reader, output);
+                    metrics.bytesOut = output.count();
+                }
+            }
+            else {
+                // the bytes written are those the file grew by, the blocks, the new index and the new trailer
+                try (FileChannel channel = FileChannel.open(compressedPath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    sizeBefore = channel.size();
+                    metrics.symbolCount = blockCompressor.append(reader, channel);
+                    metrics.bytesOut = channel.size() - sizeBefore;
+                }
+            }
+            metrics.bytesIn = input.count();
+        }
+        catch (IOException | IllegalArgumentException exception) {
+            // printing the stack trace if the file could not be appended
+            exception.printStackTrace();
+            return null;
+        }
+
+        // once the old indexes take too much of the file, writing it again without them beside it and
+        // moving it over the file in one step, so that the file stays whole if this fails
+        metrics.begin(HuffmanMetrics.Phase.WRITE);
+        long reclaimed = 0;
+        Path compactPath = Paths.get("../out/" + destination + ".compact");
+        try (FileChannel channel = FileChannel.open(compressedPath)) {
+            long unused = BlockCompressor.unusedBytes(channel);
+            if (unused > channel.size() * BlockCompressor.MAX_UNUSED_SHARE) {
+                try (FileChannel compacted = FileChannel.open(compactPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    BlockCompressor.compact(channel, Channels.newOutputStream(compacted));
+                    compacted.force(true);
+                }
+                reclaimed = unused;
+            }
+        }
         catch (IOException exception) {
-            // printing the stack trace if an I/O exception has occured
+            // printing the stack trace if the file could not be compacted, it is left as the append wrote it
+            exception.printStackTrace();
+            reclaimed = 0;
+        }
+        try {
+            if (reclaimed > 0) {
+                Files.move(compactPath, compressedPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            Files.deleteIfExists(compactPath);
+        }
+        catch (IOException exception) {
+            // printing the stack trace if the compacted file could not replace the file, which is left as it was
+            exception.printStackTrace();
+            reclaimed = 0;
+        }
+        metrics.finish();
+
+        // returning the statistics of appending the file
+        System.out.println("Statistics of appending the file:");
+        System.out.println("Append time: " + metrics.totalTime() / 1000000 + "ms");
+        System.out.println("Characters appended: " + metrics.symbolCount);
+        System.out.println("Location of compressed file: ../out/" + destination);
+        System.out.println("Size of compressed file: " + (double) (sizeBefore + metrics.bytesOut - reclaimed) + " bytes, " + metrics.bytesOut + " more");
+        if (reclaimed > 0) {
+            System.out.println("Indexes of earlier appends reclaimed: " + reclaimed + " bytes");
+        }
+        System.out.println("Compression rate of the appended file:: " + metrics.compressionRate() + "%");
+        metrics.print(System.out);
+        System.out.println("");
+        return metrics;
+    }
+
+    /**
+     * compressing a file in a single pass with a table rebuilt from the counts of the characters read so
+     * far, as AdaptiveCompressor does for input whose length is not known in advance.
+     * 
+     * @param origin the name of the file to be compressed
+     * @param destination the name of the output file
+     * @param chunkSize the largest number of characters in a chunk, and the most read between two rebuilds of the table
+     */
+    public static void huffmanCompressAdaptive(String origin, String destination, int chunkSize) {
+        // specifying the path of the file to be compressed
+        String filePath = "../resources/fileToTest/" + origin;
+
+        // assigning variable compressStartTime to be the current time in ns
+        final long compressStartTime = System.nanoTime();
+
+        try (Reader reader = openReader(Paths.get(filePath), false);
+             OutputStream output = new FileOutputStream("../out/" + destination)) {
+            new AdaptiveCompressor(chunkSize).compress(reader, output);
+        }
+        catch (IOException | IllegalArgumentException exception) {
+            // printing the stack trace if the file could not be compressed
             exception.printStackTrace();
+            return;
         }
-       
-        // assigning variable compressEndTime to be the current time in ms
-        final long compressEndTime = System.currentTimeMillis();
+
+        // assigning variable compressEndTime to be the current time in ns
+        final long compressEndTime = System.nanoTime();
 
         // returning the statistics of compressing the file
-        File originalFile = new File(filePath);
-        File compressedFile = new File("../out/" + destination);
-        double originalFileSizeBytes = (double)originalFile.length();
-        double compressedFileSizeBytes = (double)compressedFile.length();
-        System.out.println("Statistics of compressing the file:");
-        System.out.println("Compress time: " + (compressEndTime - compressStartTime) + "ms");
+        double originalFileSizeBytes = (double) new File(filePath).length();
+        double compressedFileSizeBytes = (double) new File("../out/" + destination).length();
+        double compressSeconds = (compressEndTime - compressStartTime) / 1e9;
+        System.out.println("Statistics of compressing the file (adaptive, chunks of " + chunkSize + " characters):");
+        System.out.println("Compress time: " + (compressEndTime - compressStartTime) / 1000000 + "ms");
+        System.out.println("Throughput: " + originalFileSizeBytes / (1024 * 1024) / compressSeconds + " MB/s");
         System.out.println("Location of compressed file: ../out/" + destination);
         System.out.println("Size of compressed file: " + compressedFileSizeBytes + " bytes");
         System.out.println("Compression rate:: " + (originalFileSizeBytes - compressedFileSizeBytes)/originalFileSizeBytes*100 + "%");
@@ -243,51 +779,425 @@ class HuffmanCoding{
     }
 
     /**
-     * decompressing the Huffman encoded stringbuilder object with the hash map
+     * compressing a file with a code table for each frequent preceding character, as ContextCompressor
+     * does, so that characters are coded by what usually follows the one before them.
+     *
+     * @param origin the name of the file to be compressed
+     * @param destination the name of the output file
+     * @return the metrics of the compression, or null if the file could not be compressed
+     */
+    public static HuffmanMetrics huffmanCompressContext(String origin, String destination) {
+        // specifying the path of the file to be compressed
+        Path filePath = Paths.get("../resources/fileToTest/" + origin);
+        // starting the clock of the whole compression and of its phases
+        HuffmanMetrics metrics = new HuffmanMetrics("compress", origin);
+
+        int contextCount;
+        try (HuffmanMetrics.CountingOutputStream output = new HuffmanMetrics.CountingOutputStream(new FileOutputStream("../out/" + destination))) {
+            // reading the whole file, line endings included
+            metrics.begin(HuffmanMetrics.Phase.READ);
+            byte[] bytes = Files.readAllBytes(filePath);
+            metrics.bytesIn = bytes.length;
+            char[] input = new String(bytes, StandardCharsets.UTF_8).toCharArray();
+            metrics.symbolCount = input.length;
+
+            // counting, building the tables and encoding all happen in ContextCompressor, so they are one phase
+            metrics.begin(HuffmanMetrics.Phase.ENCODE);
+            contextCount = ContextCompressor.compress(input, input.length, output);
+            metrics.bytesOut = output.count();
+        }
+        catch (IOException exception) {
+            // printing the stack trace if the file could not be compressed
+            exception.printStackTrace();
+            return null;
+        }
+        metrics.finish();
+
+        // returning the statistics of compressing the file
+        System.out.println("Statistics of compressing the file (order-1 contexts, " + contextCount + " code tables):");
+        System.out.println("Compress time: " + metrics.totalTime() / 1000000 + "ms");
+        System.out.println("Location of compressed file: ../out/" + destination);
+        System.out.println("Size of compressed file: " + (double) metrics.bytesOut + " bytes");
+        System.out.println("Compression rate:: " + metrics.compressionRate() + "%");
+        metrics.print(System.out);
+        System.out.println("");
+        return metrics;
+    }
+
+    /**
+     * compressing every file of a directory in one JVM, a bounded number of files at a time, as
+     * BatchCompressor does. Unlike the other options the paths are used as given.
+     * 
+     * @param inputDirectory the directory holding the files to compress
+     * @param outputDirectory the directory the compressed files are written to
+     * @param concurrency the largest number of files compressed at the same time
+     */
+    public static void huffmanCompressBatch(String inputDirectory, String outputDirectory, int concurrency) {
+        try {
+            new BatchCompressor(concurrency).compress(Paths.get(inputDirectory), Paths.get(outputDirectory), System.out);
+        }
+        catch (IOException | IllegalArgumentException exception) {
+            // printing the stack trace if the directories could not be read or written
+            exception.printStackTrace();
+        }
+        catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * decompressing a compressed file: reading the header, rebuilding the canonical codes from the
+     * stored code lengths and decoding exactly the number of characters recorded in the header.
      * 
-     * @param huffmanCode the hash map storing the characters and the respective binary codes
-     * @param toDecompress the stringbuilder object to be decompressed
+     * @param origin the name of the compressed file
      * @param destination the name of the file where the decompressed string will be stored
+     * @return the metrics of the decompression, or null if the file could not be decompressed
      */
-    public static void huffmanDecompress(Map<Character, String> huffmanCode, StringBuilder toDecompress, String destination) {
-        // assigning variable decompressStartTime to be the current time in ms
-        final long decompressStartTime = System.currentTimeMillis();
-        // creating a stringBuilder result which stores the decoded string
-        StringBuilder result = new StringBuilder();
-        // creating a stringBuilder temp which appends the encoded bits 
-        StringBuilder temp = new StringBuilder();
+    public static HuffmanMetrics huffmanDecompress(String origin, String destination) {
+        return huffmanDecompress(origin, destination, false);
+    }
 
-        // creating a hash map to store the swapped huffmanCode
-        HashMap<String, Character> swapped = new HashMap<>();
-        // swapping the keys and the values of hash map huffmanCode and storing it in swapped
-        for (Map.Entry<Character, String> entry : huffmanCode.entrySet()) {
-            swapped.put(entry.getValue(), entry.getKey());
-        }
+    /**
+     * decompressing a compressed file, optionally reading it and writing the output through
+     * memory-mapped windows instead of streams.
+     * 
+     * @param origin the name of the compressed file
+     * @param destination the name of the file where the decompressed string will be stored
+     * @param mapped true to map the files into memory instead of streaming them
+     * @return the metrics of the decompression, or null if the file could not be decompressed
+     */
+    public static HuffmanMetrics huffmanDecompress(String origin, String destination, boolean mapped) {
+        // starting the clock of the whole decompression and of its phases
+        HuffmanMetrics metrics = new HuffmanMetrics("decompress", origin);
 
-        char[] bits = toDecompress.toString().toCharArray();
-        for (int i = 0; i < bits.length; i++) {
-            temp.append(bits[i]);
-            Object value = swapped.get(temp.toString());
-            // continue the for loop if value is not found
-            if (value == null) {
-                continue;
+        try (FileChannel channel = FileChannel.open(Paths.get("../out/" + origin), StandardOpenOption.READ);
+             HuffmanMetrics.CountingOutputStream output = new HuffmanMetrics.CountingOutputStream(openOutput(Paths.get("../out/" + destination), mapped))) {
+            metrics.bytesIn = channel.size();
+            // files compressed in blocks are decoded block by block in parallel
+            int version = channel.size() > 4 ? readRegion(channel, 4, 1, false).get(0) : -1;
+            if (BlockCompressor.isBlockVersion(version)) {
+                // reading, decoding and writing the blocks overlap, so they are measured as one phase
+                metrics.begin(HuffmanMetrics.Phase.DECODE);
+                BlockCompressor blockCompressor = new BlockCompressor(BlockCompressor.DEFAULT_BLOCK_SIZE, Runtime.getRuntime().availableProcessors());
+                metrics.symbolCount = blockCompressor.decompress(channel, output, mapped);
+            }
+            else if (version == AdaptiveCompressor.VERSION) {
+                // adaptive streams are decoded in a single pass, a chunk at a time
+                metrics.begin(HuffmanMetrics.Phase.DECODE);
+                Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+                metrics.symbolCount = AdaptiveCompressor.decompress(Channels.newInputStream(channel), writer);
+            }
+            else if (version == ByteCompressor.VERSION || version == ByteCompressor.VERSION_STORED) {
+                // files compressed as raw bytes are written back without any charset
+                ByteCompressor.decompress(channel, output, mapped, metrics);
+            }
+            else if (version == ContextCompressor.VERSION) {
+                // files with order-1 contexts are decoded as a whole, then written
+                metrics.begin(HuffmanMetrics.Phase.READ);
+                ByteBuffer data = readRegion(channel, 0, channel.size(), mapped);
+                metrics.begin(HuffmanMetrics.Phase.DECODE);
+                char[] result = ContextCompressor.decompress(data);
+                metrics.symbolCount = result.length;
+                metrics.begin(HuffmanMetrics.Phase.WRITE);
+                output.write(new String(result).getBytes(StandardCharsets.UTF_8));
             }
-            // appending the stringBuilder object with value
-            result.append(value);
-            // clearing the stringBuilder temp
-            temp.setLength(0);
+            else {
+                decompressSingleStream(channel, output, mapped, metrics);
+            }
+            metrics.bytesOut = output.count();
         }
-        // calling function saveDecompressedToFile to save the decompressed string to given file
-        saveDecompressedToFile(result, destination);
-
-        // assigning variable compressEndTime to be the current time in ms
-        final long decompressEndTime = System.currentTimeMillis();
+        catch (IOException error) {
+            // printing the stack trace if an I/O exception has occured
+            error.printStackTrace();
+            return null;
+        }
+        metrics.finish();
 
         // returning the statistics of decompressing the file
         System.out.println("File decompressed:");
-        System.out.println("Decompress time: " + (decompressEndTime - decompressStartTime) + "ms");
+        System.out.println("Decompress time: " + metrics.totalTime() / 1000000 + "ms");
         System.out.println("Location of decompressed file: ../out/" + destination);
+        metrics.print(System.out);
         System.out.println("");
+        return metrics;
+    }
+
+    /**
+     * decoding a file written by huffmanCompress or huffmanCompressStream and writing the characters.
+     * A memory-mapped file is decoded a buffer at a time straight into the output, through windows
+     * of at most MappedFileReader.DEFAULT_WINDOW_SIZE bytes that start at checkpoints of the seek index,
+     * so files larger than a single mapping are decoded too.
+     * 
+     * @param channel the compressed file
+     * @param output the stream the decompressed characters are written to, flushed but left open
+     * @param mapped true to map the file into memory instead of reading it onto the heap
+     * @param metrics the metrics the phases and sizes are recorded in
+     */
+    private static void decompressSingleStream(FileChannel channel, OutputStream output, boolean mapped, HuffmanMetrics metrics) throws IOException {
+        // reading the header
+        metrics.begin(HuffmanMetrics.Phase.READ);
+        ByteBuffer data = readRegion(channel, 0, mapped ? Math.min(channel.size(), HuffmanHeader.MAX_SIZE) : channel.size(), mapped);
+        HuffmanHeader header = HuffmanHeader.read(data);
+        metrics.headerBytes = data.position();
+        metrics.symbolCount = header.symbolCount;
+        metrics.codeCount = header.codeTable.symbols().length;
+
+        // building the decoding tables
+        metrics.begin(HuffmanMetrics.Phase.BUILD);
+        HuffmanDecoder decoder = header.decoder();
+
+        if (mapped) {
+            metrics.begin(HuffmanMetrics.Phase.DECODE);
+            Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+            metrics.encodedBits = decodeWindows(channel, header, decoder, data.position(), writer, MappedFileReader.DEFAULT_WINDOW_SIZE);
+            writer.flush();
+            return;
+        }
+        long indexSize = SeekIndex.checkpointCount(header.symbolCount, header.checkpointInterval) * SeekIndex.ENTRY_SIZE;
+        long bitOffset = (long) data.position() * Byte.SIZE;
+        long bitLimit = (data.limit() - indexSize) * Byte.SIZE;
+        if (header.symbolCount > Integer.MAX_VALUE - 8) {
+            throw new IOException("File too large to be decompressed in memory");
+        }
+        metrics.begin(HuffmanMetrics.Phase.DECODE);
+        char[] result = new char[(int) header.symbolCount];
+        long end = decoder.decode(data, bitOffset, bitLimit, result, 0, result.length);
+        if (end < 0) {
+            throw new IOException("Compressed file is truncated");
+        }
+        metrics.encodedBits = end - bitOffset;
+
+        // writing the decompressed string
+        metrics.begin(HuffmanMetrics.Phase.WRITE);
+        output.write(new String(result).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * decoding the encoded bits of a single stream file through mapped windows, a buffer of characters at
+     * a time. Every window starts at a checkpoint of the seek index and spans as many checkpoints as fit in
+     * windowSize bytes, at least one, so no mapping is larger than the bits of one checkpoint interval or
+     * windowSize. A file without a seek index is mapped as a whole.
+     * 
+     * @param channel the compressed file
+     * @param header the header of the file
+     * @param decoder the decoder of the file's code table
+     * @param payloadStart the position of the first encoded byte
+     * @param writer the writer the characters are written to, not flushed
+     * @param windowSize the largest number of bytes mapped at once, unless one checkpoint interval takes more
+     * @return the number of encoded bits decoded
+     */
+    static long decodeWindows(FileChannel channel, HuffmanHeader header, HuffmanDecoder decoder, long payloadStart, Writer writer, long windowSize) throws IOException {
+        long checkpoints = SeekIndex.checkpointCount(header.symbolCount, header.checkpointInterval);
+        long indexStart = channel.size() - checkpoints * SeekIndex.ENTRY_SIZE;
+        if (indexStart < payloadStart) {
+            throw new IOException("Compressed file is truncated");
+        }
+        char[] buffer = new char[STREAM_BUFFER_SIZE];
+        if (checkpoints == 0) {
+            ByteBuffer region = readRegion(channel, payloadStart, indexStart - payloadStart, true);
+            return decodeWindow(decoder, region, 0, header.symbolCount, writer, buffer);
+        }
+
+        // the whole index is mapped, it takes 8 bytes for every checkpoint interval
+        ByteBuffer index = readRegion(channel, indexStart, checkpoints * SeekIndex.ENTRY_SIZE, true);
+        long encodedBits = 0;
+        long first = 0;
+        while (first < checkpoints) {
+            // extending the window over the following checkpoints while it fits
+            long startBit = index.getLong((int) (first * SeekIndex.ENTRY_SIZE));
+            long startByte = payloadStart + (startBit >>> 3);
+            long last = first + 1;
+            while (last < checkpoints && windowEnd(index, last + 1, checkpoints, payloadStart, indexStart) - startByte <= windowSize) {
+                last++;
+            }
+            long endByte = windowEnd(index, last, checkpoints, payloadStart, indexStart);
+            if (endByte < startByte || endByte > indexStart) {
+                throw new IOException("Corrupt seek index");
+            }
+
+            // decoding the characters of the window, which must end on the next checkpoint
+            long count = Math.min(last * header.checkpointInterval, header.symbolCount) - first * header.checkpointInterval;
+            ByteBuffer region = readRegion(channel, startByte, endByte - startByte, true);
+            long windowBits = decodeWindow(decoder, region, startBit & 7, count, writer, buffer);
+            if (last < checkpoints && startBit + windowBits != index.getLong((int) (last * SeekIndex.ENTRY_SIZE))) {
+                throw new IOException("Corrupt seek index");
+            }
+            encodedBits += windowBits;
+            first = last;
+        }
+        return encodedBits;
+    }
+
+    // position after the last byte holding bits of the characters before checkpoint, the index for the last window
+    private static long windowEnd(ByteBuffer index, long checkpoint, long checkpoints, long payloadStart, long indexStart) {
+        return checkpoint < checkpoints ? payloadStart + (index.getLong((int) (checkpoint * SeekIndex.ENTRY_SIZE)) + 7) / 8 : indexStart;
+    }
+
+    /**
+     * decoding count characters of one mapped window a buffer at a time, continuing from the bit where
+     * the previous buffer ended.
+     * 
+     * @return the number of bits decoded
+     */
+    private static long decodeWindow(HuffmanDecoder decoder, ByteBuffer region, long bitOffset, long count, Writer writer, char[] buffer) throws IOException {
+        long startBit = bitOffset;
+        long bitLimit = (long) region.limit() * Byte.SIZE;
+        long remaining = count;
+        while (remaining > 0) {
+            int decoded = (int) Math.min(remaining, buffer.length);
+            bitOffset = decoder.decode(region, bitOffset, bitLimit, buffer, 0, decoded);
+            if (bitOffset < 0) {
+                throw new IOException("Compressed file is truncated");
+            }
+            writer.write(buffer, 0, decoded);
+            remaining -= decoded;
+        }
+        return bitOffset - startBit;
+    }
+
+    /**
+     * decompressing the characters [offset, offset + length) of a compressed file and saving them.
+     * 
+     * @param origin the name of the compressed file
+     * @param destination the name of the file where the decompressed characters will be stored
+     * @param offset the position of the first character in the uncompressed file
+     * @param length the number of characters
+     */
+    public static void huffmanDecompressRange(String origin, String destination, long offset, int length) {
+        // assigning variable decompressStartTime to be the current time in ns
+        final long decompressStartTime = System.nanoTime();
+
+        try (FileChannel channel = FileChannel.open(Paths.get("../out/" + origin), StandardOpenOption.READ)) {
+            saveDecompressedToFile(CharBuffer.wrap(decompressRange(channel, offset, length)), destination);
+        }
+        catch (IOException | IllegalArgumentException error) {
+            // printing the stack trace if the range could not be decompressed
+            error.printStackTrace();
+            return;
+        }
+
+        // assigning variable decompressEndTime to be the current time in ns
+        final long decompressEndTime = System.nanoTime();
+
+        // returning the statistics of decompressing the range
+        System.out.println("Range decompressed:");
+        System.out.println("Decompress time: " + (decompressEndTime - decompressStartTime) / 1000 + "us");
+        System.out.println("Location of decompressed range: ../out/" + destination);
+        System.out.println("");
+    }
+
+    /**
+     * decompressing the characters [offset, offset + length) of a compressed file. Only the header,
+     * one checkpoint of the seek index and the encoded bits from that checkpoint to the end of the range
+     * are read, so the time taken depends on the length of the range and not on the size of the file.
+     * Block compressed files are decoded only in the blocks overlapping the range.
+     * 
+     * @param channel the compressed file
+     * @param offset the position of the first character in the uncompressed file
+     * @param length the number of characters
+     * @return the characters of the range
+     */
+    static char[] decompressRange(FileChannel channel, long offset, int length) throws IOException {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Range offset and length must not be negative");
+        }
+        int version = channel.size() > 4 ? readRegion(channel, 4, 1, false).get(0) : -1;
+        if (BlockCompressor.isBlockVersion(version)) {
+            return new BlockCompressor(BlockCompressor.DEFAULT_BLOCK_SIZE, 1).decompressRange(channel, offset, length);
+        }
+        if (version == AdaptiveCompressor.VERSION) {
+            throw new IOException("Adaptive streams have no seek index, decompress them as a whole");
+        }
+        if (version == ContextCompressor.VERSION) {
+            throw new IOException("Files with order-1 contexts have no seek index, decompress them as a whole");
+        }
+        if (version == ByteCompressor.VERSION || version == ByteCompressor.VERSION_STORED) {
+            throw new IOException("Files compressed as raw bytes have no seek index, decompress them as a whole");
+        }
+
+        // mapping the header, only the pages it actually takes up are read
+        ByteBuffer headerData = readRegion(channel, 0, Math.min(channel.size(), HuffmanHeader.MAX_SIZE), true);
+        HuffmanHeader header = HuffmanHeader.read(headerData);
+        if (offset + length > header.symbolCount) {
+            throw new IllegalArgumentException("Range [" + offset + ", " + (offset + length) + ") outside of the " + header.symbolCount + " characters of the file");
+        }
+        if (length == 0) {
+            return new char[0];
+        }
+        long payloadStart = headerData.position();
+        long indexStart = channel.size() - SeekIndex.checkpointCount(header.symbolCount, header.checkpointInterval) * SeekIndex.ENTRY_SIZE;
+
+        // starting from the last checkpoint before the range, or from the first bit without a seek index
+        long startBit = 0;
+        long skip = offset;
+        if (header.checkpointInterval > 0) {
+            long checkpoint = offset / header.checkpointInterval;
+            startBit = SeekIndex.readCheckpoint(channel, indexStart, checkpoint);
+            skip = offset - checkpoint * header.checkpointInterval;
+        }
+        if (skip + length > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Range too large to be decompressed in memory");
+        }
+
+        // reading only the bytes the characters up to the end of the range can take up
+        HuffmanDecoder decoder = header.decoder();
+        char[] decoded = new char[(int) (skip + length)];
+        long startByte = payloadStart + (startBit >>> 3);
+        long regionLength = Math.min(indexStart - startByte, ((long) decoded.length * decoder.maxCodeLength() + 7) / 8 + 1);
+        ByteBuffer region = readRegion(channel, startByte, regionLength, true);
+        if (decoder.decode(region, startBit & 7, regionLength * Byte.SIZE, decoded, 0, decoded.length) < 0) {
+            throw new IOException("Compressed file is truncated");
+        }
+        return Arrays.copyOfRange(decoded, (int) skip, decoded.length);
+    }
+
+    /**
+     * opening a file for reading characters, through memory-mapped windows or through a stream.
+     * 
+     * @param path the file to read
+     * @param mapped true to map the file into memory
+     * @return the reader
+     */
+    static Reader openReader(Path path, boolean mapped) throws IOException {
+        return mapped ? new MappedFileReader(path) : new InputStreamReader(new FileInputStream(path.toFile()), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * creating or replacing a file for writing bytes, through memory-mapped windows or through a stream.
+     * 
+     * @param path the file to write
+     * @param mapped true to map the file into memory
+     * @return the output stream
+     */
+    static OutputStream openOutput(Path path, boolean mapped) throws IOException {
+        return mapped ? new MappedFileOutputStream(path) : new FileOutputStream(path.toFile());
+    }
+
+    /**
+     * reading part of a file, either by mapping it into memory or by copying it onto the heap.
+     * The returned buffer starts at index 0 with the byte at the given position.
+     * 
+     * @param channel the file to read
+     * @param position the position of the first byte
+     * @param length the number of bytes, at most Integer.MAX_VALUE
+     * @param mapped true to map the region into memory
+     * @return the buffer holding the region
+     */
+    static ByteBuffer readRegion(FileChannel channel, long position, long length, boolean mapped) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Region of " + length + " bytes is too large to be read at once, compress the file in blocks instead");
+        }
+        if (mapped) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("File ends before byte " + (position + length));
+            }
+        }
+        buffer.flip();
+        return buffer;
     }
 
     /**
@@ -295,11 +1205,11 @@ class HuffmanCoding{
      * 
      * @param targetFileName the file name of the original file
      */
-    public static void saveDecompressedToFile(StringBuilder toSaveDecompressed, String destination) {
+    public static void saveDecompressedToFile(CharSequence toSaveDecompressed, String destination) {
         // specifying the path of the output file
         File outputDecompressedFile = new File("../out/" + destination);
         try (FileOutputStream outputStream = new FileOutputStream(outputDecompressedFile, false)) {
-            outputStream.write(toSaveDecompressed.toString().getBytes());
+            outputStream.write(toSaveDecompressed.toString().getBytes(StandardCharsets.UTF_8));
         }
         catch (IOException error) {
             // printing the stack trace if an I/O exception has occured
@@ -307,10 +1217,69 @@ class HuffmanCoding{
         }
     }
 
+    /**
+     * running a compression server on the loopback address until the JVM is stopped. Requests are
+     * compressed and decompressed by a pool of workers in this JVM, so no JVM is started per request.
+     * 
+     * @param port the port to listen on
+     * @param workers the number of threads compressing and decompressing payloads
+     */
+    public static void huffmanServe(int port, int workers) {
+        try {
+            CompressionServer server = new CompressionServer(port, workers, CompressionServer.DEFAULT_MAX_IN_FLIGHT);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    server.close();
+                }
+                catch (IOException exception) {
+                    // printing the stack trace if the server could not be stopped cleanly
+                    exception.printStackTrace();
+                }
+                System.out.println("Requests answered: " + server.requestCount());
+            }));
+            server.start();
+            System.out.println("Compression server listening on " + InetAddress.getLoopbackAddress().getHostAddress() + ":" + server.port()
+                    + " with " + workers + " workers, stop it with Ctrl+C");
+        }
+        catch (IOException | IllegalArgumentException exception) {
+            // printing the stack trace if the server could not be started
+            exception.printStackTrace();
+        }
+    }
+
     /**
      * the main method.
      */
     public static void main(String[] args) {
+        // compressing a whole directory without the menu: batch <inputDirectory> <outputDirectory> [concurrency]
+        // or serving compress and decompress requests until stopped: serve [port] [workers]
+        if (args.length > 0) {
+            if (args[0].equals("serve") && args.length <= 3) {
+                try {
+                    int port = args.length > 1 ? Integer.parseInt(args[1]) : CompressionServer.DEFAULT_PORT;
+                    int workers = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+                    huffmanServe(port, workers);
+                }
+                catch (NumberFormatException exception) {
+                    System.out.println("Please enter the port and the number of workers as whole numbers");
+                }
+            }
+            else if (args[0].equals("batch") && (args.length == 3 || args.length == 4)) {
+                try {
+                    int concurrency = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+                    huffmanCompressBatch(args[1], args[2], concurrency);
+                }
+                catch (NumberFormatException exception) {
+                    System.out.println("Please enter the concurrency as a whole number");
+                }
+            }
+            else {
+                System.out.println("Usage: java HuffmanCoding batch <inputDirectory> <outputDirectory> [concurrency]");
+                System.out.println("       java HuffmanCoding serve [port] [workers]");
+            }
+            return;
+        }
+
         // clearing the console 
         System.out.print("\033[H\033[2J");  
         System.out.flush(); 
@@ -323,39 +1292,172 @@ class HuffmanCoding{
         System.out.println("For example, if you want to compress file <tocompress.txt> and store it as <compressed.bin>, enter:");
         System.out.println("compress tocompress.txt compressed.bin");
         System.out.println("");
+        System.out.println("The compress and compress-stream options take the longest code allowed in bits as an optional last field:");
+        System.out.println("compress tocompress.txt compressed.bin [maxCodeLength]");
+        System.out.println("");
+        System.out.println("The compress option also takes the share of its size in percent that coding must save, or the characters are stored as they are:");
+        System.out.println("compress tocompress.txt compressed.bin [maxCodeLength] [minSavingPercent]");
+        System.out.println("");
         System.out.println("Otherwise, if you want to decompress file <compressed.bin> and save it as <decompressed.txt>, enter:");
         System.out.println("decompress compressed.bin tocompress.txt");
         System.out.println("");
+        System.out.println("Files too large to fit in memory can be compressed with the streaming option instead:");
+        System.out.println("compress-stream tocompress.txt compressed.bin");
+        System.out.println("");
+        System.out.println("Large files can be compressed in blocks on several threads, optionally giving the number of threads and the block size in KB:");
+        System.out.println("compress-parallel tocompress.txt compressed.bin [threads] [blockSizeKB]");
+        System.out.println("");
+        System.out.println("To split every block into 4 streams that are decoded side by side, which can decode faster depending on the input, enter:");
+        System.out.println("compress-interleaved tocompress.txt compressed.bin [threads] [blockSizeKB]");
+        System.out.println("");
+        System.out.println("To run the Burrows-Wheeler, move-to-front and zero run transforms on every block first, for repetitive files, enter:");
+        System.out.println("compress-transform tocompress.txt compressed.bin [all|none|bwt,mtf,zero-run] [blockSizeKB]");
+        System.out.println("");
+        System.out.println("To read and write the files through memory mapping, without copying them onto the heap, enter:");
+        System.out.println("compress-mapped tocompress.txt compressed.bin");
+        System.out.println("decompress-mapped compressed.bin tocompress.txt");
+        System.out.println("");
+        System.out.println("To compress in a single pass, rebuilding the code table at least every <chunkKB> K characters, enter:");
+        System.out.println("compress-adaptive tocompress.txt compressed.bin [chunkKB]");
+        System.out.println("");
+        System.out.println("To compress any file, binary ones included, as raw bytes that decompress exactly as they were, enter:");
+        System.out.println("compress-bytes tocompress.bin compressed.bin [minSavingPercent]");
+        System.out.println("");
+        System.out.println("To code every character with a table chosen by the character before it, for smaller text files, enter:");
+        System.out.println("compress-context tocompress.txt compressed.bin");
+        System.out.println("");
+        System.out.println("To add a file to the end of a file compressed in blocks, without compressing the blocks already in it again, enter:");
+        System.out.println("append toappend.txt compressed.bin");
+        System.out.println("");
+        System.out.println("To train a code table shared by many files from sample files, and to compress a file with it, enter:");
+        System.out.println("train-table sample1.txt,sample2.txt");
+        System.out.println("compress-shared tocompress.txt compressed.bin <tableId>");
+        System.out.println("");
+        System.out.println("To decompress only <length> characters starting at character <offset>, enter:");
+        System.out.println("decompress-range compressed.bin range.txt <offset> <length>");
+        System.out.println("");
 
         // initialising a scanner object
         Scanner userInput = new Scanner(System.in);
         String userSelection = userInput.nextLine();
         // splitting the user-inputted object with " "
         String[] userFields = userSelection.split(" ");
-        // checking if the length of the splitted string array is 3 
-        if (userFields.length == 3) {
+        // checking if the length of the splitted string array is 3, or up to 5 with the parallel and range options
+        if (userFields.length == 2 && userFields[0].equals("train-table")) {
+            trainSharedTable(userFields[1].split(","));
+        }
+        else if (userFields.length == 3 || (userFields.length <= 5 && (userFields[0].equals("compress-parallel") || userFields[0].equals("compress-interleaved")))
+                || (userFields.length <= 5 && userFields[0].equals("compress-transform"))
+                || (userFields.length == 5 && userFields[0].equals("decompress-range"))
+                || (userFields.length == 4 && userFields[0].equals("compress-shared"))
+                || (userFields.length == 4 && userFields[0].equals("compress-adaptive"))
+                || (userFields.length == 4 && userFields[0].equals("compress-bytes"))
+                || (userFields.length == 4 && userFields[0].equals("compress-stream"))
+                || (userFields.length <= 5 && userFields[0].equals("compress"))) {
             String option = userFields[0];
             String origin = userFields[1];
             String destination = userFields[2];
-            if (option.equals("compress")) {
-                huffmanCompress(origin, destination);
+            if (option.equals("compress-parallel") || option.equals("compress-interleaved")) {
+                try {
+                    int workers = userFields.length > 3 ? Integer.parseInt(userFields[3]) : Runtime.getRuntime().availableProcessors();
+                    int blockSize = userFields.length > 4 ? Integer.parseInt(userFields[4]) * 1024 : BlockCompressor.DEFAULT_BLOCK_SIZE;
+                    huffmanCompressParallel(origin, destination, workers, blockSize, false, option.equals("compress-interleaved"));
+                }
+                catch (NumberFormatException exception) {
+                    System.out.println("Please enter the number of threads and the block size as whole numbers");
+                }
             }
-            else if (option.equals("decompress")) {
-                try (FileInputStream fis = new FileInputStream("../out/" + origin + ".huffmancode")) {
-                    ObjectInputStream ois = new ObjectInputStream(fis);
-                    @SuppressWarnings("unchecked")
-                    HashMap<Character,String> huffmanCode = (HashMap<Character,String>)ois.readObject();
-                    ois.close();
-                    byte[] bytesToDecompress = Files.readAllBytes(Paths.get("../out/" + origin));
-                    StringBuilder toDecompress = getString(bytesToDecompress);
-                    huffmanDecompress(huffmanCode, toDecompress, destination);
+            else if (option.equals("compress-transform")) {
+                try {
+                    TransformPipeline transforms = TransformPipeline.parse(userFields.length > 3 ? userFields[3] : "all");
+                    int blockSize = userFields.length > 4 ? Integer.parseInt(userFields[4]) * 1024 : BlockCompressor.DEFAULT_BLOCK_SIZE;
+                    huffmanCompressParallel(origin, destination, Runtime.getRuntime().availableProcessors(), blockSize, false, false, transforms);
+                }
+                catch (NumberFormatException exception) {
+                    System.out.println("Please enter the block size as a whole number");
+                }
+                catch (IllegalArgumentException exception) {
+                    System.out.println(exception.getMessage());
+                }
+            }
+            else if (option.equals("compress-adaptive")) {
+                try {
+                    int chunkSize = userFields.length > 3 ? Integer.parseInt(userFields[3]) * 1024 : AdaptiveCompressor.DEFAULT_CHUNK_SIZE;
+                    huffmanCompressAdaptive(origin, destination, chunkSize);
                 }
-                catch (Exception e) {
-                    e.printStackTrace();
+                catch (NumberFormatException exception) {
+                    System.out.println("Please enter the chunk size as a whole number");
                 }
             }
+            else if (option.equals("compress-shared")) {
+                try {
+                    huffmanCompressShared(origin, destination, Integer.parseUnsignedInt(userFields[3], 16));
+                }
+                catch (NumberFormatException exception) {
+                    System.out.println("Please enter the table id as printed by train-table");
+                }
+            }
+            else if (option.equals("decompress-range")) {
+                try {
+                    huffmanDecompressRange(origin, destination, Long.parseLong(userFields[3]), Integer.parseInt(userFields[4]));
+                }
+                catch (NumberFormatException exception) {
+                    System.out.println("Please enter the offset and the length as whole numbers");
+                }
+            }
+            else if (option.equals("compress") || option.equals("compress-stream")) {
+                try {
+                    int maxCodeLength = userFields.length > 3 ? Integer.parseInt(userFields[3]) : HuffmanDecoder.MAX_CODE_LENGTH;
+                    if (option.equals("compress")) {
+                        double minSaving = userFields.length > 4 ? Double.parseDouble(userFields[4]) / 100 : BlockCompressor.DEFAULT_MIN_SAVING;
+                        if (!(minSaving >= 0 && minSaving <= 1)) {
+                            throw new IllegalArgumentException("Minimum saving must be between 0 and 100 percent");
+                        }
+                        huffmanCompress(origin, destination, maxCodeLength, minSaving);
+                    }
+                    else {
+                        huffmanCompressStream(origin, destination, false, maxCodeLength);
+                    }
+                }
+                catch (NumberFormatException exception) {
+                    System.out.println("Please enter the longest code length as a whole number and the minimum saving as a percentage");
+                }
+                catch (IllegalArgumentException exception) {
+                    System.out.println(exception.getMessage());
+                }
+            }
+            else if (option.equals("compress-bytes")) {
+                try {
+                    double minSaving = userFields.length > 3 ? Double.parseDouble(userFields[3]) / 100 : BlockCompressor.DEFAULT_MIN_SAVING;
+                    if (!(minSaving >= 0 && minSaving <= 1)) {
+                        throw new IllegalArgumentException("Minimum saving must be between 0 and 100 percent");
+                    }
+                    huffmanCompressBytes(origin, destination, minSaving);
+                }
+                catch (NumberFormatException exception) {
+                    System.out.println("Please enter the minimum saving as a percentage");
+                }
+                catch (IllegalArgumentException exception) {
+                    System.out.println(exception.getMessage());
+                }
+            }
+            else if (option.equals("append")) {
+                huffmanAppend(origin, destination);
+            }
+            else if (option.equals("compress-context")) {
+                huffmanCompressContext(origin, destination);
+            }
+            else if (option.equals("compress-mapped")) {
+                huffmanCompressStream(origin, destination, true);
+            }
+            else if (option.equals("decompress")) {
+                huffmanDecompress(origin, destination);
+            }
+            else if (option.equals("decompress-mapped")) {
+                huffmanDecompress(origin, destination, true);
+            }
             else {
-                System.out.println("Please enter a valid option (compress/ decompress)");
+                System.out.println("Please enter a valid option (compress/ compress-stream/ compress-parallel/ compress-interleaved/ compress-transform/ compress-mapped/ compress-shared/ compress-adaptive/ compress-context/ compress-bytes/ append/ decompress/ decompress-mapped/ decompress-range)");
             }
         }
         else {
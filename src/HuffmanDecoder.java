@@ -0,0 +1,469 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+//Table driven Huffman decoder
+class HuffmanDecoder {
+    // number of bits resolved by the primary table and by each secondary table
+    static final int PRIMARY_BITS = 11;
+    static final int SECONDARY_BITS = 8;
+    // longest code the 64-bit bit buffer can always hold after a refill
+    static final int MAX_CODE_LENGTH = 57;
+
+    // marks a table entry that points to a secondary table instead of holding a symbol
+    private static final int LINK = 0x80000000;
+
+    /*
+     * every entry of table is either
+     *   a symbol:  (symbol << 8) | number of bits of the code resolved in this table (0 for an unused entry)
+     *   a link:    LINK | (offset of the secondary table << 4) | width of the secondary table in bits
+     * the primary table starts at offset 0 and the secondary tables follow it.
+     */
+    private int[] table;
+    private int tableSize;
+    private final int primaryBits;
+    private final int maxLength;
+
+    /**
+     * constructor for building the decoding tables from a code table.
+     *
+     * @param codeTable the codes of the characters
+     */
+    HuffmanDecoder(CodeTable codeTable) {
+        this(codeTable.symbols(), codeTable.codes, codeTable.lengths);
+    }
+
+    /**
+     * constructor for building the decoding tables from codes stored as integers.
+     *
+     * @param symbols the symbols that have a code
+     * @param codes the code of every symbol, aligned to the right and indexed by symbol
+     * @param lengths the number of bits in the code of every symbol, indexed by symbol
+     */
+    HuffmanDecoder(int[] symbols, long[] codes, int[] lengths) {
+        int maxLength = 0;
+        for (int symbol : symbols) {
+            maxLength = Math.max(maxLength, lengths[symbol]);
+        }
+        this.maxLength = maxLength;
+        if (maxLength > MAX_CODE_LENGTH) {
+            throw new IllegalArgumentException("Huffman code longer than " + MAX_CODE_LENGTH + " bits");
+        }
+
+        // sorting the symbols by their codes, so that codes sharing a prefix are next to each other: every
+        // code aligned to the left of maxLength bits is packed above the index of its symbol, keeping as many
+        // of its leading bits as fit next to the index, as CodeLengths.sortByCount packs counts
+        int n = symbols.length;
+        int indexBits = Integer.SIZE - Integer.numberOfLeadingZeros(Math.max(1, n - 1));
+        int keyBits = Math.min(maxLength, Long.SIZE - 1 - indexBits);
+        long[] sorted = new long[n];
+        for (int i = 0; i < n; i++) {
+            long aligned = codes[symbols[i]] << (maxLength - lengths[symbols[i]]);
+            sorted[i] = (aligned >>> (maxLength - keyBits)) << indexBits | i;
+        }
+        Arrays.sort(sorted);
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = symbols[(int) (sorted[i] & ((1L << indexBits) - 1))];
+        }
+        // codes longer than the packed bits may share them, only those are still out of order
+        if (keyBits < maxLength) {
+            for (int i = 1; i < n; i++) {
+                int symbol = order[i];
+                long aligned = codes[symbol] << (maxLength - lengths[symbol]);
+                int j = i;
+                while (j > 0 && codes[order[j - 1]] << (maxLength - lengths[order[j - 1]]) > aligned) {
+                    order[j] = order[j - 1];
+                    j--;
+                }
+                order[j] = symbol;
+            }
+        }
+
+        primaryBits = Math.max(1, Math.min(PRIMARY_BITS, maxLength));
+        table = new int[1 << primaryBits];
+        tableSize = 0;
+        buildTable(codes, lengths, order, 0, order.length, 0, primaryBits);
+    }
+
+    /**
+     * filling a table for all codes in order[from, to) that share their first prefixLength bits.
+     *
+     * @return the offset of the new table
+     */
+    private int buildTable(long[] codes, int[] lengths, int[] order, int from, int to, int prefixLength, int tableBits) {
+        // reserving space for the table
+        int offset = tableSize;
+        tableSize += 1 << tableBits;
+        if (tableSize > table.length) {
+            table = Arrays.copyOf(table, Math.max(tableSize, table.length * 2));
+        }
+
+        int i = from;
+        while (i < to) {
+            int remaining = lengths[order[i]] - prefixLength;
+            long code = codes[order[i]];
+            if (remaining <= tableBits) {
+                // the rest of the code fits, so every index starting with it resolves to the symbol
+                int index = (int) (code & ((1L << remaining) - 1)) << (tableBits - remaining);
+                int entry = (order[i] << 8) | remaining;
+                Arrays.fill(table, offset + index, offset + index + (1 << (tableBits - remaining)), entry);
+                i++;
+            }
+            else {
+                // grouping the longer codes that share the next tableBits bits into a secondary table
+                int index = (int) ((code >>> (remaining - tableBits)) & ((1 << tableBits) - 1));
+                int maxRemaining = remaining;
+                int j = i + 1;
+                while (j < to) {
+                    int nextRemaining = lengths[order[j]] - prefixLength;
+                    if (nextRemaining <= tableBits
+                            || ((codes[order[j]] >>> (nextRemaining - tableBits)) & ((1 << tableBits) - 1)) != index) {
+                        break;
+                    }
+                    maxRemaining = Math.max(maxRemaining, nextRemaining);
+                    j++;
+                }
+                int subBits = Math.min(maxRemaining - tableBits, SECONDARY_BITS);
+                int subOffset = buildTable(codes, lengths, order, i, j, prefixLength + tableBits, subBits);
+                table[offset + index] = LINK | (subOffset << 4) | subBits;
+                i = j;
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * decoding count symbols from a packed bit string into output.
+     *
+     * @param data the packed bits, the first bit is the highest bit of data.get(0)
+     * @param bitOffset the position in data of the first bit to decode
+     * @param bitLimit the position in data after the last valid bit
+     * @param output the array receiving the decoded symbols
+     * @param outputOffset the index in output of the first decoded symbol
+     * @param count the number of symbols to decode
+     * @return the position after the last decoded bit, or -1 if the bits ran out or held an unused code
+     */
+    long decode(ByteBuffer data, long bitOffset, long bitLimit, char[] output, int outputOffset, int count) {
+        final int[] table = this.table;
+        final int end = (int) Math.min(data.limit(), (bitLimit + 7) >>> 3);
+        int position = (int) (bitOffset >>> 3);
+        long bitsLeft = bitLimit - bitOffset;
+        long buffer = 0;
+        // the bits of the first byte before bitOffset are loaded but not counted
+        int bufferBits = -(int) (bitOffset & 7);
+
+        for (int decoded = 0; decoded < count; decoded++) {
+            // refilling the bit buffer, reading zeros past the end of the data
+            while (bufferBits <= 56) {
+                buffer = (buffer << 8) | (position < end ? data.get(position++) & 0xFF : 0);
+                bufferBits += 8;
+            }
+
+            // looking up the next bits in the primary table, following links into secondary tables
+            int tableBits = primaryBits;
+            int entry = table[(int) (buffer >>> (bufferBits - tableBits)) & ((1 << tableBits) - 1)];
+            int consumed = 0;
+            while (entry < 0) {
+                consumed += tableBits;
+                int base = (entry >>> 4) & 0x7FFFFFF;
+                tableBits = entry & 0xF;
+                entry = table[base + ((int) (buffer >>> (bufferBits - consumed - tableBits)) & ((1 << tableBits) - 1))];
+            }
+
+            // stopping at an unused entry or at a code running past the last valid bit
+            int length = consumed + (entry & 0xFF);
+            if ((entry & 0xFF) == 0 || length > bitsLeft) {
+                return -1;
+            }
+            bufferBits -= length;
+            bitsLeft -= length;
+            output[outputOffset + decoded] = (char) (entry >>> 8);
+        }
+        return bitLimit - bitsLeft;
+    }
+
+    /**
+     * decoding count byte symbols from a packed bit string into output. Codes no longer than the
+     * primary table, as ByteCompressor writes them, never follow a link.
+     *
+     * @param data the packed bits, the first bit is the highest bit of data.get(0)
+     * @param bitOffset the position in data of the first bit to decode
+     * @param bitLimit the position in data after the last valid bit
+     * @param output the array receiving the decoded bytes
+     * @param outputOffset the index in output of the first decoded byte
+     * @param count the number of bytes to decode
+     * @return the position after the last decoded bit, or -1 if the bits ran out or held an unused code
+     */
+    long decodeBytes(ByteBuffer data, long bitOffset, long bitLimit, byte[] output, int outputOffset, int count) {
+        final int[] table = this.table;
+        final int primaryBits = this.primaryBits;
+        final int mask = (1 << primaryBits) - 1;
+        final int end = (int) Math.min(data.limit(), (bitLimit + 7) >>> 3);
+        int position = (int) (bitOffset >>> 3);
+        long bitsLeft = bitLimit - bitOffset;
+        long buffer = 0;
+        // the bits of the first byte before bitOffset are loaded but not counted
+        int bufferBits = -(int) (bitOffset & 7);
+
+        for (int decoded = 0; decoded < count; decoded++) {
+            // refilling the bit buffer, reading zeros past the end of the data
+            while (bufferBits <= 56) {
+                buffer = (buffer << 8) | (position < end ? data.get(position++) & 0xFF : 0);
+                bufferBits += 8;
+            }
+
+            int entry = table[(int) (buffer >>> (bufferBits - primaryBits)) & mask];
+            if (entry < 0) {
+                entry = resolve(entry, buffer, bufferBits);
+            }
+            int length = entry & 0xFF;
+
+            // stopping at an unused entry or at a code running past the last valid bit
+            if (length == 0 || length > bitsLeft) {
+                return -1;
+            }
+            bufferBits -= length;
+            bitsLeft -= length;
+            output[outputOffset + decoded] = (byte) (entry >>> 8);
+        }
+        return bitLimit - bitsLeft;
+    }
+
+    /**
+     * decoding count symbols coded with one table per context, the context of every symbol being
+     * given by the symbol before it. The decoders hold indices into an alphabet, which are turned into
+     * characters on output.
+     *
+     * @param data the packed bits, the first bit is the highest bit of data.get(0)
+     * @param bitOffset the position in data of the first bit to decode
+     * @param bitLimit the position in data after the last valid bit
+     * @param decoders the decoder of every context, context 0 decodes the first symbol
+     * @param contexts the context following every symbol, indexed by symbol
+     * @param alphabet the character of every symbol
+     * @param output the array receiving the decoded characters, from index 0
+     * @param count the number of symbols to decode
+     * @return the position after the last decoded bit, or -1 if the bits ran out or held an unused code
+     */
+    static long decodeContexts(ByteBuffer data, long bitOffset, long bitLimit, HuffmanDecoder[] decoders, int[] contexts,
+            char[] alphabet, char[] output, int count) {
+        final int end = (int) Math.min(data.limit(), (bitLimit + 7) >>> 3);
+        int position = (int) (bitOffset >>> 3);
+        long bitsLeft = bitLimit - bitOffset;
+        long buffer = 0;
+        // the bits of the first byte before bitOffset are loaded but not counted
+        int bufferBits = -(int) (bitOffset & 7);
+        HuffmanDecoder decoder = decoders[0];
+
+        for (int decoded = 0; decoded < count; decoded++) {
+            // refilling the bit buffer, reading zeros past the end of the data
+            while (bufferBits <= 56) {
+                buffer = (buffer << 8) | (position < end ? data.get(position++) & 0xFF : 0);
+                bufferBits += 8;
+            }
+
+            // looking up the next bits in the tables of the current context
+            int entry = decoder.table[(int) (buffer >>> (bufferBits - decoder.primaryBits)) & ((1 << decoder.primaryBits) - 1)];
+            if (entry < 0) {
+                entry = decoder.resolve(entry, buffer, bufferBits);
+            }
+            int length = entry & 0xFF;
+
+            // stopping at an unused entry or at a code running past the last valid bit
+            if (length == 0 || length > bitsLeft) {
+                return -1;
+            }
+            bufferBits -= length;
+            bitsLeft -= length;
+            int symbol = entry >>> 8;
+            output[decoded] = alphabet[symbol];
+            decoder = decoders[contexts[symbol]];
+        }
+        return bitLimit - bitsLeft;
+    }
+
+    /**
+     * decoding 4 streams side by side into consecutive segments of output. Every stream has its own
+     * bit buffer and cursor, and each turn of the loop decodes one symbol from each of them, so the
+     * table lookups of different streams do not wait on each other.
+     *
+     * @param data the packed bits of all streams
+     * @param bitOffsets the position in data of the first bit of every stream
+     * @param bitLimits the position in data after the last valid bit of every stream
+     * @param output the array receiving the decoded symbols, one segment after the other from index 0
+     * @param counts the number of symbols in every segment, none larger than the one before it
+     * @return false if a stream ran out of bits or held an unused code
+     */
+    boolean decodeStreams(ByteBuffer data, long[] bitOffsets, long[] bitLimits, char[] output, int[] counts) {
+        final int[] table = this.table;
+        final int primaryBits = this.primaryBits;
+        final int mask = (1 << primaryBits) - 1;
+        // a stream may refill from the bytes of the next one, its bit count is checked after the loop
+        final int end = data.limit();
+        // last position a whole 64-bit word can be read from
+        final int wordEnd = end - Long.BYTES;
+
+        int position0 = (int) (bitOffsets[0] >>> 3);
+        int position1 = (int) (bitOffsets[1] >>> 3);
+        int position2 = (int) (bitOffsets[2] >>> 3);
+        int position3 = (int) (bitOffsets[3] >>> 3);
+        int bufferBits0 = -(int) (bitOffsets[0] & 7);
+        int bufferBits1 = -(int) (bitOffsets[1] & 7);
+        int bufferBits2 = -(int) (bitOffsets[2] & 7);
+        int bufferBits3 = -(int) (bitOffsets[3] & 7);
+        long buffer0 = 0;
+        long buffer1 = 0;
+        long buffer2 = 0;
+        long buffer3 = 0;
+        long used0 = 0;
+        long used1 = 0;
+        long used2 = 0;
+        long used3 = 0;
+        int output0 = 0;
+        int output1 = counts[0];
+        int output2 = output1 + counts[1];
+        int output3 = output2 + counts[2];
+
+        for (int i = 0; i < counts[3]; i++) {
+            if (bufferBits0 <= 56) {
+                int bytes = (64 - bufferBits0) >>> 3;
+                if (position0 <= wordEnd) {
+                    long word = data.getLong(position0);
+                    buffer0 = bytes == 8 ? word : (buffer0 << (bytes << 3)) | (word >>> (64 - (bytes << 3)));
+                    position0 += bytes;
+                    bufferBits0 += bytes << 3;
+                }
+                else {
+                    for (; bytes > 0; bytes--) {
+                        buffer0 = (buffer0 << 8) | (position0 < end ? data.get(position0++) & 0xFF : 0);
+                        bufferBits0 += 8;
+                    }
+                }
+            }
+            if (bufferBits1 <= 56) {
+                int bytes = (64 - bufferBits1) >>> 3;
+                if (position1 <= wordEnd) {
+                    long word = data.getLong(position1);
+                    buffer1 = bytes == 8 ? word : (buffer1 << (bytes << 3)) | (word >>> (64 - (bytes << 3)));
+                    position1 += bytes;
+                    bufferBits1 += bytes << 3;
+                }
+                else {
+                    for (; bytes > 0; bytes--) {
+                        buffer1 = (buffer1 << 8) | (position1 < end ? data.get(position1++) & 0xFF : 0);
+                        bufferBits1 += 8;
+                    }
+                }
+            }
+            if (bufferBits2 <= 56) {
+                int bytes = (64 - bufferBits2) >>> 3;
+                if (position2 <= wordEnd) {
+                    long word = data.getLong(position2);
+                    buffer2 = bytes == 8 ? word : (buffer2 << (bytes << 3)) | (word >>> (64 - (bytes << 3)));
+                    position2 += bytes;
+                    bufferBits2 += bytes << 3;
+                }
+                else {
+                    for (; bytes > 0; bytes--) {
+                        buffer2 = (buffer2 << 8) | (position2 < end ? data.get(position2++) & 0xFF : 0);
+                        bufferBits2 += 8;
+                    }
+                }
+            }
+            if (bufferBits3 <= 56) {
+                int bytes = (64 - bufferBits3) >>> 3;
+                if (position3 <= wordEnd) {
+                    long word = data.getLong(position3);
+                    buffer3 = bytes == 8 ? word : (buffer3 << (bytes << 3)) | (word >>> (64 - (bytes << 3)));
+                    position3 += bytes;
+                    bufferBits3 += bytes << 3;
+                }
+                else {
+                    for (; bytes > 0; bytes--) {
+                        buffer3 = (buffer3 << 8) | (position3 < end ? data.get(position3++) & 0xFF : 0);
+                        bufferBits3 += 8;
+                    }
+                }
+            }
+
+            int entry0 = table[(int) (buffer0 >>> (bufferBits0 - primaryBits)) & mask];
+            int entry1 = table[(int) (buffer1 >>> (bufferBits1 - primaryBits)) & mask];
+            int entry2 = table[(int) (buffer2 >>> (bufferBits2 - primaryBits)) & mask];
+            int entry3 = table[(int) (buffer3 >>> (bufferBits3 - primaryBits)) & mask];
+            if (entry0 < 0) {
+                entry0 = resolve(entry0, buffer0, bufferBits0);
+            }
+            if (entry1 < 0) {
+                entry1 = resolve(entry1, buffer1, bufferBits1);
+            }
+            if (entry2 < 0) {
+                entry2 = resolve(entry2, buffer2, bufferBits2);
+            }
+            if (entry3 < 0) {
+                entry3 = resolve(entry3, buffer3, bufferBits3);
+            }
+
+            int length0 = entry0 & 0xFF;
+            int length1 = entry1 & 0xFF;
+            int length2 = entry2 & 0xFF;
+            int length3 = entry3 & 0xFF;
+            if (length0 == 0 || length1 == 0 || length2 == 0 || length3 == 0) {
+                return false;
+            }
+            bufferBits0 -= length0;
+            bufferBits1 -= length1;
+            bufferBits2 -= length2;
+            bufferBits3 -= length3;
+            used0 += length0;
+            used1 += length1;
+            used2 += length2;
+            used3 += length3;
+            output[output0++] = (char) (entry0 >>> 8);
+            output[output1++] = (char) (entry1 >>> 8);
+            output[output2++] = (char) (entry2 >>> 8);
+            output[output3++] = (char) (entry3 >>> 8);
+        }
+
+        // checking that no stream used bits beyond its own
+        if (bitOffsets[0] + used0 > bitLimits[0] || bitOffsets[1] + used1 > bitLimits[1]
+                || bitOffsets[2] + used2 > bitLimits[2] || bitOffsets[3] + used3 > bitLimits[3]) {
+            return false;
+        }
+
+        // finishing the segments longer than the last one, one stream at a time
+        long[] used = {used0, used1, used2};
+        int[] outputOffsets = {output0, output1, output2};
+        for (int stream = 0; stream < used.length; stream++) {
+            int remaining = counts[stream] - counts[3];
+            if (remaining > 0 && decode(data, bitOffsets[stream] + used[stream], bitLimits[stream], output, outputOffsets[stream], remaining) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * following the links of a primary table entry into the secondary tables.
+     *
+     * @return (symbol << 8) | length of the whole code, or 0 for an unused code
+     */
+    private int resolve(int entry, long buffer, int bufferBits) {
+        int tableBits = primaryBits;
+        int consumed = 0;
+        while (entry < 0) {
+            consumed += tableBits;
+            int base = (entry >>> 4) & 0x7FFFFFF;
+            tableBits = entry & 0xF;
+            entry = table[base + ((int) (buffer >>> (bufferBits - consumed - tableBits)) & ((1 << tableBits) - 1))];
+        }
+        return (entry & 0xFF) == 0 ? 0 : (entry & ~0xFF) | (consumed + (entry & 0xFF));
+    }
+
+    /**
+     * returning the length of the longest code, the most bits a single symbol can take.
+     *
+     * @return the length of the longest code
+     */
+    int maxCodeLength() {
+        return maxLength;
+    }
+}
@@ -0,0 +1,227 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/*
+ * Header at the start of every compressed file:
+ *   magic        4 bytes  "HUFF"
+ *   version      1 byte   3, 5 for files using a shared table, or 1 for files written without a seek index
+ *   symbolCount  8 bytes  number of characters encoded
+ *   interval     4 bytes  number of characters between two checkpoints of the seek index, not in version 1
+ *   version 5:
+ *     tableId    4 bytes  id of the shared table in SharedTables, in place of the code lengths
+ *     checksum   8 bytes  checksum of the lengths of the shared table, checked when it is loaded
+ *   codeCount    varint   number of characters that have a code
+ *   codeCount times:
+ *     gap        varint   character minus the previous character with a code, character plus one for the first
+ *     length     1 byte   code length in bits
+ * The encoded bits follow the header, padded to a whole byte, followed by the seek index described in
+ * SeekIndex. The codes are canonical, so only their lengths are stored.
+ */
+class HuffmanHeader {
+    static final int MAGIC = 0x48554646;
+    static final int VERSION = 3;
+    static final int VERSION_WITHOUT_INDEX = 1;
+    static final int VERSION_SHARED_TABLE = 5;
+    // largest possible header, with a code for every character and the longest gaps
+    static final int MAX_SIZE = 17 + 5 + CodeTable.ALPHABET_SIZE * 4;
+
+    final long symbolCount;
+    final int checkpointInterval;
+    final CodeTable codeTable;
+    // id of the shared table the characters were encoded with, 0 if the header holds the code lengths
+    final int tableId;
+
+    /**
+     * constructor for initialising a header.
+     *
+     * @param symbolCount the number of characters encoded
+     * @param checkpointInterval the number of characters between two checkpoints of the seek index
+     * @param codeTable the canonical codes used for encoding
+     */
+    HuffmanHeader(long symbolCount, int checkpointInterval, CodeTable codeTable) {
+        this(symbolCount, checkpointInterval, codeTable, 0);
+    }
+
+    /**
+     * constructor for initialising a header that refers to a shared table.
+     *
+     * @param symbolCount the number of characters encoded
+     * @param checkpointInterval the number of characters between two checkpoints of the seek index
+     * @param codeTable the canonical codes used for encoding
+     * @param tableId the id of the shared table holding codeTable, or 0 to store the code lengths
+     */
+    HuffmanHeader(long symbolCount, int checkpointInterval, CodeTable codeTable, int tableId) {
+        this.symbolCount = symbolCount;
+        this.checkpointInterval = checkpointInterval;
+        this.codeTable = codeTable;
+        this.tableId = tableId;
+    }
+
+    /**
+     * writing the header to a stream with a single write.
+     *
+     * @param output the stream to write to
+     */
+    void write(OutputStream output) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeInt(MAGIC);
+        data.writeByte(tableId != 0 ? VERSION_SHARED_TABLE : VERSION);
+        data.writeLong(symbolCount);
+        data.writeInt(checkpointInterval);
+        if (tableId != 0) {
+            data.writeInt(tableId);
+            data.writeLong(SharedTables.get(tableId).checksum);
+        }
+        else {
+            writeCodeLengths(data, codeTable);
+        }
+        data.flush();
+        bytes.writeTo(output);
+    }
+
+    /**
+     * returning the decoder for the codes of the header, the cached one for a shared table.
+     *
+     * @return the decoder
+     */
+    HuffmanDecoder decoder() throws IOException {
+        return tableId != 0 ? SharedTables.get(tableId).decoder : new HuffmanDecoder(codeTable);
+    }
+
+    /**
+     * writing the code lengths of a code table as codeCount followed by (gap, length) pairs.
+     *
+     * @param output the stream to write to
+     * @param codeTable the canonical codes
+     */
+    static void writeCodeLengths(DataOutputStream output, CodeTable codeTable) throws IOException {
+        int[] symbols = codeTable.symbols();
+        writeVarInt(output, symbols.length);
+        int previous = -1;
+        for (int symbol : symbols) {
+            writeVarInt(output, symbol - previous);
+            output.writeByte(codeTable.lengths[symbol]);
+            previous = symbol;
+        }
+    }
+
+    /**
+     * reading a header and rebuilding the canonical codes from the stored lengths.
+     *
+     * @param input the buffer positioned at the start of the header, left positioned after it
+     * @return the header
+     */
+    static HuffmanHeader read(ByteBuffer input) throws IOException {
+        try {
+            if (input.getInt() != MAGIC) {
+                throw new IOException("Not a Huffman compressed file");
+            }
+            int version = input.get() & 0xFF;
+            if (version != VERSION && version != VERSION_SHARED_TABLE && version != VERSION_WITHOUT_INDEX) {
+                throw new IOException("Unsupported Huffman file version " + version);
+            }
+            long symbolCount = input.getLong();
+            int checkpointInterval = version != VERSION_WITHOUT_INDEX ? input.getInt() : 0;
+            if (symbolCount < 0 || checkpointInterval < 0) {
+                throw new IOException("Corrupt Huffman header");
+            }
+
+            // a shared table is looked up by its id instead of being parsed, and checked against the stored checksum
+            if (version == VERSION_SHARED_TABLE) {
+                int tableId = input.getInt();
+                long checksum = input.getLong();
+                return new HuffmanHeader(symbolCount, checkpointInterval, SharedTables.get(tableId, checksum).codeTable, tableId);
+            }
+            return new HuffmanHeader(symbolCount, checkpointInterval, readCodeLengths(input));
+        }
+        catch (BufferUnderflowException exception) {
+            throw new IOException("Truncated Huffman header");
+        }
+    }
+
+    /**
+     * reading code lengths written by writeCodeLengths and rebuilding the canonical codes.
+     *
+     * @param input the buffer positioned at the code lengths, left positioned after them
+     * @return the code table
+     */
+    static CodeTable readCodeLengths(ByteBuffer input) throws IOException {
+        return readCodeLengths(input, CodeTable.ALPHABET_SIZE);
+    }
+
+    /**
+     * reading code lengths written by writeCodeLengths for a table of alphabetSize symbols.
+     *
+     * @param input the buffer positioned at the code lengths, left positioned after them
+     * @param alphabetSize the number of symbols of the table
+     * @return the code table
+     */
+    static CodeTable readCodeLengths(ByteBuffer input, int alphabetSize) throws IOException {
+        try {
+            int codeCount = readVarInt(input);
+            if (codeCount < 0 || codeCount > alphabetSize) {
+                throw new IOException("Corrupt Huffman code table");
+            }
+            // reading the symbols in increasing order, then sizing the table to the last of them
+            int[] symbols = new int[codeCount];
+            int[] lengths = new int[codeCount];
+            int symbol = -1;
+            for (int i = 0; i < codeCount; i++) {
+                int gap = readVarInt(input);
+                symbol += gap;
+                lengths[i] = input.get() & 0xFF;
+                if (gap <= 0 || symbol >= alphabetSize || lengths[i] == 0 || lengths[i] > HuffmanDecoder.MAX_CODE_LENGTH) {
+                    throw new IOException("Corrupt Huffman code table");
+                }
+                symbols[i] = symbol;
+            }
+            CodeTable codeTable = new CodeTable(symbol + 1);
+            for (int i = 0; i < codeCount; i++) {
+                codeTable.lengths[symbols[i]] = lengths[i];
+            }
+            codeTable.assignCanonicalCodes(symbols);
+            return codeTable;
+        }
+        catch (BufferUnderflowException exception) {
+            throw new IOException("Truncated Huffman code table");
+        }
+    }
+
+    static void writeVarInt(DataOutputStream output, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            output.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte(value);
+    }
+
+    static int readVarInt(ByteBuffer input) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < Integer.SIZE; shift += 7) {
+            int b = input.get() & 0xFF;
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt variable length integer");
+    }
+
+    static int readVarInt(DataInputStream input) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < Integer.SIZE; shift += 7) {
+            int b = input.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt variable length integer");
+    }
+}
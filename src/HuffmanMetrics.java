@@ -0,0 +1,300 @@
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+//Metrics of compressing or decompressing one file: the time of every phase in nanoseconds, the bytes read
+//and written, and how close the codes come to the entropy of the characters. Every phase and every run
+//is also committed as a JFR event, so a recording of a production run holds the same figures.
+class HuffmanMetrics {
+    //Phases of the pipeline, in the order they run
+    enum Phase { READ, COUNT, BUILD, ENCODE, DECODE, WRITE }
+
+    final String operation;
+    final String file;
+    private final long[] phaseTimes = new long[Phase.values().length];
+    private final long startTime;
+    private long totalTime = 0;
+    private Phase current = null;
+    private long phaseStart = 0;
+    private PhaseEvent phaseEvent = null;
+    private final RunEvent runEvent = new RunEvent();
+
+    // sizes, set by the code being measured
+    long bytesIn = 0;
+    long bytesOut = 0;
+    long symbolCount = 0;
+    // number of bits of the encoded characters, without the header, the padding and the seek index
+    long encodedBits = 0;
+    // size of the header holding the code table, and the number of characters with a code
+    long headerBytes = 0;
+    int codeCount = 0;
+    // Shannon entropy of the characters in bits per character, NaN when the counts are not known
+    double entropy = Double.NaN;
+
+    /**
+     * constructor for initialising the metrics of one run, starting its clock.
+     *
+     * @param operation "compress", "append" or "decompress"
+     * @param file the name of the file read
+     */
+    HuffmanMetrics(String operation, String file) {
+        this.operation = operation;
+        this.file = file;
+        runEvent.begin();
+        // starting the clock only now, the first event loads the JFR classes
+        startTime = System.nanoTime();
+    }
+
+    /**
+     * ending the current phase, if any, and starting the next one.
+     *
+     * @param phase the phase starting now
+     */
+    void begin(Phase phase) {
+        end();
+        current = phase;
+        phaseStart = System.nanoTime();
+        phaseEvent = new PhaseEvent();
+        phaseEvent.begin();
+    }
+
+    /**
+     * ending the current phase, adding its time and committing its event.
+     */
+    void end() {
+        if (current == null) {
+            return;
+        }
+        phaseTimes[current.ordinal()] += System.nanoTime() - phaseStart;
+        if (phaseEvent.shouldCommit()) {
+            phaseEvent.operation = operation;
+            phaseEvent.file = file;
+            phaseEvent.phase = current.name().toLowerCase();
+            phaseEvent.commit();
+        }
+        current = null;
+    }
+
+    /**
+     * ending the run: stopping its clock and committing its event.
+     */
+    void finish() {
+        end();
+        totalTime = System.nanoTime() - startTime;
+        if (runEvent.shouldCommit()) {
+            runEvent.operation = operation;
+            runEvent.file = file;
+            runEvent.bytesIn = bytesIn;
+            runEvent.bytesOut = bytesOut;
+            runEvent.symbolCount = symbolCount;
+            runEvent.headerBytes = headerBytes;
+            runEvent.codeCount = codeCount;
+            runEvent.entropy = entropy;
+            runEvent.bitsPerSymbol = bitsPerSymbol();
+            runEvent.throughput = throughput();
+            runEvent.commit();
+        }
+    }
+
+    long phaseTime(Phase phase) {
+        return phaseTimes[phase.ordinal()];
+    }
+
+    long totalTime() {
+        return totalTime;
+    }
+
+    /**
+     * returning the number of uncompressed megabytes handled per second, the input when compressing
+     * and the output when decompressing.
+     *
+     * @return the throughput in MB/s
+     */
+    double throughput() {
+        long uncompressed = operation.equals("decompress") ? bytesOut : bytesIn;
+        return totalTime == 0 ? 0 : uncompressed / (1024.0 * 1024) / (totalTime / 1e9);
+    }
+
+    double bitsPerSymbol() {
+        return symbolCount == 0 ? 0 : (double) encodedBits / symbolCount;
+    }
+
+    double compressionRate() {
+        return bytesIn == 0 ? 0 : (double) (bytesIn - bytesOut) / bytesIn * 100;
+    }
+
+    /**
+     * printing the time of every phase that ran, the throughput and, for a compression, the bits per
+     * character against the entropy.
+     *
+     * @param out the stream to print to
+     */
+    void print(PrintStream out) {
+        StringBuilder phases = new StringBuilder();
+        for (Phase phase : Phase.values()) {
+            if (phaseTimes[phase.ordinal()] > 0) {
+                phases.append(phases.length() == 0 ? "" : ", ").append(phase.name().toLowerCase()).append(' ')
+                        .append(phaseTimes[phase.ordinal()] / 1000).append("us");
+            }
+        }
+        out.println("Phase times: " + phases);
+        out.println("Throughput: " + throughput() + " MB/s");
+        if (!Double.isNaN(entropy)) {
+            out.println("Bits per character: " + bitsPerSymbol() + " (entropy " + entropy + ")");
+            out.println("Header size: " + headerBytes + " bytes for " + codeCount + " codes");
+        }
+    }
+
+    /**
+     * returning the Shannon entropy of characters, the fewest bits per character any code assigning
+     * a fixed code to every character can reach.
+     *
+     * @param counts the count of every character, indexed by character
+     * @return the entropy in bits per character
+     */
+    static double entropy(long[] counts) {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        double entropy = 0;
+        for (long count : counts) {
+            if (count > 0) {
+                double p = (double) count / total;
+                entropy -= p * Math.log(p) / Math.log(2);
+            }
+        }
+        return entropy;
+    }
+
+    //Output stream counting the bytes written through it
+    static final class CountingOutputStream extends FilterOutputStream {
+        private long count = 0;
+
+        CountingOutputStream(OutputStream output) {
+            super(output);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+            count += length;
+        }
+
+        long count() {
+            return count;
+        }
+    }
+
+    //Input stream counting the bytes read through it
+    static final class CountingInputStream extends FilterInputStream {
+        private long count = 0;
+
+        CountingInputStream(InputStream input) {
+            super(input);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            int read = in.read(bytes, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        long count() {
+            return count;
+        }
+    }
+
+    //JFR event of one phase of a run
+    @Name("huffman.Phase")
+    @Label("Huffman Phase")
+    @Category("Huffman")
+    @Description("One phase of compressing or decompressing a file")
+    static final class PhaseEvent extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("File")
+        String file;
+
+        @Label("Phase")
+        String phase;
+    }
+
+    //JFR event of a whole run
+    @Name("huffman.Run")
+    @Label("Huffman Run")
+    @Category("Huffman")
+    @Description("Compressing or decompressing a file, with its sizes and code statistics")
+    static final class RunEvent extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("File")
+        String file;
+
+        @Label("Bytes In")
+        @DataAmount
+        long bytesIn;
+
+        @Label("Bytes Out")
+        @DataAmount
+        long bytesOut;
+
+        @Label("Characters")
+        long symbolCount;
+
+        @Label("Header Size")
+        @DataAmount
+        long headerBytes;
+
+        @Label("Codes")
+        int codeCount;
+
+        @Label("Entropy")
+        @Description("Shannon entropy of the characters in bits per character")
+        double entropy;
+
+        @Label("Bits Per Character")
+        double bitsPerSymbol;
+
+        @Label("Throughput")
+        @Description("Uncompressed megabytes per second")
+        double throughput;
+    }
+}
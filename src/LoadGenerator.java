@@ -0,0 +1,280 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//Load generator for CompressionServer on the loopback address. Every connection keeps up to pipelineDepth
+//requests in flight, alternating compress and decompress requests for the same payload, with one thread
+//writing the requests and one reading the responses. The latency of every request is measured from just
+//before it is written to the moment its response is read, and the responses of the decompress requests
+//are checked against the payload.
+//Run from src with: java -cp <classes> LoadGenerator [port] [connections] [requestsPerConnection] [pipelineDepth] [payloadFile]
+class LoadGenerator {
+    static final int DEFAULT_CONNECTIONS = 4;
+    static final int DEFAULT_REQUESTS = 2000;
+    static final int DEFAULT_PIPELINE_DEPTH = 8;
+
+    //Response of the server to one request
+    static final class Response {
+        final int id;
+        final int status;
+        final byte[] payload;
+
+        Response(int id, int status, byte[] payload) {
+            this.id = id;
+            this.status = status;
+            this.payload = payload;
+        }
+    }
+
+    //Outcome of a run, with the latency of every request in ns sorted in increasing order
+    static final class Result {
+        final long[] latencies;
+        final long time;
+        final long bytes;
+        final int errors;
+        final int mismatches;
+
+        Result(long[] latencies, long time, long bytes, int errors, int mismatches) {
+            this.latencies = latencies;
+            this.time = time;
+            this.bytes = bytes;
+            this.errors = errors;
+            this.mismatches = mismatches;
+        }
+
+        /**
+         * returning the latency under which a share of the requests were answered.
+         *
+         * @param percentile the share of the requests, between 0 and 100
+         * @return the latency in ns
+         */
+        long percentile(double percentile) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+            return latencies[Math.max(0, Math.min(latencies.length - 1, rank))];
+        }
+
+        double requestsPerSecond() {
+            return time == 0 ? 0 : latencies.length * 1e9 / time;
+        }
+    }
+
+    /**
+     * writing one request.
+     *
+     * @param channel the connection to the server, in blocking mode
+     * @param id the id the response comes back with
+     * @param op CompressionServer.OP_COMPRESS or CompressionServer.OP_DECOMPRESS
+     * @param payload the bytes to compress or decompress
+     */
+    static void writeRequest(SocketChannel channel, int id, int op, byte[] payload) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(CompressionServer.FRAME_HEADER_SIZE);
+        header.putInt(id).put((byte) op).putInt(payload.length).flip();
+        ByteBuffer[] frame = {header, ByteBuffer.wrap(payload)};
+        while (frame[0].hasRemaining() || frame[1].hasRemaining()) {
+            channel.write(frame);
+        }
+    }
+
+    /**
+     * reading one response.
+     *
+     * @param channel the connection to the server, in blocking mode
+     * @return the response
+     */
+    static Response readResponse(SocketChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(CompressionServer.FRAME_HEADER_SIZE);
+        readFully(channel, header);
+        header.flip();
+        int id = header.getInt();
+        int status = header.get();
+        int length = header.getInt();
+        if (length < 0 || length > CompressionServer.MAX_PAYLOAD) {
+            throw new IOException("Malformed response header");
+        }
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        readFully(channel, payload);
+        return new Response(id, status, payload.array());
+    }
+
+    private static void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Server closed the connection");
+            }
+        }
+    }
+
+    // recording the first failure of a connection and closing it, which stops its other thread
+    private static void failed(IOException exception, List<IOException> exceptions, SocketChannel channel) {
+        synchronized (exceptions) {
+            exceptions.add(exception);
+        }
+        try {
+            channel.close();
+        }
+        catch (IOException closeException) {
+            // the connection is dropped anyway
+        }
+    }
+
+    /**
+     * sending requests to a server on the loopback address from several connections at once.
+     *
+     * @param port the port of the server
+     * @param connections the number of connections
+     * @param requestsPerConnection the number of requests sent on every connection
+     * @param pipelineDepth the largest number of requests of a connection waiting for their response
+     * @param payload the bytes every request compresses, or decompresses once compressed
+     * @return the latencies, the throughput and the failures of the run
+     */
+    static Result run(int port, int connections, int requestsPerConnection, int pipelineDepth, byte[] payload) throws IOException, InterruptedException {
+        if (connections <= 0 || requestsPerConnection < 0 || pipelineDepth <= 0) {
+            throw new IllegalArgumentException("Connections and pipeline depth must be positive");
+        }
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+
+        // compressing the payload once for the decompress requests
+        byte[] compressed;
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            writeRequest(channel, 0, CompressionServer.OP_COMPRESS, payload);
+            Response response = readResponse(channel);
+            if (response.status != CompressionServer.STATUS_OK) {
+                throw new IOException("Server failed to compress the payload: " + new String(response.payload, StandardCharsets.UTF_8));
+            }
+            compressed = response.payload;
+        }
+
+        long[] latencies = new long[connections * requestsPerConnection];
+        int[] failures = new int[2 * connections];
+        List<Thread> threads = new ArrayList<>();
+        List<SocketChannel> channels = new ArrayList<>();
+        List<IOException> exceptions = new ArrayList<>();
+        final long startTime = System.nanoTime();
+        try {
+            for (int connection = 0; connection < connections; connection++) {
+                SocketChannel channel = SocketChannel.open(address);
+                channel.socket().setTcpNoDelay(true);
+                channels.add(channel);
+                Semaphore window = new Semaphore(pipelineDepth);
+                AtomicLongArray sendTimes = new AtomicLongArray(requestsPerConnection);
+                int first = connection * requestsPerConnection;
+                int failure = 2 * connection;
+
+                // writing requests while the window has room, even ids compress and odd ids decompress
+                threads.add(new Thread(() -> {
+                    try {
+                        for (int id = 0; id < requestsPerConnection; id++) {
+                            window.acquire();
+                            sendTimes.set(id, System.nanoTime());
+                            writeRequest(channel, id, id % 2 == 0 ? CompressionServer.OP_COMPRESS : CompressionServer.OP_DECOMPRESS,
+                                    id % 2 == 0 ? payload : compressed);
+                        }
+                    }
+                    catch (IOException exception) {
+                        failed(exception, exceptions, channel);
+                    }
+                    catch (InterruptedException exception) {
+                        Thread.currentThread().interrupt();
+                    }
+                }, "load-writer-" + connection));
+
+                // reading the responses in whatever order they come, freeing a slot of the window for each
+                threads.add(new Thread(() -> {
+                    try {
+                        for (int received = 0; received < requestsPerConnection; received++) {
+                            Response response = readResponse(channel);
+                            if (response.id < 0 || response.id >= requestsPerConnection) {
+                                throw new IOException("Response to an unknown request " + response.id);
+                            }
+                            latencies[first + received] = System.nanoTime() - sendTimes.get(response.id);
+                            window.release();
+                            if (response.status != CompressionServer.STATUS_OK) {
+                                failures[failure]++;
+                            }
+                            else if (response.id % 2 == 1 && !Arrays.equals(payload, response.payload)) {
+                                failures[failure + 1]++;
+                            }
+                        }
+                    }
+                    catch (IOException exception) {
+                        failed(exception, exceptions, channel);
+                    }
+                }, "load-reader-" + connection));
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+        finally {
+            for (SocketChannel channel : channels) {
+                channel.close();
+            }
+        }
+        final long time = System.nanoTime() - startTime;
+        if (!exceptions.isEmpty()) {
+            throw exceptions.get(0);
+        }
+
+        int errors = 0;
+        int mismatches = 0;
+        for (int connection = 0; connection < connections; connection++) {
+            errors += failures[2 * connection];
+            mismatches += failures[2 * connection + 1];
+        }
+        Arrays.sort(latencies);
+        long bytes = (long) connections * ((requestsPerConnection + 1) / 2 * (long) payload.length
+                + requestsPerConnection / 2 * (long) compressed.length);
+        return new Result(latencies, time, bytes, errors, mismatches);
+    }
+
+    /**
+     * the main method, printing the throughput and the latency percentiles of a run.
+     */
+    public static void main(String[] args) {
+        try {
+            int port = args.length > 0 ? Integer.parseInt(args[0]) : CompressionServer.DEFAULT_PORT;
+            int connections = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_CONNECTIONS;
+            int requests = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_REQUESTS;
+            int depth = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_PIPELINE_DEPTH;
+            String payloadFile = args.length > 4 ? args[4] : "../resources/fileToTest/book_Alice's_Adventures_In_Wonderland(ENG).txt";
+            byte[] payload = Files.readAllBytes(Paths.get(payloadFile));
+
+            Result result = run(port, connections, requests, depth, payload);
+            System.out.println("Requests: " + result.latencies.length + " on " + connections + " connections, pipeline depth " + depth
+                    + ", payload " + payload.length + " bytes");
+            System.out.println("Throughput: " + result.requestsPerSecond() + " requests/s, "
+                    + result.bytes / (1024.0 * 1024) / (result.time / 1e9) + " MB/s");
+            System.out.println("Latency: p50 " + result.percentile(50) / 1000 + "us, p90 " + result.percentile(90) / 1000
+                    + "us, p99 " + result.percentile(99) / 1000 + "us, p99.9 " + result.percentile(99.9) / 1000
+                    + "us, max " + result.percentile(100) / 1000 + "us");
+            System.out.println("Errors: " + result.errors + ", mismatched decompressions: " + result.mismatches);
+        }
+        catch (NumberFormatException exception) {
+            System.out.println("Usage: java LoadGenerator [port] [connections] [requestsPerConnection] [pipelineDepth] [payloadFile]");
+        }
+        catch (IOException exception) {
+            // printing the stack trace if the server could not be reached or failed
+            exception.printStackTrace();
+        }
+        catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
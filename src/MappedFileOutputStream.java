@@ -0,0 +1,85 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+//Output stream writing into memory-mapped windows of a file, the file grows one window at a time
+//and is cut back to the bytes actually written when the stream is closed
+class MappedFileOutputStream extends OutputStream {
+    static final long DEFAULT_WINDOW_SIZE = 1L << 26;
+
+    private final FileChannel channel;
+    private final long windowSize;
+    private MappedByteBuffer window;
+    private long windowStart = 0;
+
+    /**
+     * constructor for creating or replacing a file with the default window size.
+     *
+     * @param path the file to write
+     */
+    MappedFileOutputStream(Path path) throws IOException {
+        this(path, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * constructor for creating or replacing a file.
+     *
+     * @param path the file to write
+     * @param windowSize the number of bytes mapped at once
+     */
+    MappedFileOutputStream(Path path, long windowSize) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.windowSize = Math.min(windowSize, Integer.MAX_VALUE);
+        this.window = channel.map(FileChannel.MapMode.READ_WRITE, 0, this.windowSize);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (!window.hasRemaining()) {
+            nextWindow();
+        }
+        window.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (!window.hasRemaining()) {
+                nextWindow();
+            }
+            int chunk = Math.min(length, window.remaining());
+            window.put(bytes, offset, chunk);
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    /**
+     * returning the number of bytes written so far.
+     *
+     * @return the number of bytes written
+     */
+    long position() {
+        return windowStart + window.position();
+    }
+
+    private void nextWindow() throws IOException {
+        windowStart += window.position();
+        window = channel.map(FileChannel.MapMode.READ_WRITE, windowStart, windowSize);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        long written = position();
+        window = null;
+        channel.truncate(written);
+        channel.close();
+    }
+}
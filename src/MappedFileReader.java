@@ -0,0 +1,108 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+//Reader decoding UTF-8 straight out of memory-mapped windows of a file
+class MappedFileReader extends Reader {
+    // files larger than a window are mapped one window at a time
+    static final long DEFAULT_WINDOW_SIZE = 1L << 30;
+
+    private final FileChannel channel;
+    private final long size;
+    private final long windowSize;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private MappedByteBuffer window;
+    private long windowStart;
+    private boolean finished = false;
+    // second half of a surrogate pair that did not fit into the caller's buffer
+    private int leftover = -1;
+
+    /**
+     * constructor for opening a file with the default window size.
+     *
+     * @param path the file to read
+     */
+    MappedFileReader(Path path) throws IOException {
+        this(path, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * constructor for opening a file.
+     *
+     * @param path the file to read
+     * @param windowSize the largest number of bytes mapped at once
+     */
+    MappedFileReader(Path path, long windowSize) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = channel.size();
+        this.windowSize = Math.min(windowSize, Integer.MAX_VALUE);
+        mapWindow(0);
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (leftover >= 0) {
+            buffer[offset] = (char) leftover;
+            leftover = -1;
+            return 1;
+        }
+        if (finished) {
+            return -1;
+        }
+        if (length == 1) {
+            // decoding into a pair of chars in case the next character is a surrogate pair
+            char[] pair = new char[2];
+            int read = read(pair, 0, 2);
+            if (read == 2) {
+                leftover = pair[1];
+            }
+            if (read > 0) {
+                buffer[offset] = pair[0];
+            }
+            return Math.min(read, 1);
+        }
+
+        CharBuffer output = CharBuffer.wrap(buffer, offset, length);
+        while (true) {
+            boolean lastWindow = windowStart + window.limit() == size;
+            CoderResult result = decoder.decode(window, output, lastWindow);
+            if (result.isOverflow()) {
+                break;
+            }
+            // the window is used up, apart from a character that may continue in the next window
+            if (lastWindow) {
+                decoder.flush(output);
+                finished = true;
+                break;
+            }
+            mapWindow(windowStart + window.position());
+        }
+        int read = output.position() - offset;
+        return read == 0 && finished ? -1 : read;
+    }
+
+    private void mapWindow(long start) throws IOException {
+        windowStart = start;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(windowSize, size - start));
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+}
@@ -0,0 +1,73 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+//Move-to-front transform of a block: every character is replaced by its position in a list of the characters
+//of the block, and moved to the front of the list, so the runs and clusters left by the Burrows-Wheeler
+//transform become mostly small numbers. The list starts as the characters of the block in increasing order,
+//which is the only parameter, written as a count and the gaps between the characters.
+class MoveToFront implements BlockTransform {
+    @Override
+    public char[] forward(char[] block, int length, DataOutputStream parameters) throws IOException {
+        // writing the characters of the block, the starting list
+        long[] counts = Histogram.count(block, 0, length);
+        char[] list = new char[counts.length];
+        int size = 0;
+        for (int character = 0; character < counts.length; character++) {
+            if (counts[character] > 0) {
+                list[size++] = (char) character;
+            }
+        }
+        HuffmanHeader.writeVarInt(parameters, size);
+        int previous = -1;
+        for (int i = 0; i < size; i++) {
+            HuffmanHeader.writeVarInt(parameters, list[i] - previous);
+            previous = list[i];
+        }
+
+        char[] transformed = new char[length];
+        for (int i = 0; i < length; i++) {
+            char character = block[i];
+            // finding the character, nearly always close to the front
+            int position = 0;
+            while (list[position] != character) {
+                position++;
+            }
+            System.arraycopy(list, 0, list, 1, position);
+            list[0] = character;
+            transformed[i] = (char) position;
+        }
+        return transformed;
+    }
+
+    @Override
+    public char[] inverse(char[] transformed, ByteBuffer parameters) throws IOException {
+        // reading the starting list
+        int size = HuffmanHeader.readVarInt(parameters);
+        if (size < 0 || size > CodeTable.ALPHABET_SIZE) {
+            throw new IOException("Corrupt move-to-front alphabet");
+        }
+        char[] list = new char[size];
+        int character = -1;
+        for (int i = 0; i < size; i++) {
+            character += HuffmanHeader.readVarInt(parameters);
+            if (character < 0 || character >= CodeTable.ALPHABET_SIZE) {
+                throw new IOException("Corrupt move-to-front alphabet");
+            }
+            list[i] = (char) character;
+        }
+
+        char[] block = new char[transformed.length];
+        for (int i = 0; i < block.length; i++) {
+            int position = transformed[i];
+            if (position >= size) {
+                throw new IOException("Corrupt move-to-front position");
+            }
+            char found = list[position];
+            System.arraycopy(list, 0, list, 1, position);
+            list[0] = found;
+            block[i] = found;
+        }
+        return block;
+    }
+}
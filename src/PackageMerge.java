@@ -0,0 +1,115 @@
+//Optimal length-limited prefix codes with the package-merge algorithm
+class PackageMerge {
+    /**
+     * finding the optimal code lengths of at most maxLength bits. Every level from the longest code
+     * upwards holds the weights merged with the packages of pairs from the level below, the first
+     * 2n - 2 items of the top level are chosen and a weight gets one bit for every level it is chosen at.
+     *
+     * @param weights the weights of at least two symbols, in increasing order
+     * @param maxLength the longest code allowed, in bits
+     * @return the code length of every symbol, in the order of the weights
+     */
+    static int[] codeLengths(long[] weights, int maxLength) {
+        int n = weights.length;
+        if (maxLength < 1 || maxLength > HuffmanDecoder.MAX_CODE_LENGTH) {
+            throw new IllegalArgumentException("Maximum code length must be between 1 and " + HuffmanDecoder.MAX_CODE_LENGTH);
+        }
+        if (maxLength < Integer.SIZE - 1 && n > 1 << maxLength) {
+            throw new IllegalArgumentException(n + " characters do not fit into codes of at most " + maxLength + " bits");
+        }
+
+        // only whether an item is a package is kept per level, the weights of one level are enough to build the next
+        boolean[][] isPackage = new boolean[maxLength][];
+        long[] level = weights.clone();
+        isPackage[0] = new boolean[n];
+        for (int depth = 1; depth < maxLength; depth++) {
+            int packages = level.length / 2;
+            long[] merged = new long[n + packages];
+            boolean[] mergedIsPackage = new boolean[merged.length];
+            int weight = 0;
+            int pack = 0;
+            for (int i = 0; i < merged.length; i++) {
+                long packageWeight = pack < packages ? level[2 * pack] + level[2 * pack + 1] : Long.MAX_VALUE;
+                if (weight < n && weights[weight] <= packageWeight) {
+                    merged[i] = weights[weight++];
+                }
+                else {
+                    merged[i] = packageWeight;
+                    mergedIsPackage[i] = true;
+                    pack++;
+                }
+            }
+            level = merged;
+            isPackage[depth] = mergedIsPackage;
+        }
+
+        // walking back down the levels: the leaves chosen at a level are always the lightest ones
+        int[] lengths = new int[n];
+        int take = 2 * n - 2;
+        for (int depth = maxLength - 1; depth >= 0 && take > 0; depth--) {
+            int leaves = 0;
+            int packages = 0;
+            for (int i = 0; i < take; i++) {
+                if (isPackage[depth][i]) {
+                    packages++;
+                }
+                else {
+                    leaves++;
+                }
+            }
+            for (int i = 0; i < leaves; i++) {
+                lengths[i]++;
+            }
+            take = 2 * packages;
+        }
+        return lengths;
+    }
+
+    /**
+     * returning the number of bits an unconstrained Huffman code takes for the characters, the sum of
+     * the weights of all internal nodes of the tree, found by merging two queues of sorted weights.
+     *
+     * @param counts the count of every character, indexed by character
+     * @return the encoded size in bits
+     */
+    static long huffmanBits(long[] counts) {
+        long[] sorted = CodeLengths.sortByCount(counts);
+        int n = sorted.length;
+        long[] merged = new long[Math.max(0, n - 1)];
+        int leaf = 0;
+        int head = 0;
+        long bits = 0;
+        for (int tail = 0; tail < merged.length; tail++) {
+            long sum = 0;
+            for (int pick = 0; pick < 2; pick++) {
+                if (leaf < n && (head == tail || (sorted[leaf] >>> CodeLengths.SYMBOL_BITS) <= merged[head])) {
+                    sum += sorted[leaf++] >>> CodeLengths.SYMBOL_BITS;
+                }
+                else {
+                    sum += merged[head++];
+                }
+            }
+            merged[tail] = sum;
+            bits += sum;
+        }
+        // a single character is still written with one bit
+        return n == 1 ? sorted[0] >>> CodeLengths.SYMBOL_BITS : bits;
+    }
+
+    /**
+     * returning the number of bits the characters take with a code table.
+     *
+     * @param counts the count of every character, indexed by character
+     * @param codeTable the codes of the characters
+     * @return the encoded size in bits
+     */
+    static long encodedBits(long[] counts, CodeTable codeTable) {
+        long bits = 0;
+        for (int character = 0; character < counts.length; character++) {
+            if (counts[character] > 0) {
+                bits += counts[character] * codeTable.length(character);
+            }
+        }
+        return bits;
+    }
+}
@@ -0,0 +1,81 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/*
+ * Seek index at the end of a single stream file, right after the encoded bits:
+ *   checkpointCount times:
+ *     bitOffset    8 bytes  position in the encoded bits of character checkpoint * interval
+ * checkpointCount is the number of characters divided by the interval stored in the header, rounded up,
+ * so any checkpoint can be found from the end of the file without reading the rest of the index.
+ */
+class SeekIndex {
+    static final int DEFAULT_INTERVAL = 1 << 16;
+    static final int ENTRY_SIZE = Long.BYTES;
+
+    final int interval;
+    private long[] bitOffsets = new long[16];
+    private int size = 0;
+
+    /**
+     * constructor for initialising an empty seek index.
+     *
+     * @param interval the number of characters between two checkpoints
+     */
+    SeekIndex(int interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Checkpoint interval must be positive");
+        }
+        this.interval = interval;
+    }
+
+    /**
+     * recording the bit offset of the next checkpoint.
+     *
+     * @param bitOffset the position of the checkpoint in the encoded bits
+     */
+    void add(long bitOffset) {
+        if (size == bitOffsets.length) {
+            bitOffsets = Arrays.copyOf(bitOffsets, size * 2);
+        }
+        bitOffsets[size++] = bitOffset;
+    }
+
+    /**
+     * writing the checkpoints in the order they were added.
+     *
+     * @param output the stream to write to, left open
+     */
+    void write(OutputStream output) throws IOException {
+        DataOutputStream data = new DataOutputStream(output);
+        for (int i = 0; i < size; i++) {
+            data.writeLong(bitOffsets[i]);
+        }
+        data.flush();
+    }
+
+    /**
+     * returning the number of checkpoints of a stream.
+     *
+     * @param symbolCount the number of characters encoded
+     * @param interval the number of characters between two checkpoints, 0 for a stream without an index
+     * @return the number of checkpoints
+     */
+    static long checkpointCount(long symbolCount, int interval) {
+        return interval == 0 ? 0 : (symbolCount + interval - 1) / interval;
+    }
+
+    /**
+     * reading a single checkpoint from the index at the end of a compressed file.
+     *
+     * @param channel the compressed file
+     * @param indexStart the position of the index in the file
+     * @param checkpoint the number of the checkpoint
+     * @return the position of the checkpoint in the encoded bits
+     */
+    static long readCheckpoint(FileChannel channel, long indexStart, long checkpoint) throws IOException {
+        return HuffmanCoding.readRegion(channel, indexStart + checkpoint * ENTRY_SIZE, ENTRY_SIZE, false).getLong(0);
+    }
+}
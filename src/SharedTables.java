@@ -0,0 +1,213 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/*
+ * Code tables trained once from a sample corpus and shared by many compressed files. A table is stored
+ * in DIRECTORY as <id>.table holding its code lengths as written by HuffmanHeader.writeCodeLengths, and
+ * its id is the CRC-32 of those bytes, so the same lengths always get the same id. A table whose id is
+ * taken by a table of other lengths gets the next free id instead. Files compressed with a shared table
+ * store its id and the checksum of its lengths in their header, and the checksum is verified against the
+ * stored table on decompression.
+ */
+class SharedTables {
+    static final String DIRECTORY = "../out/tables/";
+    // number of decoded tables kept in memory
+    static final int CACHE_SIZE = 16;
+    // largest share by which the output of a shared table may exceed that of a table of the file's own
+    static final double MAX_SIZE_COST = 0.02;
+    // characters counted once more when training
+    static final int SMOOTHED_CHARACTERS = 256;
+
+    // most recently used tables, by id
+    private static final Map<Integer, Table> CACHE = new LinkedHashMap<Integer, Table>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Table> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    //Shared table together with the decoding tables built from it and the checksum of its lengths
+    static final class Table {
+        final CodeTable codeTable;
+        final HuffmanDecoder decoder;
+        final long checksum;
+
+        Table(CodeTable codeTable, long checksum) {
+            this.codeTable = codeTable;
+            this.decoder = new HuffmanDecoder(codeTable);
+            this.checksum = checksum;
+        }
+    }
+
+    /**
+     * training a table from sample files and storing it.
+     *
+     * @param samples the files whose characters the table is built from
+     * @param maxCodeLength the longest code allowed, in bits
+     * @return the id of the table
+     */
+    static int train(List<Path> samples, int maxCodeLength) throws IOException {
+        // counting the characters of all samples together
+        Histogram histogram = new Histogram();
+        char[] buffer = new char[HuffmanCoding.STREAM_BUFFER_SIZE];
+        for (Path sample : samples) {
+            try (Reader reader = HuffmanCoding.openReader(sample, false)) {
+                int read;
+                while ((read = reader.read(buffer)) != -1) {
+                    histogram.add(buffer, 0, read);
+                }
+            }
+        }
+        long[] counts = histogram.counts();
+        boolean empty = true;
+        for (long count : counts) {
+            empty &= count == 0;
+        }
+        if (empty) {
+            throw new IllegalArgumentException("The samples hold no characters");
+        }
+        // giving every Latin-1 character a code, so that files with a few characters the samples lack still fit
+        for (int character = 0; character < SMOOTHED_CHARACTERS; character++) {
+            counts[character]++;
+        }
+        CodeTable codeTable = HuffmanCoding.buildCodeTable(counts, maxCodeLength);
+
+        byte[] lengths = serialize(codeTable);
+        int id = idOf(lengths);
+        Files.createDirectories(Paths.get(DIRECTORY));
+        while (true) {
+            // creating the file only if it does not exist, so that a table of other lengths is never overwritten
+            try {
+                Files.write(path(id), lengths, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                break;
+            }
+            catch (FileAlreadyExistsException exception) {
+                if (Arrays.equals(Files.readAllBytes(path(id)), lengths)) {
+                    break;
+                }
+                // probing the next id, 0 is kept for files with a table of their own
+                id = id == -1 ? 1 : id + 1;
+            }
+        }
+        synchronized (CACHE) {
+            CACHE.put(id, new Table(codeTable, checksum(lengths)));
+        }
+        return id;
+    }
+
+    /**
+     * returning a stored table, from the cache or else from its file.
+     *
+     * @param id the id of the table
+     * @return the table and its decoding tables
+     */
+    static Table get(int id) throws IOException {
+        synchronized (CACHE) {
+            Table table = CACHE.get(id);
+            if (table != null) {
+                return table;
+            }
+        }
+
+        // loading outside of the lock, two threads loading the same table build equal entries
+        Path path = path(id);
+        if (!Files.exists(path)) {
+            throw new IOException("Shared code table " + name(id) + " not found in " + DIRECTORY);
+        }
+        byte[] lengths = Files.readAllBytes(path);
+        Table table = new Table(HuffmanHeader.readCodeLengths(ByteBuffer.wrap(lengths)), checksum(lengths));
+        synchronized (CACHE) {
+            CACHE.put(id, table);
+        }
+        return table;
+    }
+
+    /**
+     * checking whether a shared table encodes characters into at most MAX_SIZE_COST more bytes than a
+     * table of their own would, counting the code lengths the own table has to store.
+     *
+     * @param counts the count of every character, indexed by character
+     * @param shared the shared table
+     * @param own the table built for the characters
+     * @return true if every character has a shared code and the shared output is small enough
+     */
+    static boolean fits(long[] counts, CodeTable shared, CodeTable own) throws IOException {
+        for (int character = 0; character < counts.length; character++) {
+            if (counts[character] > 0 && shared.length(character) == 0) {
+                return false;
+            }
+        }
+        long ownBits = PackageMerge.encodedBits(counts, own) + (long) serialize(own).length * Byte.SIZE;
+        return PackageMerge.encodedBits(counts, shared) <= ownBits + (long) (ownBits * MAX_SIZE_COST);
+    }
+
+    /**
+     * returning the id of a table as written in file names and on the command line.
+     *
+     * @param id the id of the table
+     * @return the id in hexadecimal
+     */
+    static String name(int id) {
+        return String.format("%08x", id);
+    }
+
+    private static Path path(int id) {
+        return Paths.get(DIRECTORY + name(id) + ".table");
+    }
+
+    private static byte[] serialize(CodeTable codeTable) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        HuffmanHeader.writeCodeLengths(data, codeTable);
+        data.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * returning a table checked against the checksum a compressed file stored for it.
+     *
+     * @param id the id of the table
+     * @param checksum the checksum of the lengths the file was compressed with
+     * @return the table and its decoding tables
+     */
+    static Table get(int id, long checksum) throws IOException {
+        Table table = get(id);
+        if (table.checksum != checksum) {
+            throw new IOException("Shared code table " + name(id) + " in " + DIRECTORY + " is not the one the file was compressed with");
+        }
+        return table;
+    }
+
+    // first 8 bytes of the SHA-256 of the lengths, independent of the CRC-32 the id is taken from
+    private static long checksum(byte[] lengths) {
+        try {
+            return ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(lengths)).getLong();
+        }
+        catch (NoSuchAlgorithmException exception) {
+            // every Java platform is required to provide SHA-256
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    private static int idOf(byte[] lengths) {
+        CRC32 crc = new CRC32();
+        crc.update(lengths);
+        // 0 is kept for files with a table of their own
+        return crc.getValue() == 0 ? 1 : (int) crc.getValue();
+    }
+}
@@ -0,0 +1,158 @@
+import java.util.Arrays;
+
+//Suffix array construction by induced sorting (SA-IS, Nong, Zhang and Chan), in time linear in the length
+//of the text. Suffixes are typed S when smaller than the suffix after them and L otherwise; sorting the
+//leftmost S suffixes (LMS) is enough to induce the order of all the others in two scans, and the LMS
+//suffixes themselves are sorted by recursing on a text of one name per distinct LMS substring.
+class SuffixArray {
+    /**
+     * returning the suffix array of a text ending with a unique smallest symbol.
+     *
+     * @param text the symbols of the text, text[length - 1] being 0 and every other symbol above 0
+     * @param length the number of symbols, the last one included
+     * @param alphabetSize one more than the largest symbol
+     * @return the starting positions of the suffixes in increasing order
+     */
+    static int[] build(int[] text, int length, int alphabetSize) {
+        int[] suffixes = new int[length];
+        if (length == 1) {
+            return suffixes;
+        }
+        sort(text, suffixes, length, alphabetSize);
+        return suffixes;
+    }
+
+    private static void sort(int[] text, int[] suffixes, int n, int alphabetSize) {
+        // typing every suffix from the right, the last one is S
+        boolean[] sType = new boolean[n];
+        sType[n - 1] = true;
+        for (int i = n - 2; i >= 0; i--) {
+            sType[i] = text[i] < text[i + 1] || (text[i] == text[i + 1] && sType[i + 1]);
+        }
+
+        // placing the LMS suffixes at the ends of their buckets, in text order, and inducing from them
+        int[] bucket = new int[alphabetSize];
+        bucketEnds(text, bucket, n, alphabetSize);
+        Arrays.fill(suffixes, 0, n, -1);
+        for (int i = 1; i < n; i++) {
+            if (isLms(sType, i)) {
+                suffixes[--bucket[text[i]]] = i;
+            }
+        }
+        induce(text, suffixes, sType, bucket, n, alphabetSize);
+
+        // moving the LMS suffixes, now sorted by their LMS substrings, to the front
+        int lmsCount = 0;
+        for (int i = 0; i < n; i++) {
+            if (isLms(sType, suffixes[i])) {
+                suffixes[lmsCount++] = suffixes[i];
+            }
+        }
+
+        // naming the LMS substrings, equal substrings getting the same name; no two LMS positions are
+        // adjacent, so position / 2 gives every one its own slot after the sorted ones
+        Arrays.fill(suffixes, lmsCount, n, -1);
+        int names = 0;
+        int previous = -1;
+        for (int i = 0; i < lmsCount; i++) {
+            int position = suffixes[i];
+            boolean different = false;
+            for (int d = 0; d < n; d++) {
+                if (previous == -1 || text[position + d] != text[previous + d] || sType[position + d] != sType[previous + d]) {
+                    different = true;
+                    break;
+                }
+                if (d > 0 && (isLms(sType, position + d) || isLms(sType, previous + d))) {
+                    break;
+                }
+            }
+            if (different) {
+                names++;
+                previous = position;
+            }
+            suffixes[lmsCount + position / 2] = names - 1;
+        }
+        int[] reduced = new int[lmsCount];
+        for (int i = n - 1, j = lmsCount - 1; i >= lmsCount; i--) {
+            if (suffixes[i] >= 0) {
+                reduced[j--] = suffixes[i];
+            }
+        }
+
+        // sorting the LMS suffixes, directly when every name is distinct
+        int[] reducedSuffixes = new int[lmsCount];
+        if (names < lmsCount) {
+            sort(reduced, reducedSuffixes, lmsCount, names);
+        }
+        else {
+            for (int i = 0; i < lmsCount; i++) {
+                reducedSuffixes[reduced[i]] = i;
+            }
+        }
+
+        // mapping them back to positions in the text and inducing the final order from them
+        for (int i = 1, j = 0; i < n; i++) {
+            if (isLms(sType, i)) {
+                reduced[j++] = i;
+            }
+        }
+        bucketEnds(text, bucket, n, alphabetSize);
+        Arrays.fill(suffixes, 0, n, -1);
+        for (int i = lmsCount - 1; i >= 0; i--) {
+            int position = reduced[reducedSuffixes[i]];
+            suffixes[--bucket[text[position]]] = position;
+        }
+        induce(text, suffixes, sType, bucket, n, alphabetSize);
+    }
+
+    /**
+     * inducing the L suffixes from left to right into the starts of their buckets, then the S suffixes
+     * from right to left into the ends of their buckets.
+     */
+    private static void induce(int[] text, int[] suffixes, boolean[] sType, int[] bucket, int n, int alphabetSize) {
+        bucketStarts(text, bucket, n, alphabetSize);
+        for (int i = 0; i < n; i++) {
+            int j = suffixes[i] - 1;
+            if (j >= 0 && !sType[j]) {
+                suffixes[bucket[text[j]]++] = j;
+            }
+        }
+        bucketEnds(text, bucket, n, alphabetSize);
+        for (int i = n - 1; i >= 0; i--) {
+            int j = suffixes[i] - 1;
+            if (j >= 0 && sType[j]) {
+                suffixes[--bucket[text[j]]] = j;
+            }
+        }
+    }
+
+    private static boolean isLms(boolean[] sType, int i) {
+        return i > 0 && sType[i] && !sType[i - 1];
+    }
+
+    private static void bucketStarts(int[] text, int[] bucket, int n, int alphabetSize) {
+        countSymbols(text, bucket, n, alphabetSize);
+        int sum = 0;
+        for (int symbol = 0; symbol < alphabetSize; symbol++) {
+            int count = bucket[symbol];
+            bucket[symbol] = sum;
+            sum += count;
+        }
+    }
+
+    private static void bucketEnds(int[] text, int[] bucket, int n, int alphabetSize) {
+        countSymbols(text, bucket, n, alphabetSize);
+        int sum = 0;
+        for (int symbol = 0; symbol < alphabetSize; symbol++) {
+            sum += bucket[symbol];
+            bucket[symbol] = sum;
+        }
+    }
+
+    private static void countSymbols(int[] text, int[] bucket, int n, int alphabetSize) {
+        Arrays.fill(bucket, 0, alphabetSize, 0);
+        for (int i = 0; i < n; i++) {
+            bucket[text[i]]++;
+        }
+    }
+}
@@ -1,29 +1,54 @@
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
-import java.io.FileInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.ObjectInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PipedReader;
+import java.io.PipedWriter;
 import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 
 public class TestHuffmanCoding extends HuffmanCoding{
+    private static final String[] BOOKS = {
+        "book_Alice's_Adventures_In_Wonderland(ENG).txt",
+        "book_Alice's_Adventures_In_Wonderland(FR).txt",
+        "book_Alice's_Adventures_In_Wonderland(PT).txt",
+        "book_Oliver_Twist(ENG).txt",
+        "book_Oliver_Twist(FR).txt",
+        "book_Oliver_Twist(PT).txt"
+    };
+
     public static void testBook01() {
         String origin = "book_Alice's_Adventures_In_Wonderland(ENG).txt";
         String destination = "(compressed)book_Alice's_Adventures_In_Wonderland(ENG).bin";
         String output = "(decompressed)book_Alice's_Adventures_In_Wonderland(ENG).txt";
         HuffmanCoding.huffmanCompress(origin, destination);
-        try (FileInputStream fis = new FileInputStream("../out/" + destination + ".huffmancode")) {
-            ObjectInputStream ois = new ObjectInputStream(fis);
-            @SuppressWarnings("unchecked")
-            HashMap<Character,String> huffmanCode = (HashMap<Character,String>)ois.readObject();
-            ois.close();
-            byte[] bytesToDecompress = Files.readAllBytes(Paths.get("../out/" + destination));
-            StringBuilder toDecompress = getString(bytesToDecompress);
-            HuffmanCoding.huffmanDecompress(huffmanCode, toDecompress, output);
-        }
-        catch (Exception e) {}
+        HuffmanCoding.huffmanDecompress(destination, output);
     }
 
     public static void testBook02() {
@@ -31,16 +56,7 @@ public class TestHuffmanCoding extends HuffmanCoding{
         String destination = "(compressed)book_Alice's_Adventures_In_Wonderland(FR).bin";
         String output = "(decompressed)book_Alice's_Adventures_In_Wonderland(FR).txt";
         HuffmanCoding.huffmanCompress(origin, destination);
-        try (FileInputStream fis = new FileInputStream("../out/" + destination + ".huffmancode")) {
-            ObjectInputStream ois = new ObjectInputStream(fis);
-            @SuppressWarnings("unchecked")
-            HashMap<Character,String> huffmanCode = (HashMap<Character,String>)ois.readObject();
-            ois.close();
-            byte[] bytesToDecompress = Files.readAllBytes(Paths.get("../out/" + destination));
-            StringBuilder toDecompress = getString(bytesToDecompress);
-            HuffmanCoding.huffmanDecompress(huffmanCode, toDecompress, output);
-        }
-        catch (Exception e) {}
+        HuffmanCoding.huffmanDecompress(destination, output);
     }
 
     public static void testBook03() {
@@ -48,16 +64,7 @@ public class TestHuffmanCoding extends HuffmanCoding{
         String destination = "(compressed)book_Alice's_Adventures_In_Wonderland(PT).bin";
         String output = "(decompressed)book_Alice's_Adventures_In_Wonderland(PT).txt";
         HuffmanCoding.huffmanCompress(origin, destination);
-        try (FileInputStream fis = new FileInputStream("../out/" + destination + ".huffmancode")) {
-            ObjectInputStream ois = new ObjectInputStream(fis);
-            @SuppressWarnings("unchecked")
-            HashMap<Character,String> huffmanCode = (HashMap<Character,String>)ois.readObject();
-            ois.close();
-            byte[] bytesToDecompress = Files.readAllBytes(Paths.get("../out/" + destination));
-            StringBuilder toDecompress = getString(bytesToDecompress);
-            HuffmanCoding.huffmanDecompress(huffmanCode, toDecompress, output);
-        }
-        catch (Exception e) {}
+        HuffmanCoding.huffmanDecompress(destination, output);
     }
 
     public static void testBook04() {
@@ -65,16 +72,7 @@ public class TestHuffmanCoding extends HuffmanCoding{
         String destination = "(compressed)book_Oliver_Twist(ENG).bin";
         String output = "(decompressed)book_Oliver_Twist(ENG).txt";
         HuffmanCoding.huffmanCompress(origin, destination);
-        try (FileInputStream fis = new FileInputStream("../out/" + destination + ".huffmancode")) {
-            ObjectInputStream ois = new ObjectInputStream(fis);
-            @SuppressWarnings("unchecked")
-            HashMap<Character,String> huffmanCode = (HashMap<Character,String>)ois.readObject();
-            ois.close();
-            byte[] bytesToDecompress = Files.readAllBytes(Paths.get("../out/" + destination));
-            StringBuilder toDecompress = getString(bytesToDecompress);
-            HuffmanCoding.huffmanDecompress(huffmanCode, toDecompress, output);
-        }
-        catch (Exception e) {}
+        HuffmanCoding.huffmanDecompress(destination, output);
     }
 
     public static void testBook05() {
@@ -82,16 +80,7 @@ public class TestHuffmanCoding extends HuffmanCoding{
         String destination = "(compressed)book_Oliver_Twist(FR).bin";
         String output = "(decompressed)book_Oliver_Twist(FR).txt";
         HuffmanCoding.huffmanCompress(origin, destination);
-        try (FileInputStream fis = new FileInputStream("../out/" + destination + ".huffmancode")) {
-            ObjectInputStream ois = new ObjectInputStream(fis);
-            @SuppressWarnings("unchecked")
-            HashMap<Character,String> huffmanCode = (HashMap<Character,String>)ois.readObject();
-            ois.close();
-            byte[] bytesToDecompress = Files.readAllBytes(Paths.get("../out/" + destination));
-            StringBuilder toDecompress = getString(bytesToDecompress);
-            HuffmanCoding.huffmanDecompress(huffmanCode, toDecompress, output);
-        }
-        catch (Exception e) {}
+        HuffmanCoding.huffmanDecompress(destination, output);
     }
 
     public static void testBook06() {
@@ -99,16 +88,7 @@ public class TestHuffmanCoding extends HuffmanCoding{
         String destination = "(compressed)book_Oliver_Twist(PT).bin";
         String output = "(decompressed)book_Oliver_Twist(PT).txt";
         HuffmanCoding.huffmanCompress(origin, destination);
-        try (FileInputStream fis = new FileInputStream("../out/" + destination + ".huffmancode")) {
-            ObjectInputStream ois = new ObjectInputStream(fis);
-            @SuppressWarnings("unchecked")
-            HashMap<Character,String> huffmanCode = (HashMap<Character,String>)ois.readObject();
-            ois.close();
-            byte[] bytesToDecompress = Files.readAllBytes(Paths.get("../out/" + destination));
-            StringBuilder toDecompress = getString(bytesToDecompress);
-            HuffmanCoding.huffmanDecompress(huffmanCode, toDecompress, output);
-        }
-        catch (Exception e) {}
+        HuffmanCoding.huffmanDecompress(destination, output);
     }
 
     public static void testDataset01() {
@@ -116,16 +96,7 @@ public class TestHuffmanCoding extends HuffmanCoding{
         String destination = "(compressed)dataset_artifical(rs.13).bin";
         String output = "(decompressed)dataset_artifical(rs.13).txt";
         HuffmanCoding.huffmanCompress(origin, destination);
-        try (FileInputStream fis = new FileInputStream("../out/" + destination + ".huffmancode")) {
-            ObjectInputStream ois = new ObjectInputStream(fis);
-            @SuppressWarnings("unchecked")
-            HashMap<Character,String> huffmanCode = (HashMap<Character,String>)ois.readObject();
-            ois.close();
-            byte[] bytesToDecompress = Files.readAllBytes(Paths.get("../out/" + destination));
-            StringBuilder toDecompress = getString(bytesToDecompress);
-            HuffmanCoding.huffmanDecompress(huffmanCode, toDecompress, output);
-        }
-        catch (Exception e) {}
+        HuffmanCoding.huffmanDecompress(destination, output);
     }
 
     public static void testDataset02() {
@@ -133,16 +104,7 @@ public class TestHuffmanCoding extends HuffmanCoding{
         String destination = "(compressed)dataset_artificial(fib41).bin";
         String output = "(decompressed)dataset_artificial(fib41).txt";
         HuffmanCoding.huffmanCompress(origin, destination);
-        try (FileInputStream fis = new FileInputStream("../out/" + destination + ".huffmancode")) {
-            ObjectInputStream ois = new ObjectInputStream(fis);
-            @SuppressWarnings("unchecked")
-            HashMap<Character,String> huffmanCode = (HashMap<Character,String>)ois.readObject();
-            ois.close();
-            byte[] bytesToDecompress = Files.readAllBytes(Paths.get("../out/" + destination));
-            StringBuilder toDecompress = getString(bytesToDecompress);
-            HuffmanCoding.huffmanDecompress(huffmanCode, toDecompress, output);
-        }
-        catch (Exception e) {}
+        HuffmanCoding.huffmanDecompress(destination, output);
     }
 
     public static void testDataset03() {
@@ -150,16 +112,7 @@ public class TestHuffmanCoding extends HuffmanCoding{
         String destination = "(compressed)dataset_pseudo_real(dsources.001.2).bin";
         String output = "(decompressed)dataset_pseudo_real(dsources.001.2).txt";
         HuffmanCoding.huffmanCompress(origin, destination);
-        try (FileInputStream fis = new FileInputStream("../out/" + destination + ".huffmancode")) {
-            ObjectInputStream ois = new ObjectInputStream(fis);
-            @SuppressWarnings("unchecked")
-            HashMap<Character,String> huffmanCode = (HashMap<Character,String>)ois.readObject();
-            ois.close();
-            byte[] bytesToDecompress = Files.readAllBytes(Paths.get("../out/" + destination));
-            StringBuilder toDecompress = getString(bytesToDecompress);
-            HuffmanCoding.huffmanDecompress(huffmanCode, toDecompress, output);
-        }
-        catch (Exception e) {}
+        HuffmanCoding.huffmanDecompress(destination, output);
     }
 
     public static void testDataset04() {
@@ -167,18 +120,1085 @@ public class TestHuffmanCoding extends HuffmanCoding{
         String destination = "(compressed)dataset_real(world_leaders).bin";
         String output = "(decompressed)dataset_real(world_leaders).txt";
         HuffmanCoding.huffmanCompress(origin, destination);
-        try (FileInputStream fis = new FileInputStream("../out/" + destination + ".huffmancode")) {
-            ObjectInputStream ois = new ObjectInputStream(fis);
-            @SuppressWarnings("unchecked")
-            HashMap<Character,String> huffmanCode = (HashMap<Character,String>)ois.readObject();
-            ois.close();
-            byte[] bytesToDecompress = Files.readAllBytes(Paths.get("../out/" + destination));
-            StringBuilder toDecompress = getString(bytesToDecompress);
-            HuffmanCoding.huffmanDecompress(huffmanCode, toDecompress, output);
+        HuffmanCoding.huffmanDecompress(destination, output);
+    }
+
+    public static void testStreamBooks() {
+        for (String origin : BOOKS) {
+            String destination = "(stream)" + origin + ".bin";
+            String output = "(stream-decompressed)" + origin;
+            HuffmanCoding.huffmanCompressStream(origin, destination);
+            HuffmanCoding.huffmanDecompress(destination, output);
+            try {
+                boolean identical = Arrays.equals(Files.readAllBytes(Paths.get("../resources/fileToTest/" + origin)),
+                        Files.readAllBytes(Paths.get("../out/" + output)));
+                System.out.println("Streaming round trip of " + origin + ": " + (identical ? "identical" : "DIFFERENT"));
+                System.out.println("");
+            }
+            catch (Exception e) {}
+        }
+    }
+
+    public static void testParallelScaling() {
+        String[] origins = {
+            "book_Oliver_Twist(ENG).txt",
+            "dataset_artifical(rs.13).txt",
+            "dataset_artificial(fib41).txt",
+            "dataset_pseudo_real(dsources.001.2).txt",
+            "dataset_real(world_leaders).txt"
+        };
+        for (String origin : origins) {
+            if (!Files.exists(Paths.get("../resources/fileToTest/" + origin))) {
+                continue;
+            }
+            String destination = "(parallel)" + origin + ".bin";
+            String output = "(parallel-decompressed)" + origin;
+            // small blocks so that even the books are split across every worker
+            for (int workers = 1; workers <= Runtime.getRuntime().availableProcessors(); workers *= 2) {
+                HuffmanCoding.huffmanCompressParallel(origin, destination, workers, 64 * 1024);
+            }
+            HuffmanCoding.huffmanDecompress(destination, output);
+            try {
+                boolean identical = Arrays.equals(Files.readAllBytes(Paths.get("../resources/fileToTest/" + origin)),
+                        Files.readAllBytes(Paths.get("../out/" + output)));
+                System.out.println("Parallel round trip of " + origin + ": " + (identical ? "identical" : "DIFFERENT"));
+                System.out.println("");
+            }
+            catch (Exception e) {}
+        }
+    }
+
+    public static void testHistogramBooks() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        for (String origin : BOOKS) {
+            char[] input = readLineToString("../resources/fileToTest/" + origin).toCharArray();
+
+            long boxedStartTime = System.nanoTime();
+            Map<Character, Long> frequency = new HashMap<>();
+            for (char character : input) {
+                frequency.put(character, frequency.getOrDefault(character, 0L) + 1);
+            }
+            long boxedTime = System.nanoTime() - boxedStartTime;
+
+            long primitiveStartTime = System.nanoTime();
+            long[] counts = Histogram.countParallel(input, 0, input.length, pool);
+            long primitiveTime = System.nanoTime() - primitiveStartTime;
+
+            boolean same = true;
+            for (int character = 0; character < counts.length; character++) {
+                same &= counts[character] == frequency.getOrDefault((char) character, 0L);
+            }
+            System.out.println("Histogram of " + origin + ": " + (same ? "same counts" : "DIFFERENT counts")
+                    + ", speedup " + (double) boxedTime / primitiveTime + "x");
+
+            // a short prefix goes through the tables sized to its characters, and counting the book again on this
+            // thread must not carry over the counts of the reused histogram
+            int prefixLength = Math.min(1000, input.length);
+            Map<Character, Long> prefixFrequency = new HashMap<>();
+            for (int i = 0; i < prefixLength; i++) {
+                prefixFrequency.put(input[i], prefixFrequency.getOrDefault(input[i], 0L) + 1);
+            }
+            long[] prefixCounts = Histogram.count(input, 0, prefixLength);
+            boolean prefixSame = true;
+            for (int character = 0; character < prefixCounts.length; character++) {
+                prefixSame &= prefixCounts[character] == prefixFrequency.getOrDefault((char) character, 0L);
+            }
+            prefixSame &= prefixCounts.length == 1 + prefixFrequency.keySet().stream().mapToInt(character -> character).max().orElse(-1);
+            boolean repeatSame = Arrays.equals(Histogram.count(input, 0, input.length), Histogram.count(input, 0, input.length))
+                    && Arrays.equals(Histogram.count(input, 0, input.length), counts);
+            System.out.println("Histogram of the first " + prefixLength + " characters and repeated counts of " + origin + ": "
+                    + (prefixSame && repeatSame ? "same counts" : "DIFFERENT counts"));
+            System.out.println("");
+        }
+        pool.shutdown();
+    }
+
+    public static void testMappedBooks() {
+        for (String origin : BOOKS) {
+            String destination = "(mapped)" + origin + ".bin";
+            String output = "(mapped-decompressed)" + origin;
+            HuffmanCoding.huffmanCompressStream(origin, destination, true);
+            HuffmanCoding.huffmanDecompress(destination, output, true);
+            try {
+                boolean identical = Arrays.equals(Files.readAllBytes(Paths.get("../resources/fileToTest/" + origin)),
+                        Files.readAllBytes(Paths.get("../out/" + output)));
+                System.out.println("Memory-mapped round trip of " + origin + ": " + (identical ? "identical" : "DIFFERENT"));
+
+                // reading through small windows so that characters are split across window boundaries
+                StringBuilder mapped = new StringBuilder();
+                try (Reader reader = new MappedFileReader(Paths.get("../resources/fileToTest/" + origin), 4096)) {
+                    char[] buffer = new char[1000];
+                    int read;
+                    while ((read = reader.read(buffer)) != -1) {
+                        mapped.append(buffer, 0, read);
+                    }
+                }
+                String streamed = new String(Files.readAllBytes(Paths.get("../resources/fileToTest/" + origin)), StandardCharsets.UTF_8);
+                System.out.println("Memory-mapped reader of " + origin + ": " + (streamed.contentEquals(mapped) ? "same characters" : "DIFFERENT characters"));
+
+                // decoding through windows smaller than one checkpoint interval and spanning several of them
+                try (FileChannel channel = FileChannel.open(Paths.get("../out/" + destination))) {
+                    ByteBuffer headerData = HuffmanCoding.readRegion(channel, 0, Math.min(channel.size(), HuffmanHeader.MAX_SIZE), true);
+                    HuffmanHeader header = HuffmanHeader.read(headerData);
+                    boolean same = true;
+                    for (long windowSize : new long[] {4096, 100000}) {
+                        StringWriter windowed = new StringWriter();
+                        HuffmanCoding.decodeWindows(channel, header, header.decoder(), headerData.position(), windowed, windowSize);
+                        same &= streamed.contentEquals(windowed.getBuffer());
+                    }
+                    System.out.println("Memory-mapped windows of " + origin + ": " + (same ? "same characters" : "DIFFERENT characters"));
+                }
+                System.out.println("");
+            }
+            catch (Exception e) {}
+        }
+    }
+
+    public static void testRangeBooks() {
+        Random random = new Random(42);
+        for (String origin : BOOKS) {
+            String stream = "(range-stream)" + origin + ".bin";
+            String blocks = "(range-blocks)" + origin + ".bin";
+            HuffmanCoding.huffmanCompressStream(origin, stream);
+            HuffmanCoding.huffmanCompressParallel(origin, blocks, 2, 1 << 16);
+            try (FileChannel streamChannel = FileChannel.open(Paths.get("../out/" + stream));
+                 FileChannel blocksChannel = FileChannel.open(Paths.get("../out/" + blocks))) {
+                String text = new String(Files.readAllBytes(Paths.get("../resources/fileToTest/" + origin)), StandardCharsets.UTF_8);
+
+                // ranges at the start and the end, across checkpoints and blocks, and at random
+                long[][] ranges = new long[][] {{0, 100}, {text.length() - 100, 100}, {SeekIndex.DEFAULT_INTERVAL - 50, 100},
+                        {0, text.length()}, {text.length(), 0}, {random.nextInt(text.length() - 1000), 1000}};
+                boolean same = true;
+                long rangeTime = 0;
+                for (long[] range : ranges) {
+                    String expected = text.substring((int) range[0], (int) (range[0] + range[1]));
+                    long rangeStartTime = System.nanoTime();
+                    same &= expected.equals(new String(HuffmanCoding.decompressRange(streamChannel, range[0], (int) range[1])));
+                    rangeTime += System.nanoTime() - rangeStartTime;
+                    same &= expected.equals(new String(HuffmanCoding.decompressRange(blocksChannel, range[0], (int) range[1])));
+                }
+                System.out.println("Range decompression of " + origin + ": " + (same ? "same characters" : "DIFFERENT characters")
+                        + ", " + rangeTime / ranges.length / 1000 + "us per range");
+
+                // ranges running past the end and empty ranges starting past it, in both formats
+                int rejected = 0;
+                for (FileChannel channel : new FileChannel[] {streamChannel, blocksChannel}) {
+                    for (long[] range : new long[][] {{text.length() - 10, 11}, {text.length() + 1, 0}}) {
+                        try {
+                            HuffmanCoding.decompressRange(channel, range[0], (int) range[1]);
+                        }
+                        catch (IllegalArgumentException exception) {
+                            rejected++;
+                        }
+                    }
+                }
+                System.out.println("Range past the end of " + origin + ": " + (rejected == 4 ? "rejected" : "NOT rejected"));
+                System.out.println("");
+            }
+            catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public static void testLengthLimitBooks() {
+        for (String origin : BOOKS) {
+            for (int maxCodeLength : new int[] {11, 12, 15}) {
+                String destination = "(limit" + maxCodeLength + ")" + origin + ".bin";
+                String output = "(limit" + maxCodeLength + "-decompressed)" + origin;
+                HuffmanCoding.huffmanCompressStream(origin, destination, false, maxCodeLength);
+                HuffmanCoding.huffmanDecompress(destination, output);
+                try {
+                    boolean identical = Arrays.equals(Files.readAllBytes(Paths.get("../resources/fileToTest/" + origin)),
+                            Files.readAllBytes(Paths.get("../out/" + output)));
+                    System.out.println("Round trip of " + origin + " with codes of at most " + maxCodeLength + " bits: " + (identical ? "identical" : "DIFFERENT"));
+                    System.out.println("");
+                }
+                catch (Exception e) {}
+            }
+        }
+    }
+
+    public static void testLengthLimitFibonacci() {
+        // Fibonacci counts give the deepest possible Huffman Tree, one level per character
+        long[] counts = new long[CodeTable.ALPHABET_SIZE];
+        long previous = 1;
+        long current = 1;
+        for (int character = 'a'; character < 'a' + 60; character++) {
+            counts[character] = current;
+            long next = previous + current;
+            previous = current;
+            current = next;
+        }
+
+        for (int maxCodeLength : new int[] {6, 11, 20, HuffmanDecoder.MAX_CODE_LENGTH}) {
+            CodeTable codeTable = HuffmanCoding.buildCodeTable(counts, maxCodeLength);
+            // a complete prefix code fills the Kraft sum exactly
+            double kraft = 0;
+            for (int length : codeTable.lengths) {
+                kraft += length == 0 ? 0 : Math.pow(2, -length);
+            }
+            long bits = PackageMerge.encodedBits(counts, codeTable);
+            boolean valid = codeTable.maxLength() <= maxCodeLength && kraft == 1 && bits >= PackageMerge.huffmanBits(counts);
+            System.out.println("Fibonacci counts with codes of at most " + maxCodeLength + " bits: " + (valid ? "valid" : "INVALID")
+                    + ", size cost " + (double) (bits - PackageMerge.huffmanBits(counts)) / PackageMerge.huffmanBits(counts) * 100 + "%");
+        }
+
+        // the limit is optimal: equal to the Huffman code when the tree is shallow enough
+        long[] small = new long[CodeTable.ALPHABET_SIZE];
+        small['a'] = 10;
+        small['b'] = 6;
+        small['c'] = 2;
+        small['d'] = 1;
+        small['e'] = 1;
+        long[] weights = {1, 1, 2, 6, 10};
+        int[] lengths = PackageMerge.codeLengths(weights, 15);
+        long packageMergeBits = 0;
+        for (int i = 0; i < weights.length; i++) {
+            packageMergeBits += weights[i] * lengths[i];
+        }
+        System.out.println("Package-merge without an active limit matches Huffman: "
+                + (packageMergeBits == PackageMerge.huffmanBits(small) ? "same size" : "DIFFERENT size"));
+        System.out.println("Package-merge limited to 3 bits: " + PackageMerge.encodedBits(small, HuffmanCoding.buildCodeTable(small, 3)) + " bits, expected 40");
+
+        boolean rejected = false;
+        try {
+            HuffmanCoding.buildCodeTable(counts, 5);
+        }
+        catch (IllegalArgumentException exception) {
+            rejected = true;
+        }
+        System.out.println("60 characters in codes of at most 5 bits: " + (rejected ? "rejected" : "NOT rejected"));
+
+        // 32810 characters with codes of up to 57 bits leave 47 bits of every code next to its index in the
+        // packed sort of the decoder: codes of 1 to 42 bits, then 32768 codes of 57 bits that share their first
+        // 47 bits by 1024, handed over shuffled so that those codes must still be put in order
+        int chain = 42;
+        CodeTable wideTable = new CodeTable(chain + (1 << (HuffmanDecoder.MAX_CODE_LENGTH - chain)));
+        for (int character = 0; character < wideTable.lengths.length; character++) {
+            wideTable.lengths[character] = character < chain ? character + 1 : HuffmanDecoder.MAX_CODE_LENGTH;
+        }
+        wideTable.assignCanonicalCodes();
+        int[] wideSymbols = wideTable.symbols();
+        char[] wideInput = new char[wideSymbols.length * 2];
+        for (int i = 0; i < wideInput.length; i++) {
+            wideInput[i] = (char) wideSymbols[(i * 7) % wideSymbols.length];
+        }
+        boolean wideDecoded = false;
+        try {
+            ByteArrayOutputStream wideBytes = new ByteArrayOutputStream();
+            BlockCompressor.encodeStream(wideInput, 0, wideInput.length, wideTable, wideBytes);
+            int[] shuffled = wideSymbols.clone();
+            Random random = new Random(42);
+            for (int i = shuffled.length - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int symbol = shuffled[i];
+                shuffled[i] = shuffled[j];
+                shuffled[j] = symbol;
+            }
+            char[] wideOutput = new char[wideInput.length];
+            long end = new HuffmanDecoder(shuffled, wideTable.codes, wideTable.lengths).decode(ByteBuffer.wrap(wideBytes.toByteArray()), 0,
+                    (long) wideBytes.size() * Byte.SIZE, wideOutput, 0, wideOutput.length);
+            wideDecoded = end >= 0 && Arrays.equals(wideInput, wideOutput);
+        }
+        catch (IOException exception) {
+            exception.printStackTrace();
+        }
+        System.out.println(wideSymbols.length + " characters with codes of up to " + wideTable.maxLength() + " bits: " + (wideDecoded ? "identical" : "DIFFERENT"));
+        System.out.println("");
+    }
+
+    public static void testInterleavedBooks() {
+        for (String origin : BOOKS) {
+            String destination = "(interleaved)" + origin + ".bin";
+            String output = "(interleaved-decompressed)" + origin;
+            HuffmanCoding.huffmanCompressParallel(origin, destination, 2, BlockCompressor.DEFAULT_BLOCK_SIZE, false, true);
+            HuffmanCoding.huffmanDecompress(destination, output);
+            try {
+                boolean identical = Arrays.equals(Files.readAllBytes(Paths.get("../resources/fileToTest/" + origin)),
+                        Files.readAllBytes(Paths.get("../out/" + output)));
+                System.out.println("Interleaved round trip of " + origin + ": " + (identical ? "identical" : "DIFFERENT"));
+
+                // decoding the whole book as one block, single stream against 4 streams, best of several runs
+                char[] input = new String(Files.readAllBytes(Paths.get("../resources/fileToTest/" + origin)), StandardCharsets.UTF_8).toCharArray();
+                byte[] single = BlockCompressor.encodeBlock(input, input.length, false);
+                byte[] interleaved = BlockCompressor.encodeBlock(input, input.length, true);
+                long singleTime = Long.MAX_VALUE;
+                long interleavedTime = Long.MAX_VALUE;
+                for (int run = 0; run < 20; run++) {
+                    long startTime = System.nanoTime();
+                    BlockCompressor.decodeBlock(ByteBuffer.wrap(single), input.length, BlockCompressor.VERSION);
+                    singleTime = Math.min(singleTime, System.nanoTime() - startTime);
+                    startTime = System.nanoTime();
+                    BlockCompressor.decodeBlock(ByteBuffer.wrap(interleaved), input.length, BlockCompressor.VERSION);
+                    interleavedTime = Math.min(interleavedTime, System.nanoTime() - startTime);
+                }
+                System.out.println("Interleaved decode of " + origin + ": " + (double) singleTime / interleavedTime + "x speedup, "
+                        + (interleaved.length - single.length) + " bytes larger");
+                System.out.println("");
+            }
+            catch (Exception e) {}
+        }
+
+        // blocks shorter than 4 characters leave some of the streams empty
+        boolean same = true;
+        try {
+            char[] input = "abcabcaab".toCharArray();
+            for (int length = 0; length <= input.length; length++) {
+                byte[] block = BlockCompressor.encodeBlock(input, length, true);
+                char[] decoded = BlockCompressor.decodeBlock(ByteBuffer.wrap(block), length, BlockCompressor.VERSION);
+                same &= Arrays.equals(Arrays.copyOf(input, length), decoded);
+            }
+        }
+        catch (Exception e) {
+            same = false;
+        }
+        System.out.println("Interleaved blocks of 0 to 9 characters: " + (same ? "same characters" : "DIFFERENT characters"));
+        System.out.println("");
+    }
+
+    public static void testCodeLengthsBooks() {
+        for (String origin : BOOKS) {
+            try {
+                char[] input = new String(Files.readAllBytes(Paths.get("../resources/fileToTest/" + origin)), StandardCharsets.UTF_8).toCharArray();
+                long[] counts = Histogram.count(input, 0, input.length);
+
+                // the in-place lengths must give the size of a Huffman code and a complete prefix code
+                CodeTable codeTable = HuffmanCoding.buildCodeTable(counts);
+                double kraft = 0;
+                for (int length : codeTable.lengths) {
+                    kraft += length == 0 ? 0 : Math.pow(2, -length);
+                }
+                boolean optimal = PackageMerge.encodedBits(counts, codeTable) == PackageMerge.huffmanBits(counts) && kraft == 1;
+
+                // per-file setup: from the counts to the canonical codes, best of several runs
+                long setupTime = Long.MAX_VALUE;
+                for (int run = 0; run < 50; run++) {
+                    long setupStartTime = System.nanoTime();
+                    HuffmanCoding.buildCodeTable(counts);
+                    setupTime = Math.min(setupTime, System.nanoTime() - setupStartTime);
+                }
+                System.out.println("In-place code lengths of " + origin + ": " + (optimal ? "optimal" : "NOT optimal")
+                        + ", setup " + setupTime / 1000 + "us");
+            }
+            catch (Exception e) {}
+        }
+
+        // equal counts give a balanced code
+        long[] counts = new long[CodeTable.ALPHABET_SIZE];
+        Arrays.fill(counts, 0, 256, 7);
+        CodeTable codeTable = HuffmanCoding.buildCodeTable(counts);
+        boolean balanced = true;
+        for (int character = 0; character < 256; character++) {
+            balanced &= codeTable.lengths[character] == 8;
+        }
+        System.out.println("In-place code lengths of 256 equal counts: " + (balanced ? "8 bits each" : "NOT balanced"));
+        System.out.println("");
+    }
+
+    public static void testSharedTableBooks() {
+        // training on one English book and compressing every book with it
+        int tableId = HuffmanCoding.trainSharedTable(BOOKS[0]);
+        for (String origin : BOOKS) {
+            String destination = "(shared)" + origin + ".bin";
+            String output = "(shared-decompressed)" + origin;
+            HuffmanCoding.huffmanCompressShared(origin, destination, tableId);
+            HuffmanCoding.huffmanDecompress(destination, output);
+            try {
+                // huffmanCompress reads the book line by line, so the output is compared with the lines read
+                boolean identical = Arrays.equals(readLineToString("../resources/fileToTest/" + origin).getBytes(StandardCharsets.UTF_8),
+                        Files.readAllBytes(Paths.get("../out/" + output)));
+                boolean shared = Files.readAllBytes(Paths.get("../out/" + destination))[4] == HuffmanHeader.VERSION_SHARED_TABLE;
+                System.out.println("Shared table round trip of " + origin + ": " + (identical ? "identical" : "DIFFERENT")
+                        + ", " + (shared ? "shared table" : "own table") + ", "
+                        + Files.size(Paths.get("../out/" + destination)) + " bytes");
+
+                // decompressing a range twice, the second time the table comes from the cache
+                try (FileChannel channel = FileChannel.open(Paths.get("../out/" + destination))) {
+                    long startTime = System.nanoTime();
+                    HuffmanCoding.decompressRange(channel, 0, 64);
+                    long firstTime = System.nanoTime() - startTime;
+                    startTime = System.nanoTime();
+                    HuffmanCoding.decompressRange(channel, 0, 64);
+                    System.out.println("Range setup of " + origin + ": " + firstTime / 1000 + "us then "
+                            + (System.nanoTime() - startTime) / 1000 + "us");
+                }
+                System.out.println("");
+            }
+            catch (Exception e) {}
+        }
+
+        try {
+            // training again on the same book gives the same id, training on another book whose id is taken
+            // by a table of other lengths picks another id and leaves the stored table as it was
+            int sameId = HuffmanCoding.trainSharedTable(BOOKS[0]);
+            int otherId = HuffmanCoding.trainSharedTable(BOOKS[1]);
+            Path otherTable = Paths.get(SharedTables.DIRECTORY + SharedTables.name(otherId) + ".table");
+            Files.copy(Paths.get(SharedTables.DIRECTORY + SharedTables.name(tableId) + ".table"), otherTable, StandardCopyOption.REPLACE_EXISTING);
+            byte[] taken = Files.readAllBytes(otherTable);
+            int probedId = HuffmanCoding.trainSharedTable(BOOKS[1]);
+            System.out.println("Shared table trained twice: " + (sameId == tableId ? "same id" : "NOT the same id")
+                    + ", taken id: " + (probedId != otherId && Arrays.equals(taken, Files.readAllBytes(otherTable)) ? "another id" : "NOT another id"));
+
+            // a file whose stored checksum does not match the stored table is refused
+            String destination = "(shared)" + BOOKS[0] + ".bin";
+            byte[] compressed = Files.readAllBytes(Paths.get("../out/" + destination));
+            compressed[21] ^= 1;
+            Files.write(Paths.get("../out/(shared-checksum)" + BOOKS[0] + ".bin"), compressed);
+            boolean refused = HuffmanCoding.huffmanDecompress("(shared-checksum)" + BOOKS[0] + ".bin", "(shared-checksum-decompressed)" + BOOKS[0]) == null;
+            System.out.println("Shared table checksum mismatch: " + (refused ? "refused" : "NOT refused"));
+            System.out.println("");
         }
         catch (Exception e) {}
     }
 
+    public static void testAdaptiveBooks() {
+        for (String origin : BOOKS) {
+            String destination = "(adaptive)" + origin + ".bin";
+            String output = "(adaptive-decompressed)" + origin;
+            HuffmanCoding.huffmanCompressAdaptive(origin, destination, AdaptiveCompressor.DEFAULT_CHUNK_SIZE);
+            HuffmanCoding.huffmanDecompress(destination, output);
+            HuffmanCoding.huffmanCompressStream(origin, "(adaptive-static)" + origin + ".bin");
+            try {
+                boolean identical = Arrays.equals(Files.readAllBytes(Paths.get("../resources/fileToTest/" + origin)),
+                        Files.readAllBytes(Paths.get("../out/" + output)));
+                System.out.println("Adaptive round trip of " + origin + ": " + (identical ? "identical" : "DIFFERENT") + ", "
+                        + Files.size(Paths.get("../out/" + destination)) + " bytes against "
+                        + Files.size(Paths.get("../out/(adaptive-static)" + origin + ".bin")) + " bytes in two passes");
+                System.out.println("");
+            }
+            catch (Exception e) {}
+        }
+
+        // the first line written into a pipe must come out compressed before the pipe is closed
+        try {
+            PipedWriter pipe = new PipedWriter();
+            PipedReader reader = new PipedReader(pipe, 1 << 16);
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            Thread compressor = new Thread(() -> {
+                try {
+                    new AdaptiveCompressor(AdaptiveCompressor.DEFAULT_CHUNK_SIZE).compress(reader, compressed);
+                }
+                catch (IOException e) {}
+            });
+            compressor.start();
+
+            String line = "2024-01-01 00:00:00 INFO request served\n";
+            long startTime = System.nanoTime();
+            pipe.write(line);
+            pipe.flush();
+            while (compressed.size() <= 5 && System.nanoTime() - startTime < 5000000000L) {
+                Thread.sleep(1);
+            }
+            long firstChunkTime = System.nanoTime() - startTime;
+            boolean early = compressed.size() > 5;
+
+            StringBuilder sent = new StringBuilder(line);
+            for (int i = 0; i < 1000; i++) {
+                sent.append(line);
+                pipe.write(line);
+            }
+            pipe.close();
+            compressor.join();
+
+            StringWriter decompressed = new StringWriter();
+            AdaptiveCompressor.decompress(new ByteArrayInputStream(compressed.toByteArray()), decompressed);
+            System.out.println("Adaptive pipe: first line " + (early ? "written after " + firstChunkTime / 1000 + "us" : "NOT written before the end")
+                    + ", " + (sent.toString().equals(decompressed.toString()) ? "identical" : "DIFFERENT"));
+        }
+        catch (Exception e) {
+            System.out.println("Adaptive pipe: FAILED with " + e);
+        }
+
+        // a book written into a pipe one line at a time, waiting for every line to come out as a chunk of its own
+        String origin = "book_Oliver_Twist(ENG).txt";
+        try {
+            String book = new String(Files.readAllBytes(Paths.get("../resources/fileToTest/" + origin)), StandardCharsets.UTF_8);
+            PipedWriter pipe = new PipedWriter();
+            PipedReader reader = new PipedReader(pipe, 1 << 16);
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            Thread compressor = new Thread(() -> {
+                try {
+                    new AdaptiveCompressor(AdaptiveCompressor.DEFAULT_CHUNK_SIZE).compress(reader, compressed);
+                }
+                catch (IOException e) {}
+            });
+            compressor.start();
+
+            int lines = 0;
+            for (int start = 0; start < book.length(); lines++) {
+                int end = book.indexOf('\n', start) + 1;
+                end = end == 0 ? book.length() : end;
+                int size = compressed.size();
+                pipe.write(book, start, end - start);
+                pipe.flush();
+                while (compressed.size() == size && compressor.isAlive()) {
+                    Thread.yield();
+                }
+                start = end;
+            }
+            pipe.close();
+            compressor.join();
+
+            StringWriter decompressed = new StringWriter();
+            AdaptiveCompressor.decompress(new ByteArrayInputStream(compressed.toByteArray()), decompressed);
+            long twoPass = Files.size(Paths.get("../out/(adaptive-static)" + origin + ".bin"));
+            double ratio = (double) compressed.size() / twoPass;
+            System.out.println("Adaptive pipe of " + origin + " at " + lines + " lines: " + (book.equals(decompressed.toString()) ? "identical" : "DIFFERENT")
+                    + ", " + compressed.size() + " bytes against " + twoPass + " bytes in two passes, "
+                    + (ratio < 1.2 ? String.format("%.1f%% larger", (ratio - 1) * 100) : String.format("NOT within 20%%, %.1f%% larger", (ratio - 1) * 100)));
+        }
+        catch (Exception e) {
+            System.out.println("Adaptive pipe of " + origin + ": FAILED with " + e);
+        }
+        System.out.println("");
+    }
+
+    public static void testBatchBooks() {
+        // compressing the whole corpus in one batch, then every file back on its own
+        try {
+            List<BatchCompressor.Result> results = new BatchCompressor(4).compress(Paths.get("../resources/fileToTest"),
+                    Paths.get("../out/batch"), System.out);
+            for (BatchCompressor.Result result : results) {
+                String name = result.origin.getFileName().toString();
+                HuffmanCoding.huffmanDecompress("batch/" + name + BatchCompressor.EXTENSION, "batch/(decompressed)" + name);
+                boolean identical = result.error == null && Arrays.equals(Files.readAllBytes(result.origin),
+                        Files.readAllBytes(Paths.get("../out/batch/(decompressed)" + name)));
+                System.out.println("Batch round trip of " + name + ": " + (identical ? "identical" : "DIFFERENT"));
+                System.out.println("");
+            }
+        }
+        catch (Exception e) {
+            System.out.println("Batch: FAILED with " + e);
+        }
+    }
+
+    public static void testMetricsBooks() {
+        // recording the JFR events of the runs to read them back afterwards
+        try (Recording recording = new Recording()) {
+            recording.enable("huffman.Phase");
+            recording.enable("huffman.Run");
+            recording.start();
+            for (String origin : BOOKS) {
+                String destination = "(metrics)" + origin + ".bin";
+                String output = "(metrics-decompressed)" + origin;
+                HuffmanMetrics compression = HuffmanCoding.huffmanCompress(origin, destination);
+                HuffmanMetrics decompression = HuffmanCoding.huffmanDecompress(destination, output);
+
+                // the phases fit in the total, a Huffman code is less than one bit per character above the entropy
+                long phases = 0;
+                for (HuffmanMetrics.Phase phase : HuffmanMetrics.Phase.values()) {
+                    phases += compression.phaseTime(phase);
+                }
+                boolean consistent = phases <= compression.totalTime()
+                        && compression.bitsPerSymbol() >= compression.entropy && compression.bitsPerSymbol() < compression.entropy + 1
+                        && compression.bytesIn == Files.size(Paths.get("../resources/fileToTest/" + origin))
+                        && compression.bytesOut == Files.size(Paths.get("../out/" + destination))
+                        && decompression.symbolCount == compression.symbolCount
+                        && decompression.encodedBits == compression.encodedBits
+                        && decompression.bytesOut == Files.size(Paths.get("../out/" + output));
+                System.out.println("Metrics of " + origin + ": " + (consistent ? "consistent" : "NOT consistent") + ", "
+                        + compression.bitsPerSymbol() + " bits per character for an entropy of " + compression.entropy);
+                System.out.println("");
+            }
+            recording.stop();
+            Path file = Paths.get("../out/metrics.jfr");
+            recording.dump(file);
+
+            int phaseEvents = 0;
+            int runEvents = 0;
+            for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+                phaseEvents += event.getEventType().getName().equals("huffman.Phase") ? 1 : 0;
+                runEvents += event.getEventType().getName().equals("huffman.Run") ? 1 : 0;
+            }
+            System.out.println("JFR events: " + runEvents + " runs and " + phaseEvents + " phases"
+                    + (runEvents == 2 * BOOKS.length ? "" : ", NOT one run per compression and decompression"));
+        }
+        catch (Exception e) {
+            System.out.println("Metrics: FAILED with " + e);
+        }
+        System.out.println("");
+    }
+
+    public static void testContextBooks() {
+        for (String origin : BOOKS) {
+            String destination = "(context)" + origin + ".bin";
+            String output = "(context-decompressed)" + origin;
+            HuffmanMetrics metrics = HuffmanCoding.huffmanCompressContext(origin, destination);
+            HuffmanCoding.huffmanDecompress(destination, output);
+            try {
+                byte[] original = Files.readAllBytes(Paths.get("../resources/fileToTest/" + origin));
+                // the metrics count the bytes read and written as they go, they must match the files
+                boolean identical = Arrays.equals(original, Files.readAllBytes(Paths.get("../out/" + output)))
+                        && metrics != null && metrics.bytesIn == original.length && metrics.bytesOut == Files.size(Paths.get("../out/" + destination));
+
+                // comparing the size and the speed with a single table, best of 5 runs each
+                char[] input = new String(original, StandardCharsets.UTF_8).toCharArray();
+                byte[] block = BlockCompressor.encodeBlock(input, input.length, false);
+                byte[] context = Files.readAllBytes(Paths.get("../out/" + destination));
+                long blockEncode = Long.MAX_VALUE;
+                long blockDecode = Long.MAX_VALUE;
+                long contextEncode = Long.MAX_VALUE;
+                long contextDecode = Long.MAX_VALUE;
+                for (int i = 0; i < 5; i++) {
+                    long startTime = System.nanoTime();
+                    BlockCompressor.encodeBlock(input, input.length, false);
+                    blockEncode = Math.min(blockEncode, System.nanoTime() - startTime);
+                    startTime = System.nanoTime();
+                    BlockCompressor.decodeBlock(ByteBuffer.wrap(block), input.length, BlockCompressor.VERSION);
+                    blockDecode = Math.min(blockDecode, System.nanoTime() - startTime);
+                    startTime = System.nanoTime();
+                    ContextCompressor.compress(input, input.length, new ByteArrayOutputStream(context.length));
+                    contextEncode = Math.min(contextEncode, System.nanoTime() - startTime);
+                    startTime = System.nanoTime();
+                    ContextCompressor.decompress(ByteBuffer.wrap(context));
+                    contextDecode = Math.min(contextDecode, System.nanoTime() - startTime);
+                }
+                System.out.println("Context round trip of " + origin + ": " + (identical ? "identical" : "DIFFERENT") + ", "
+                        + context.length + " bytes against " + block.length + " bytes with one table ("
+                        + String.format("%.1f", 100.0 * (block.length - context.length) / block.length) + "% smaller), encoding "
+                        + String.format("%.2f", (double) contextEncode / blockEncode) + "x and decoding "
+                        + String.format("%.2f", (double) contextDecode / blockDecode) + "x the time");
+                System.out.println("");
+            }
+            catch (Exception e) {
+                System.out.println("Context round trip of " + origin + ": FAILED with " + e);
+            }
+        }
+    }
+
+    public static void testTransformBooks() {
+        for (String origin : BOOKS) {
+            String destination = "(transform)" + origin + ".bin";
+            String output = "(transform-decompressed)" + origin;
+            HuffmanCoding.huffmanCompressParallel(origin, destination, 2, BlockCompressor.DEFAULT_BLOCK_SIZE, false, false, TransformPipeline.parse("all"));
+            HuffmanCoding.huffmanDecompress(destination, output);
+            try {
+                boolean identical = Arrays.equals(Files.readAllBytes(Paths.get("../resources/fileToTest/" + origin)),
+                        Files.readAllBytes(Paths.get("../out/" + output)));
+                System.out.println("Transform round trip of " + origin + ": " + (identical ? "identical" : "DIFFERENT"));
+                System.out.println("");
+            }
+            catch (Exception e) {}
+        }
+
+        // a Fibonacci word, like the fib41 dataset, and a book repeated with a few changes, like rs.13 and world_leaders
+        StringBuilder previous = new StringBuilder("a");
+        StringBuilder fibonacci = new StringBuilder("ab");
+        while (fibonacci.length() < 1 << 20) {
+            String next = fibonacci.toString() + previous;
+            previous = fibonacci;
+            fibonacci = new StringBuilder(next);
+        }
+        StringBuilder repeated = new StringBuilder();
+        try {
+            String book = new String(Files.readAllBytes(Paths.get("../resources/fileToTest/" + BOOKS[0])), StandardCharsets.UTF_8);
+            Random random = new Random(42);
+            while (repeated.length() < 1 << 20) {
+                repeated.append(book, 0, book.length() / 4).setCharAt(repeated.length() - 1 - random.nextInt(1000), '#');
+            }
+        }
+        catch (IOException e) {}
+
+        // every combination of stages must round trip, and each should shrink the repetitive inputs further
+        String[] pipelines = {"none", "bwt", "mtf", "zero-run", "bwt,mtf", "bwt,zero-run", "mtf,zero-run", "all"};
+        Map<String, char[]> inputs = new HashMap<>();
+        inputs.put("Fibonacci word", fibonacci.toString().toCharArray());
+        inputs.put("repeated book", repeated.toString().toCharArray());
+        for (Map.Entry<String, char[]> input : inputs.entrySet()) {
+            char[] characters = input.getValue();
+            StringBuilder sizes = new StringBuilder();
+            boolean identical = true;
+            try {
+                for (String pipeline : pipelines) {
+                    byte[] block = BlockCompressor.encodeBlock(characters, characters.length, false, TransformPipeline.parse(pipeline));
+                    identical &= Arrays.equals(characters, BlockCompressor.decodeBlock(ByteBuffer.wrap(block), characters.length, BlockCompressor.VERSION));
+                    sizes.append(sizes.length() == 0 ? "" : ", ").append(pipeline).append(' ').append(block.length);
+                }
+                System.out.println("Transforms of the " + input.getKey() + " (" + characters.length + " characters): "
+                        + (identical ? "identical" : "DIFFERENT") + ", " + sizes + " bytes");
+            }
+            catch (IOException e) {
+                System.out.println("Transforms of the " + input.getKey() + ": FAILED with " + e);
+            }
+        }
+
+        // characters with no room above them skip the zero run stage, but still round trip
+        char[] edge = {Character.MAX_VALUE, 0, 0, 0, Character.MAX_VALUE, 'a'};
+        try {
+            byte[] block = BlockCompressor.encodeBlock(edge, edge.length, true, TransformPipeline.parse("all"));
+            System.out.println("Transforms of the largest character: "
+                    + (Arrays.equals(edge, BlockCompressor.decodeBlock(ByteBuffer.wrap(block), edge.length, BlockCompressor.VERSION)) ? "identical" : "DIFFERENT"));
+        }
+        catch (IOException e) {
+            System.out.println("Transforms of the largest character: FAILED with " + e);
+        }
+        System.out.println("");
+    }
+
+    public static void testBytesBooks() {
+        for (String origin : BOOKS) {
+            String destination = "(bytes)" + origin + ".bin";
+            String output = "(bytes-decompressed)" + origin;
+            HuffmanMetrics compression = HuffmanCoding.huffmanCompressBytes(origin, destination);
+            HuffmanMetrics decompression = HuffmanCoding.huffmanDecompress(destination, output);
+            try {
+                boolean identical = Arrays.equals(Files.readAllBytes(Paths.get("../resources/fileToTest/" + origin)),
+                        Files.readAllBytes(Paths.get("../out/" + output)));
+                System.out.println("Byte round trip of " + origin + ": " + (identical ? "identical" : "DIFFERENT") + ", "
+                        + compression.bytesOut + " bytes with " + compression.codeCount + " codes, decoded at "
+                        + decompression.throughput() + " MB/s");
+                System.out.println("");
+            }
+            catch (Exception e) {}
+        }
+
+        // binary data and Windows line endings, which the character engine cannot carry, must come back byte for byte
+        Random random = new Random(42);
+        byte[] binary = new byte[1 << 20];
+        for (int i = 0; i < binary.length; i++) {
+            binary[i] = (byte) (random.nextInt(8) == 0 ? random.nextInt(256) : random.nextInt(16));
+        }
+        byte[] crlf = "first line\r\nsecond line\r\n\r\nno line ending at the end \u00e9".getBytes(StandardCharsets.UTF_8);
+        byte[][] inputs = {binary, crlf, new byte[0], {7}};
+        String[] names = {"binary data", "CRLF text", "empty file", "single byte"};
+        for (int input = 0; input < inputs.length; input++) {
+            try {
+                Path origin = Paths.get("../out/(bytes-input)" + input);
+                Path destination = Paths.get("../out/(bytes-input)" + input + ".bin");
+                Files.write(origin, inputs[input]);
+                long[] counts = ByteCompressor.count(origin);
+                CodeTable codeTable = ByteCompressor.buildCodeTable(counts);
+                try (OutputStream output = Files.newOutputStream(destination)) {
+                    ByteCompressor.compress(origin, output, codeTable, inputs[input].length);
+                }
+                ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+                try (FileChannel channel = FileChannel.open(destination)) {
+                    ByteCompressor.decompress(channel, decompressed, false, new HuffmanMetrics("decompress", names[input]));
+                }
+                System.out.println("Byte round trip of the " + names[input] + ": "
+                        + (Arrays.equals(inputs[input], decompressed.toByteArray()) ? "identical" : "DIFFERENT")
+                        + ", " + Files.size(destination) + " bytes, longest code " + codeTable.maxLength() + " bits");
+            }
+            catch (IOException e) {
+                System.out.println("Byte round trip of the " + names[input] + ": FAILED with " + e);
+            }
+        }
+        System.out.println("");
+    }
+
+    public static void testStoredBlocks() {
+        // characters spread evenly over the whole alphabet cannot be coded shorter, so the block is stored
+        Random random = new Random(7);
+        char[] uniform = new char[1 << 16];
+        for (int i = 0; i < uniform.length; i++) {
+            uniform[i] = (char) random.nextInt(CodeTable.ALPHABET_SIZE);
+        }
+        char[] run = new char[100000];
+        Arrays.fill(run, 'z');
+        char[] text = "the quick brown fox jumps over the lazy dog, again and again and again".toCharArray();
+        char[][] inputs = {uniform, run, text};
+        String[] names = {"uniform characters", "single character", "short text"};
+        for (int input = 0; input < inputs.length; input++) {
+            char[] characters = inputs[input];
+            try {
+                byte[] block = BlockCompressor.encodeBlock(characters, characters.length, false);
+                byte[] interleaved = BlockCompressor.encodeBlock(characters, characters.length, true);
+                boolean identical = Arrays.equals(characters, BlockCompressor.decodeBlock(ByteBuffer.wrap(block), characters.length, BlockCompressor.VERSION))
+                        && Arrays.equals(characters, BlockCompressor.decodeBlock(ByteBuffer.wrap(interleaved), characters.length, BlockCompressor.VERSION));
+                long storedSize = BlockCompressor.storedSize(characters, characters.length);
+                boolean bounded = block.length <= storedSize && interleaved.length <= storedSize;
+                System.out.println("Block of " + names[input] + ": " + (identical ? "identical" : "DIFFERENT") + ", type " + block[0]
+                        + ", " + block.length + " bytes for " + characters.length + " characters, "
+                        + (bounded ? "within" : "NOT within") + " the stored size");
+            }
+            catch (IOException e) {
+                System.out.println("Block of " + names[input] + ": FAILED with " + e);
+            }
+        }
+
+        // ASCII text that coding would shrink by less than the margin is stored in one byte per character
+        char[] ascii = new char[1 << 16];
+        for (int i = 0; i < ascii.length; i++) {
+            ascii[i] = (char) random.nextInt(128);
+        }
+        // the halves of a surrogate pair split by the end of a block come back as they were
+        char[] split = {'a', '\u00e9', '\u4e2d', '\ud83d'};
+        char[] rest = {'\ude00', 'b'};
+        try {
+            byte[] block = BlockCompressor.encodeBlock(ascii, ascii.length, false, 0.2);
+            boolean identical = Arrays.equals(ascii, BlockCompressor.decodeBlock(ByteBuffer.wrap(block), ascii.length, BlockCompressor.VERSION));
+            System.out.println("Block of random ASCII with a 20% margin: " + (identical ? "identical" : "DIFFERENT") + ", type " + block[0]
+                    + ", " + block.length + " bytes for " + ascii.length + " characters");
+            byte[] first = BlockCompressor.storeBlock(split, split.length);
+            byte[] second = BlockCompressor.storeBlock(rest, rest.length);
+            identical = Arrays.equals(split, BlockCompressor.decodeBlock(ByteBuffer.wrap(first), split.length, BlockCompressor.VERSION))
+                    && Arrays.equals(rest, BlockCompressor.decodeBlock(ByteBuffer.wrap(second), rest.length, BlockCompressor.VERSION));
+            System.out.println("Stored blocks of a split surrogate pair: " + (identical ? "identical" : "DIFFERENT") + ", "
+                    + (first.length - 1 + second.length - 1) + " bytes for 6 characters");
+        }
+        catch (IOException e) {
+            System.out.println("Stored ASCII block: FAILED with " + e);
+        }
+
+        // a book that coding shrinks by less than a 50% margin is stored, at about the size of its UTF-8 bytes
+        String book = BOOKS[0];
+        HuffmanCoding.huffmanCompress(book, "(stored)" + book + ".bin", HuffmanDecoder.MAX_CODE_LENGTH, 0.5);
+        HuffmanCoding.huffmanDecompress("(stored)" + book + ".bin", "(stored-decompressed)" + book);
+        try {
+            byte[] lines = readLineToString("../resources/fileToTest/" + book).getBytes(StandardCharsets.UTF_8);
+            long size = Files.size(Paths.get("../out/(stored)" + book + ".bin"));
+            System.out.println("Stored book with a 50% margin: "
+                    + (Arrays.equals(lines, Files.readAllBytes(Paths.get("../out/(stored-decompressed)" + book))) ? "identical" : "DIFFERENT")
+                    + ", " + size + " bytes for " + lines.length + (size <= lines.length * 1.01 ? "" : ", NOT within 1% of them"));
+        }
+        catch (IOException e) {
+            System.out.println("Stored book with a 50% margin: FAILED with " + e);
+        }
+
+        // random bytes are stored as they are behind a 13 byte header, and copied straight back
+        byte[] bytes = new byte[1 << 20];
+        random.nextBytes(bytes);
+        try {
+            Path origin = Paths.get("../out/(stored-input)");
+            Path destination = Paths.get("../out/(stored-input).bin");
+            Files.write(origin, bytes);
+            long[] counts = ByteCompressor.count(origin);
+            CodeTable codeTable = ByteCompressor.buildCodeTable(counts);
+            boolean worthCoding = BlockCompressor.worthCoding(ByteCompressor.codedSize(counts, codeTable),
+                    ByteCompressor.STORED_HEADER_SIZE + bytes.length, BlockCompressor.DEFAULT_MIN_SAVING);
+            try (OutputStream output = Files.newOutputStream(destination)) {
+                ByteCompressor.store(origin, output, bytes.length);
+            }
+            ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+            try (FileChannel channel = FileChannel.open(destination)) {
+                ByteCompressor.decompress(channel, decompressed, false, new HuffmanMetrics("decompress", "random bytes"));
+            }
+            System.out.println("Stored random bytes: " + (Arrays.equals(bytes, decompressed.toByteArray()) ? "identical" : "DIFFERENT")
+                    + ", " + (worthCoding ? "NOT stored, coding was estimated to pay" : "coding was estimated not to pay")
+                    + ", " + Files.size(destination) + " bytes for " + bytes.length);
+        }
+        catch (IOException e) {
+            System.out.println("Stored random bytes: FAILED with " + e);
+        }
+        System.out.println("");
+    }
+
+    public static void testAppendBooks() {
+        // compressing the first third of every book, appending the rest in two parts and reading it all back
+        for (String origin : BOOKS) {
+            try {
+                String text = new String(Files.readAllBytes(Paths.get("../resources/fileToTest/" + origin)), StandardCharsets.UTF_8);
+                Path destination = Paths.get("../out/(append)" + origin + ".bin");
+                BlockCompressor blockCompressor = new BlockCompressor(1 << 16, 2);
+                int first = text.length() / 3;
+                int second = 2 * text.length() / 3;
+                try (OutputStream output = Files.newOutputStream(destination)) {
+                    blockCompressor.compress(new StringReader(text.substring(0, first)), output);
+                }
+                long appended = 0;
+                try (FileChannel channel = FileChannel.open(destination, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    appended += blockCompressor.append(new StringReader(text.substring(first, second)), channel);
+                    appended += blockCompressor.append(new StringReader(text.substring(second)), channel);
+                }
+
+                ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+                char[] range;
+                try (FileChannel channel = FileChannel.open(destination)) {
+                    blockCompressor.decompress(channel, decompressed, false);
+                    range = blockCompressor.decompressRange(channel, first - 100, 200);
+                }
+                ByteArrayOutputStream whole = new ByteArrayOutputStream();
+                blockCompressor.compress(new StringReader(text), whole);
+                boolean identical = text.equals(new String(decompressed.toByteArray(), StandardCharsets.UTF_8))
+                        && text.substring(first - 100, first + 100).equals(new String(range));
+                System.out.println("Append round trip of " + origin + ": " + (identical ? "identical" : "DIFFERENT") + ", "
+                        + appended + " characters appended, " + reusedBlocks(destination) + " blocks reusing a table, "
+                        + Files.size(destination) + " bytes against " + whole.size() + " compressed at once");
+
+                // dropping the indexes the two appends left behind
+                Path compacted = Paths.get("../out/(append-compacted)" + origin + ".bin");
+                long unused;
+                try (FileChannel channel = FileChannel.open(destination);
+                     OutputStream output = Files.newOutputStream(compacted)) {
+                    unused = BlockCompressor.unusedBytes(channel);
+                    BlockCompressor.compact(channel, output);
+                }
+                decompressed.reset();
+                try (FileChannel channel = FileChannel.open(compacted)) {
+                    blockCompressor.decompress(channel, decompressed, false);
+                    identical = text.equals(new String(decompressed.toByteArray(), StandardCharsets.UTF_8))
+                            && BlockCompressor.unusedBytes(channel) == 0 && Files.size(compacted) == Files.size(destination) - unused;
+                }
+                System.out.println("Compacted append of " + origin + ": " + (identical ? "identical" : "DIFFERENT") + ", "
+                        + unused + " unused bytes dropped, " + reusedBlocks(compacted) + " blocks reusing a table");
+            }
+            catch (IOException e) {
+                System.out.println("Append round trip of " + origin + ": FAILED with " + e);
+            }
+        }
+
+        // a failed append leaves the file as it was
+        try {
+            Path destination = Paths.get("../out/(append)failed.bin");
+            BlockCompressor blockCompressor = new BlockCompressor(1 << 10, 2);
+            try (OutputStream output = Files.newOutputStream(destination)) {
+                blockCompressor.compress(new StringReader("some characters before the append"), output);
+            }
+            byte[] before = Files.readAllBytes(destination);
+            Reader failing = new Reader() {
+                private int left = 5000;
+
+                @Override
+                public int read(char[] buffer, int offset, int length) throws IOException {
+                    if (left <= 0) {
+                        throw new IOException("input failed");
+                    }
+                    int read = Math.min(length, left);
+                    Arrays.fill(buffer, offset, offset + read, 'x');
+                    left -= read;
+                    return read;
+                }
+
+                @Override
+                public void close() {}
+            };
+            boolean threw = false;
+            try (FileChannel channel = FileChannel.open(destination, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                blockCompressor.append(failing, channel);
+            }
+            catch (IOException e) {
+                threw = true;
+            }
+            System.out.println("Failed append: " + (threw && Arrays.equals(before, Files.readAllBytes(destination)) ? "file unchanged" : "file NOT restored"));
+
+            // the bytes of the file before the append are untouched while it runs, so a file cut back to its
+            // old size after a crash in the middle of an append is the file before it
+            byte[][] during = new byte[1][];
+            Random random = new Random(3);
+            Reader watched = new Reader() {
+                private int left = 100000;
+
+                @Override
+                public int read(char[] buffer, int offset, int length) throws IOException {
+                    if (left <= 0) {
+                        during[0] = Files.readAllBytes(destination);
+                        return -1;
+                    }
+                    int read = Math.min(length, left);
+                    for (int i = offset; i < offset + read; i++) {
+                        buffer[i] = (char) (0x4e00 + random.nextInt(0x5000));
+                    }
+                    left -= read;
+                    return read;
+                }
+
+                @Override
+                public void close() {}
+            };
+            try (FileChannel channel = FileChannel.open(destination, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                blockCompressor.append(watched, channel);
+            }
+            boolean untouched = during[0] != null && during[0].length > before.length
+                    && Arrays.equals(before, Arrays.copyOf(during[0], before.length));
+            System.out.println("Append in progress: " + (untouched ? "old bytes untouched" : "old bytes NOT untouched"));
+        }
+        catch (IOException e) {
+            System.out.println("Failed append: FAILED with " + e);
+        }
+
+        // appending a book twice from the command line: the first append creates the file, and the metrics
+        // count the bytes read and written as they go
+        String origin = BOOKS[0];
+        String destination = "(appended)" + origin + ".bin";
+        String output = "(appended-decompressed)" + origin;
+        try {
+            Files.deleteIfExists(Paths.get("../out/" + destination));
+            long size = Files.size(Paths.get("../resources/fileToTest/" + origin));
+            HuffmanMetrics created = HuffmanCoding.huffmanAppend(origin, destination);
+            long createdSize = Files.size(Paths.get("../out/" + destination));
+            HuffmanMetrics appended = HuffmanCoding.huffmanAppend(origin, destination);
+            long appendedSize = Files.size(Paths.get("../out/" + destination));
+            HuffmanCoding.huffmanDecompress(destination, output);
+            String text = new String(Files.readAllBytes(Paths.get("../resources/fileToTest/" + origin)), StandardCharsets.UTF_8);
+            boolean identical = (text + text).equals(new String(Files.readAllBytes(Paths.get("../out/" + output)), StandardCharsets.UTF_8));
+            boolean counted = created != null && appended != null && created.bytesIn == size && appended.bytesIn == size
+                    && created.bytesOut == createdSize && appended.bytesOut == appendedSize - createdSize
+                    && appended.symbolCount == text.length();
+            System.out.println("Appended twice " + origin + ": " + (identical ? "identical" : "DIFFERENT") + ", metrics "
+                    + (counted ? "match the files" : "do NOT match the files"));
+        }
+        catch (IOException e) {
+            System.out.println("Appended twice " + origin + ": FAILED with " + e);
+        }
+        System.out.println("");
+    }
+
+    // counting the BLOCK_REUSED blocks of a block file from its trailer and index
+    private static int reusedBlocks(Path path) throws IOException {
+        ByteBuffer file = ByteBuffer.wrap(Files.readAllBytes(path));
+        int blockCount = file.getInt(file.limit() - 12);
+        long indexOffset = file.getLong(file.limit() - 8);
+        int reused = 0;
+        for (int block = 0; block < blockCount; block++) {
+            if (file.get((int) file.getLong((int) indexOffset + 16 * block)) == BlockCompressor.BLOCK_REUSED) {
+                reused++;
+            }
+        }
+        return reused;
+    }
+
+    public static void testCompressionServer() {
+        // fewer requests in flight per connection on the server than in the client window, so reading stops at times
+        try (CompressionServer server = new CompressionServer(0, 2, 4)) {
+            server.start();
+            byte[] book = Files.readAllBytes(Paths.get("../resources/fileToTest/" + BOOKS[0]));
+            byte[] random = new byte[1 << 16];
+            new Random(11).nextBytes(random);
+            byte[][] payloads = {book, random, new byte[0]};
+            String[] names = {"a book", "random bytes", "an empty payload"};
+            for (int payload = 0; payload < payloads.length; payload++) {
+                LoadGenerator.Result result = LoadGenerator.run(server.port(), 2, 100, 16, payloads[payload]);
+                System.out.println("Server round trips of " + names[payload] + ": "
+                        + (result.errors == 0 && result.mismatches == 0 && result.latencies.length == 200 ? "identical" : "DIFFERENT")
+                        + ", " + result.latencies.length + " requests at " + (long) result.requestsPerSecond() + " requests/s, p99 "
+                        + result.percentile(99) / 1000 + "us");
+            }
+
+            // a corrupt payload is answered with an error and the connection stays open
+            try (SocketChannel channel = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.port()))) {
+                LoadGenerator.writeRequest(channel, 7, CompressionServer.OP_DECOMPRESS, "not compressed".getBytes(StandardCharsets.UTF_8));
+                LoadGenerator.writeRequest(channel, 8, CompressionServer.OP_COMPRESS, book);
+                LoadGenerator.Response first = LoadGenerator.readResponse(channel);
+                LoadGenerator.Response second = LoadGenerator.readResponse(channel);
+                LoadGenerator.Response error = first.id == 7 ? first : second;
+                LoadGenerator.Response compressed = first.id == 7 ? second : first;
+                boolean answered = error.status == CompressionServer.STATUS_ERROR && compressed.id == 8 && compressed.status == CompressionServer.STATUS_OK;
+                System.out.println("Server answer to a corrupt payload: " + (answered ? "error, connection still open" : "NOT an error")
+                        + " (" + new String(error.payload, StandardCharsets.UTF_8) + ")");
+            }
+            System.out.println("Requests answered by the server: " + server.requestCount());
+
+            // one worker state coding payloads of other codes by turns into the same stream, as a worker does
+            ByteCompressor.State state = new ByteCompressor.State();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            boolean reused = true;
+            for (int round = 0; round < 4; round++) {
+                for (byte[] payload : payloads) {
+                    compressed.reset();
+                    ByteCompressor.compress(payload, 0, payload.length, compressed, BlockCompressor.DEFAULT_MIN_SAVING, state);
+                    ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+                    ByteCompressor.decompress(ByteBuffer.wrap(compressed.toByteArray()), decompressed, state);
+                    reused &= Arrays.equals(payload, decompressed.toByteArray());
+                }
+            }
+            System.out.println("Payloads coded by turns with one worker state: " + (reused ? "identical" : "DIFFERENT"));
+        }
+        catch (IOException | InterruptedException e) {
+            System.out.println("Compression server: FAILED with " + e);
+        }
+        System.out.println("");
+    }
 
     public static void testBooks() {
         testBook01();
@@ -203,5 +1223,24 @@ public class TestHuffmanCoding extends HuffmanCoding{
         catch (FileNotFoundException e) {}
         testBooks();
         testDatasets();
+        testStreamBooks();
+        testParallelScaling();
+        testHistogramBooks();
+        testMappedBooks();
+        testRangeBooks();
+        testLengthLimitBooks();
+        testLengthLimitFibonacci();
+        testInterleavedBooks();
+        testCodeLengthsBooks();
+        testSharedTableBooks();
+        testAdaptiveBooks();
+        testBatchBooks();
+        testMetricsBooks();
+        testContextBooks();
+        testTransformBooks();
+        testBytesBooks();
+        testStoredBlocks();
+        testAppendBooks();
+        testCompressionServer();
     }
 }
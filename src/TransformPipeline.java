@@ -0,0 +1,155 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.EnumSet;
+import java.util.Set;
+
+//Transforms run on every block of a BlockCompressor before the Huffman stage, any of them may be turned off.
+//They always run in the order of Stage and are undone in the reverse order; every block records the stages
+//it went through, so a block is decoded the same way whatever stages the compressor was given.
+class TransformPipeline {
+    //Stages of the pipeline, in the order they run
+    enum Stage {
+        BWT("bwt", new BurrowsWheeler()),
+        MTF("mtf", new MoveToFront()),
+        ZERO_RUN("zero-run", new ZeroRunLength());
+
+        final String label;
+        final BlockTransform transform;
+
+        Stage(String label, BlockTransform transform) {
+            this.label = label;
+            this.transform = transform;
+        }
+    }
+
+    private final Set<Stage> stages;
+
+    /**
+     * constructor for initialising a pipeline.
+     *
+     * @param stages the stages to run, an empty set passing the characters through
+     */
+    TransformPipeline(Set<Stage> stages) {
+        this.stages = stages.isEmpty() ? EnumSet.noneOf(Stage.class) : EnumSet.copyOf(stages);
+    }
+
+    /**
+     * returning the pipeline named on the command line: "all", "none" or the labels of the stages
+     * separated by commas, such as bwt,mtf,zero-run.
+     *
+     * @param names the stages to run
+     * @return the pipeline
+     */
+    static TransformPipeline parse(String names) {
+        EnumSet<Stage> stages = EnumSet.noneOf(Stage.class);
+        if (names.equals("all")) {
+            stages = EnumSet.allOf(Stage.class);
+        }
+        else if (!names.equals("none")) {
+            for (String name : names.split(",")) {
+                Stage found = null;
+                for (Stage stage : Stage.values()) {
+                    if (stage.label.equals(name)) {
+                        found = stage;
+                    }
+                }
+                if (found == null) {
+                    throw new IllegalArgumentException("Unknown transform " + name + ", expected all, none or some of bwt,mtf,zero-run");
+                }
+                stages.add(found);
+            }
+        }
+        return new TransformPipeline(stages);
+    }
+
+    boolean isEmpty() {
+        return stages.isEmpty();
+    }
+
+    /**
+     * returning the labels of the stages, for printing.
+     *
+     * @return the labels separated by commas, or "none"
+     */
+    String names() {
+        StringBuilder names = new StringBuilder();
+        for (Stage stage : stages) {
+            names.append(names.length() == 0 ? "" : ",").append(stage.label);
+        }
+        return names.length() == 0 ? "none" : names.toString();
+    }
+
+    /**
+     * running the stages on a block. A stage that cannot be applied to the block is skipped, and left
+     * out of the stages recorded for it.
+     *
+     * @param block the characters of the block
+     * @param length the number of characters
+     * @param parameters the stream receiving the parameters of the stages run, the last one first
+     * @return the bit set of the stages run, by ordinal, and the transformed characters
+     */
+    Result forward(char[] block, int length, DataOutputStream parameters) throws IOException {
+        char[] data = block;
+        int dataLength = length;
+        int applied = 0;
+        ByteArrayOutputStream[] stageParameters = new ByteArrayOutputStream[Stage.values().length];
+        for (Stage stage : stages) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(bytes);
+            char[] transformed = stage.transform.forward(data, dataLength, output);
+            if (transformed != null) {
+                output.flush();
+                stageParameters[stage.ordinal()] = bytes;
+                applied |= 1 << stage.ordinal();
+                data = transformed;
+                dataLength = transformed.length;
+            }
+        }
+
+        // the parameters are read back while undoing the stages, so the last stage comes first
+        for (int ordinal = stageParameters.length - 1; ordinal >= 0; ordinal--) {
+            if (stageParameters[ordinal] != null) {
+                stageParameters[ordinal].writeTo(parameters);
+            }
+        }
+        parameters.flush();
+        return new Result(applied, data, dataLength);
+    }
+
+    /**
+     * undoing the stages recorded for a block.
+     *
+     * @param applied the bit set of the stages run, by ordinal
+     * @param transformed the characters output by the last stage
+     * @param parameters the parameters of the stages run, the last one first
+     * @return the characters of the block
+     */
+    static char[] inverse(int applied, char[] transformed, ByteBuffer parameters) throws IOException {
+        if ((applied & ~((1 << Stage.values().length) - 1)) != 0) {
+            throw new IOException("Unknown transforms " + Integer.toBinaryString(applied));
+        }
+        char[] data = transformed;
+        Stage[] all = Stage.values();
+        for (int ordinal = all.length - 1; ordinal >= 0; ordinal--) {
+            if ((applied & (1 << ordinal)) != 0) {
+                data = all[ordinal].transform.inverse(data, parameters);
+            }
+        }
+        return data;
+    }
+
+    //Outcome of running the stages on a block
+    static final class Result {
+        final int applied;
+        final char[] data;
+        final int length;
+
+        Result(int applied, char[] data, int length) {
+            this.applied = applied;
+            this.data = data;
+            this.length = length;
+        }
+    }
+}
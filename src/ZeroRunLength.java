@@ -0,0 +1,93 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+//Zero run coding of a block, as in bzip2: every run of zeros, which the move-to-front transform leaves
+//wherever a character repeats, is written as its length in bijective base 2 with the digits RUN_A (1) and
+//RUN_B (2), least significant first, and every other character c as c + 1. A run of n zeros takes about
+//log2(n) characters. The only parameter is the number of characters before the transform.
+class ZeroRunLength implements BlockTransform {
+    static final char RUN_A = 0;
+    static final char RUN_B = 1;
+
+    @Override
+    public char[] forward(char[] block, int length, DataOutputStream parameters) throws IOException {
+        // the largest character has no room left above it
+        char[] transformed = new char[length];
+        int j = 0;
+        int run = 0;
+        for (int i = 0; i < length; i++) {
+            char character = block[i];
+            if (character == 0) {
+                run++;
+                continue;
+            }
+            if (character == Character.MAX_VALUE) {
+                return null;
+            }
+            j = writeRun(transformed, j, run);
+            run = 0;
+            transformed[j++] = (char) (character + 1);
+        }
+        j = writeRun(transformed, j, run);
+
+        HuffmanHeader.writeVarInt(parameters, length);
+        return Arrays.copyOf(transformed, j);
+    }
+
+    /**
+     * writing the length of a run in bijective base 2, never more characters than the run is long.
+     *
+     * @return the position after the digits
+     */
+    private static int writeRun(char[] transformed, int j, int run) {
+        while (run > 0) {
+            if ((run & 1) == 1) {
+                transformed[j++] = RUN_A;
+                run = (run - 1) >> 1;
+            }
+            else {
+                transformed[j++] = RUN_B;
+                run = (run - 2) >> 1;
+            }
+        }
+        return j;
+    }
+
+    @Override
+    public char[] inverse(char[] transformed, ByteBuffer parameters) throws IOException {
+        int length = HuffmanHeader.readVarInt(parameters);
+        if (length < 0) {
+            throw new IOException("Corrupt zero run length");
+        }
+        char[] block = new char[length];
+        int j = 0;
+        long run = 0;
+        long weight = 1;
+        for (char character : transformed) {
+            if (character <= RUN_B) {
+                // adding the digit, a corrupt run is caught when it overflows the block
+                run += weight << character;
+                weight <<= 1;
+                if (run > length - j) {
+                    throw new IOException("Corrupt zero run");
+                }
+                continue;
+            }
+            // the zeros of the array are the run
+            j += (int) run;
+            run = 0;
+            weight = 1;
+            if (j == length) {
+                throw new IOException("Corrupt zero run");
+            }
+            block[j++] = (char) (character - 1);
+        }
+        j += (int) run;
+        if (j != length) {
+            throw new IOException("Corrupt zero run");
+        }
+        return block;
+    }
+}